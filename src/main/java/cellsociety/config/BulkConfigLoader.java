@@ -0,0 +1,289 @@
+package cellsociety.config;
+
+import cellsociety.model.cells.Cell;
+import cellsociety.model.gametypes.GameType;
+import cellsociety.model.gametypes.KernelComparison;
+import cellsociety.model.gametypes.RuleTable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Validates and loads many configurations at once, e.g. a whole data directory, on a pool of
+ * threads.  Every file gets its own {@link ConfigLoader} and is loaded as far as the GUI would
+ * load it: basic info, cells and game, with the edge type and neighbors set.  Nothing is shown to
+ * the user; the problem with a file is kept in its result.
+ * <p>
+ * It can also be run from the command line to check a directory before a batch of runs:
+ * {@code BulkConfigLoader <directory> [threads]} prints every invalid file with its error and
+ * exits with status 1 if there was one.  {@code BulkConfigLoader --compare-kernels <directory>
+ * [generations]} instead runs the interpreted and the generated kernel of every rule table in the
+ * directory side by side, see {@link RuleTable#compareKernels}.
+ */
+public class BulkConfigLoader implements AutoCloseable {
+
+  public static final String COMPARE_KERNELS = "--compare-kernels";
+  public static final int DEFAULT_COMPARED_GENERATIONS = 100;
+
+  private final ExecutorService pool;
+
+  /**
+   * The outcome of loading one file.
+   */
+  public static class Result {
+
+    private final File file;
+    private final ConfigLoader loader;
+    private final GameType<Cell> game;
+    private final InvalidConfigurationException error;
+
+    Result(File file, ConfigLoader loader, GameType<Cell> game,
+        InvalidConfigurationException error) {
+      this.file = file;
+      this.loader = loader;
+      this.game = game;
+      this.error = error;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    /**
+     * Getter for the loader of the file
+     *
+     * @return the loader, or null if the file is invalid or was only validated
+     */
+    public ConfigLoader getLoader() {
+      return loader;
+    }
+
+    /**
+     * Getter for the game loaded from the file
+     *
+     * @return the game, or null if the file is invalid or was only validated
+     */
+    public GameType<Cell> getGame() {
+      return game;
+    }
+
+    /**
+     * Getter for the problem with the file
+     *
+     * @return the error, or null if the file is valid
+     */
+    public InvalidConfigurationException getError() {
+      return error;
+    }
+
+    public boolean isValid() {
+      return error == null;
+    }
+  }
+
+  /**
+   * Constructor for a bulk loader with one thread per processor.
+   */
+  public BulkConfigLoader() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructor for a bulk loader.
+   *
+   * @param numThreads number of files loaded at the same time
+   */
+  public BulkConfigLoader(int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    pool = Executors.newFixedThreadPool(numThreads, runnable -> {
+      Thread thread = new Thread(runnable, "config-loader");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Finds the configurations in a directory and its subdirectories: XML files, snapshots and
+   * recordings, in order of their paths.
+   *
+   * @param directory the directory to search
+   * @return the files found
+   * @throws IOException if the directory cannot be read
+   */
+  public static List<File> findConfigFiles(File directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory.toPath())) {
+      return paths.filter(Files::isRegularFile).map(Path::toFile)
+          .filter(file -> file.getName().toLowerCase().endsWith(".xml")
+              || Snapshot.isSnapshot(file) || TrajectoryPlayer.isTrajectory(file))
+          .sorted().collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Loads every configuration in a directory and keeps the loaded games.
+   *
+   * @param directory the directory to load
+   * @return one result per file, in the order of findConfigFiles
+   * @throws IOException          if the directory cannot be read
+   * @throws InterruptedException if interrupted while waiting for the files
+   */
+  public List<Result> loadDirectory(File directory) throws IOException, InterruptedException {
+    return load(findConfigFiles(directory), true);
+  }
+
+  /**
+   * Checks every configuration in a directory without keeping the loaded games, so any number of
+   * files can be checked.
+   *
+   * @param directory the directory to check
+   * @return one result per file, in the order of findConfigFiles
+   * @throws IOException          if the directory cannot be read
+   * @throws InterruptedException if interrupted while waiting for the files
+   */
+  public List<Result> validateDirectory(File directory) throws IOException, InterruptedException {
+    return load(findConfigFiles(directory), false);
+  }
+
+  /**
+   * Loads the given files in parallel.
+   *
+   * @param files    the files to load
+   * @param keepGame true to keep the loaders and games in the results, false to only check them
+   * @return one result per file, in the same order
+   * @throws InterruptedException if interrupted while waiting for the files
+   */
+  public List<Result> load(List<File> files, boolean keepGame) throws InterruptedException {
+    List<Callable<Result>> tasks = new ArrayList<>();
+    for (File file : files) {
+      tasks.add(() -> loadFile(file, keepGame));
+    }
+    List<Result> results = new ArrayList<>();
+    for (Future<Result> future : pool.invokeAll(tasks)) {
+      try {
+        results.add(future.get());
+      } catch (ExecutionException e) {
+        // loadFile only lets errors of the JVM through
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Loads one file.  Unexpected failures while building the game are reported as an invalid
+   * configuration, with the failure as the cause.
+   */
+  private static Result loadFile(File file, boolean keepGame) {
+    try {
+      ConfigLoader loader = new ConfigLoader(file);
+      GameType<Cell> game = loader.createGame();
+      return keepGame ? new Result(file, loader, game, null) : new Result(file, null, null, null);
+    } catch (InvalidConfigurationException e) {
+      return new Result(file, null, null, e);
+    } catch (RuntimeException e) {
+      InvalidConfigurationException error = new InvalidConfigurationException(
+          "Invalid_XML_Configuration");
+      error.initCause(e);
+      return new Result(file, null, null, error);
+    }
+  }
+
+  /**
+   * Stops the threads once the files being loaded are done.
+   */
+  @Override
+  public void close() {
+    pool.shutdown();
+  }
+
+  /**
+   * Checks a directory of configurations and prints the invalid ones, or compares the kernels of
+   * its rule tables.
+   *
+   * @param args the directory, and optionally the number of threads; or --compare-kernels, the
+   *             directory, and optionally the number of generations
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0 && args[0].equals(COMPARE_KERNELS)) {
+      compareKernels(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    if (args.length == 0) {
+      printUsage();
+    }
+    int numThreads = (args.length > 1) ? Integer.parseInt(args[1])
+        : Runtime.getRuntime().availableProcessors();
+    List<Result> results;
+    long start = System.nanoTime();
+    try (BulkConfigLoader loader = new BulkConfigLoader(numThreads)) {
+      results = loader.validateDirectory(new File(args[0]));
+    }
+    int numInvalid = 0;
+    for (Result result : results) {
+      if (!result.isValid()) {
+        numInvalid++;
+        System.out.println(result.getFile() + ": " + result.getError().getLocalizedMessage());
+      }
+    }
+    System.out.printf("%d of %d configurations valid (%.1f s)%n", results.size() - numInvalid,
+        results.size(), (System.nanoTime() - start) / 1e9);
+    System.exit(numInvalid == 0 ? 0 : 1);
+  }
+
+  /**
+   * Loads every configuration in a directory and runs the interpreted and the generated kernel of
+   * every rule table side by side, one after the other so that the timings are fair.  Prints the
+   * comparison of each file and exits with status 1 if a pair of kernels differed or a kernel
+   * could not be generated.
+   *
+   * @param args the directory, and optionally the number of generations
+   */
+  private static void compareKernels(String[] args) throws Exception {
+    if (args.length == 0) {
+      printUsage();
+    }
+    int generations = (args.length > 1) ? Integer.parseInt(args[1])
+        : DEFAULT_COMPARED_GENERATIONS;
+    List<Result> results;
+    try (BulkConfigLoader loader = new BulkConfigLoader()) {
+      results = loader.loadDirectory(new File(args[0]));
+    }
+    int numCompared = 0;
+    boolean failed = false;
+    for (Result result : results) {
+      GameType<?> game = result.getGame();
+      if (game instanceof RuleTable ruleTable) {
+        numCompared++;
+        try {
+          KernelComparison comparison = ruleTable.compareKernels(generations);
+          System.out.println(result.getFile() + ": " + comparison);
+          failed |= !comparison.isMatching();
+        } catch (IllegalStateException e) {
+          System.out.println(result.getFile() + ": " + e.getMessage());
+          failed = true;
+        }
+      }
+    }
+    System.out.printf("%d rule tables compared%n", numCompared);
+    System.exit(failed ? 1 : 0);
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: BulkConfigLoader <directory> [threads]");
+    System.err.println("       BulkConfigLoader " + COMPARE_KERNELS + " <directory> [generations]");
+    System.exit(2);
+  }
+}
@@ -0,0 +1,289 @@
+package cellsociety.config;
+
+import cellsociety.model.gametypes.GameType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Writes periodic checkpoints of a running simulation so that a crashed run can be resumed.  A
+ * checkpoint is either a full base snapshot (see {@link Snapshot}) or a delta record appended to a
+ * log next to it, holding only the cells and extra plane values that changed since the previous
+ * checkpoint together with the generation, random state and parameters.  Every few deltas a new
+ * base is written and the log starts over.
+ * <p>
+ * The configuration without its grid is written as XML once, when the checkpointer is created,
+ * so only the states, extra planes, generation, random state and parameters are copied on the
+ * step thread; comparing, encoding and writing happen on a background thread.  If that thread is still busy with the previous checkpoint, the new one is
+ * dropped instead of making the step loop wait, and the next one is encoded against the last
+ * checkpoint that was actually written.
+ * <p>
+ * A delta record is a magic number, the length of its payload and the CRC32 of the payload,
+ * followed by the payload.  When resuming, records are applied in order until the end of the log
+ * or the first record that is cut off or does not match its checksum.
+ */
+public class Checkpointer {
+
+  public static final String DELTA_EXTENSION = ".deltas";
+  private static final int RECORD_MAGIC = 0x544C4443; // "CDLT"
+  private static final int RECORD_HEADER_SIZE = 3 * Integer.BYTES;
+  private static final int DELTAS_PER_BASE = 32;
+
+  private final String typeName;
+  private final String config;
+  private final GameType<?> game;
+  private final File baseFile;
+  private final File deltaFile;
+  private final long generationInterval;
+  private final long intervalNanos;
+  private final ExecutorService writer;
+  private final AtomicBoolean writing = new AtomicBoolean();
+
+  private long lastGeneration;
+  private long lastNanos = System.nanoTime();
+
+  // only used by the writer thread
+  private Snapshot lastWritten;
+  private int numDeltas;
+
+  /**
+   * Constructor for a checkpointer.  Checkpoints are taken when either interval has passed since
+   * the last one; an interval of zero is not used.
+   *
+   * @param typeName           name of the game type
+   * @param config             configuration without its grid, as XML, see Snapshot
+   * @param game               the game to checkpoint
+   * @param baseFile           file of the base snapshot; the log is next to it
+   * @param generationInterval number of generations between checkpoints, 0 for none
+   * @param secondsInterval    seconds between checkpoints, 0 for none
+   */
+  public Checkpointer(String typeName, String config, GameType<?> game, File baseFile,
+      long generationInterval, double secondsInterval) {
+    this.typeName = typeName;
+    this.config = config;
+    this.game = game;
+    this.baseFile = baseFile;
+    this.deltaFile = new File(baseFile.getPath() + DELTA_EXTENSION);
+    this.generationInterval = generationInterval;
+    this.intervalNanos = (long) (secondsInterval * 1e9);
+    this.lastGeneration = game.getGeneration();
+    writer = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "checkpoint-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Called after every step.  Takes a checkpoint if an interval has passed, and starts over with a
+   * new base if the game went back in time, e.g. after a reset.
+   */
+  public void afterStep() {
+    long generation = game.getGeneration();
+    if (generation < lastGeneration) {
+      lastGeneration = generation;
+      lastNanos = System.nanoTime();
+      return;
+    }
+    boolean generationsDue = generationInterval > 0
+        && generation - lastGeneration >= generationInterval;
+    boolean timeDue = intervalNanos > 0 && System.nanoTime() - lastNanos >= intervalNanos;
+    if (generationsDue || timeDue) {
+      checkpoint();
+    }
+  }
+
+  /**
+   * Takes a checkpoint now, unless the previous one is still being written.
+   *
+   * @return True if the checkpoint was handed to the writer, false if it was dropped
+   */
+  public boolean checkpoint() {
+    lastGeneration = game.getGeneration();
+    lastNanos = System.nanoTime();
+    if (!writing.compareAndSet(false, true)) {
+      return false;
+    }
+    Snapshot snapshot = new Snapshot(typeName, config, game);
+    writer.execute(() -> {
+      try {
+        write(snapshot);
+      } catch (IOException | RuntimeException e) {
+        // the next checkpoint cannot build on a record that may be missing
+        lastWritten = null;
+        e.printStackTrace();
+      } finally {
+        writing.set(false);
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Waits for the checkpoint being written, if any, and stops the writer thread.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void close() throws InterruptedException {
+    writer.shutdown();
+    writer.awaitTermination(1, TimeUnit.MINUTES);
+  }
+
+  private void write(Snapshot snapshot) throws IOException {
+    if (lastWritten == null || numDeltas >= DELTAS_PER_BASE
+        || snapshot.getGeneration() < lastWritten.getGeneration()
+        || snapshot.getNumRows() != lastWritten.getNumRows()
+        || snapshot.getNumCols() != lastWritten.getNumCols()) {
+      writeBase(snapshot);
+    } else {
+      appendDelta(snapshot);
+    }
+    lastWritten = snapshot;
+  }
+
+  /**
+   * Writes a new base next to the old one, empties the log and then moves the new base over the
+   * old one.  Whenever the process stops, the files on disk are either the old base with a prefix
+   * of its log or the new base with an empty log.
+   */
+  private void writeBase(Snapshot snapshot) throws IOException {
+    File temp = new File(baseFile.getPath() + ".tmp");
+    snapshot.write(temp);
+    try (FileChannel log = FileChannel.open(deltaFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      log.force(true);
+    }
+    Files.move(temp.toPath(), baseFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    numDeltas = 0;
+  }
+
+  private void appendDelta(Snapshot snapshot) throws IOException {
+    DeltaCodec payload = new DeltaCodec();
+    payload.writeLong(snapshot.getGeneration());
+    payload.writeLong(snapshot.getRandomState());
+    payload.writeVarint(snapshot.getParams().size());
+    for (Map.Entry<String, Double> param : snapshot.getParams().entrySet()) {
+      payload.writeString(param.getKey());
+      payload.writeDouble(param.getValue());
+    }
+    int[][] grid = snapshot.getGrid();
+    int[][] lastGrid = lastWritten.getGrid();
+    for (int row = 0; row < grid.length; row++) {
+      payload.writeChanges(lastGrid[row], grid[row], (long) row * snapshot.getNumCols());
+    }
+    payload.endChanges();
+    payload.writeVarint(snapshot.getPlanes().size());
+    for (Map.Entry<String, int[]> plane : snapshot.getPlanes().entrySet()) {
+      int[] last = lastWritten.getPlanes().get(plane.getKey());
+      payload.writeString(plane.getKey());
+      payload.writeVarint(plane.getValue().length);
+      // a plane that changed its length is written against zeros
+      payload.writeChanges((last != null && last.length == plane.getValue().length) ? last : null,
+          plane.getValue(), 0);
+      payload.endChanges();
+    }
+
+    byte[] bytes = payload.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bytes.length)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    record.putInt(RECORD_MAGIC).putInt(bytes.length).putInt((int) crc.getValue()).put(bytes);
+    record.flip();
+    try (FileChannel log = FileChannel.open(deltaFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      while (record.hasRemaining()) {
+        log.write(record);
+      }
+      log.force(false);
+    }
+    numDeltas++;
+  }
+
+  /**
+   * Reads the latest consistent checkpoint: the base snapshot with every complete and intact record
+   * of its log applied.  A snapshot without a log is returned as it is.
+   *
+   * @param baseFile file of the base snapshot
+   * @return the snapshot of the latest checkpoint
+   * @throws IOException                   if a file cannot be read
+   * @throws InvalidConfigurationException if the base is not a valid snapshot, or an intact record
+   *                                       does not fit it
+   */
+  public static Snapshot resume(File baseFile) throws IOException, InvalidConfigurationException {
+    Snapshot snapshot = Snapshot.read(baseFile);
+    File log = new File(baseFile.getPath() + DELTA_EXTENSION);
+    if (!log.isFile()) {
+      return snapshot;
+    }
+    try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+      long position = 0;
+      ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      while (position + RECORD_HEADER_SIZE <= channel.size()) {
+        header.clear();
+        channel.read(header, position);
+        header.flip();
+        int length = header.getInt(Integer.BYTES);
+        if (header.getInt(0) != RECORD_MAGIC || length < 0
+            || position + RECORD_HEADER_SIZE + length > channel.size()) {
+          break;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(payload, position + RECORD_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        if ((int) crc.getValue() != header.getInt(2 * Integer.BYTES)) {
+          break;
+        }
+        try {
+          snapshot = applyDelta(snapshot, payload.flip());
+        } catch (RuntimeException e) {
+          // the checksum matched, so the record was written this way
+          throw new InvalidConfigurationException("Invalid_snapshot");
+        }
+        position += RECORD_HEADER_SIZE + length;
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * Applies one record to the states and planes of a snapshot, in place.
+   */
+  private static Snapshot applyDelta(Snapshot snapshot, ByteBuffer payload) {
+    long generation = payload.getLong();
+    long randomState = payload.getLong();
+    Map<String, Double> params = new TreeMap<>();
+    for (long numParams = DeltaCodec.readVarint(payload); numParams > 0; numParams--) {
+      params.put(DeltaCodec.readString(payload), payload.getDouble());
+    }
+    int cols = snapshot.getNumCols();
+    int[][] grid = snapshot.getGrid();
+    DeltaCodec.readChanges(payload,
+        (index, delta) -> grid[(int) (index / cols)][(int) (index % cols)] += delta);
+    Map<String, int[]> planes = snapshot.getPlanes();
+    for (long numPlanes = DeltaCodec.readVarint(payload); numPlanes > 0; numPlanes--) {
+      String name = DeltaCodec.readString(payload);
+      int length = (int) DeltaCodec.readVarint(payload);
+      int[] last = snapshot.getPlanes().get(name);
+      int[] plane = (last != null && last.length == length) ? last : new int[length];
+      DeltaCodec.readChanges(payload, (index, delta) -> plane[(int) index] += delta);
+      planes.put(name, plane);
+    }
+    return new Snapshot(snapshot.getTypeName(), snapshot.getConfig(), generation,
+        snapshot.getSeed(), randomState, params, grid, planes);
+  }
+}
@@ -0,0 +1,989 @@
+package cellsociety.config;
+
+import cellsociety.model.cells.Cell;
+import cellsociety.model.gametypes.FallingSand;
+import cellsociety.model.gametypes.ForagingAnts;
+import cellsociety.model.gametypes.ForagingAntsColony;
+import cellsociety.model.gametypes.GameOfLife;
+import cellsociety.model.gametypes.GameType;
+import cellsociety.model.gametypes.ModelOfSegregation;
+import cellsociety.model.gametypes.Percolation;
+import cellsociety.model.gametypes.RuleTable;
+import cellsociety.model.gametypes.SpreadingOfFire;
+import cellsociety.model.gametypes.WaTorWorld;
+import cellsociety.view.assets.StateNamesMap;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+
+/**
+ * Loads simulation configurations: XML files, snapshots and recordings.  Every problem is reported
+ * by throwing an {@link InvalidConfigurationException} whose message is a translation key; nothing
+ * is shown to the user and the default locale is not changed, so configurations can be loaded
+ * without a GUI and on several threads at once (one loader per file).  {@link Parser} wraps it for
+ * the GUI.
+ */
+public class ConfigLoader {
+
+  private File xmlFile;
+  private int width;
+  private int height;
+  private final String defaultProbability = "0.5";
+  private String typeName;
+  // saving replaces them on the simulation thread, the JavaFX thread reads them
+  private volatile String title;
+  private volatile String author;
+  private volatile String description;
+  // the DOM is not thread safe: once a simulation runs, only its simulation thread reads it
+  private Element root;
+  private final Map<String, String> additionalParams = new HashMap<>();
+  private GameType currentGame;
+  private String arrangement;
+
+  private Document xmlDocument;
+
+  private StreamingConfigReader streamedConfig;
+  private Snapshot snapshot;
+  private TrajectoryPlayer replay;
+  // initial states, one byte per cell in row major order, parsed once
+  private byte[] initialCells;
+  private int initialRows;
+  private int initialCols;
+  private Long randomizeSeed;
+
+  private static final Map<String, Integer> maxStateValues = new HashMap<>();
+  public static final long STREAMING_THRESHOLD_BYTES = 8L * 1024 * 1024;
+
+
+  static {
+    // Initialize the maximum state values for each game type
+    maxStateValues.put("percolation", 2);
+    maxStateValues.put("watorworld", 2);
+    maxStateValues.put("spreadingoffire", 2);
+    maxStateValues.put("modelofsegregation", 2);
+    maxStateValues.put("gameoflife", 1);
+    maxStateValues.put("foragingants", 4);
+    maxStateValues.put("fallingsand", 3);
+  }
+
+  /**
+   * Loads the given file and reads its basic info.  Files larger than a few megabytes are read in
+   * streaming mode.  Snapshot files are read as a snapshot instead, with the checkpoints logged
+   * next to them applied, and recordings are opened for replay.
+   *
+   * @param xmlFile the XML, snapshot or recording file to load
+   * @throws InvalidConfigurationException if the file cannot be read or misses basic info
+   */
+  public ConfigLoader(File xmlFile) throws InvalidConfigurationException {
+    this(xmlFile, xmlFile.length() > STREAMING_THRESHOLD_BYTES);
+  }
+
+  /**
+   * Loads the given file and reads its basic info.  In streaming mode the file is read with StAX:
+   * the cells go straight into a state grid and only the other elements are kept as a document,
+   * so large grids do not need a DOM node per cell.
+   *
+   * @param xmlFile   the XML file to load
+   * @param streaming true to read the file in streaming mode, false to build the whole DOM
+   * @throws InvalidConfigurationException if the file cannot be read or misses basic info
+   */
+  public ConfigLoader(File xmlFile, boolean streaming) throws InvalidConfigurationException {
+    readDocument(xmlFile, streaming);
+    getBasicInfo();
+  }
+
+  /**
+   * Constructor for subclasses that read the document themselves with readDocument.
+   */
+  protected ConfigLoader() {
+  }
+
+  /**
+   * Reads the document of the given file, without its basic info.
+   *
+   * @param xmlFile   the XML, snapshot or recording file to read
+   * @param streaming true to read an XML file in streaming mode
+   * @throws InvalidConfigurationException if the file is empty or cannot be read
+   */
+  protected void readDocument(File xmlFile, boolean streaming)
+      throws InvalidConfigurationException {
+    try {
+      if (xmlFile.length() == 0) {
+        throw new InvalidConfigurationException("Empty_configuration_file");
+      }
+      this.xmlFile = xmlFile;
+      if (Snapshot.isSnapshot(xmlFile)) {
+        snapshot = Checkpointer.resume(this.xmlFile);
+        xmlDocument = newDocumentBuilder()
+            .parse(new InputSource(new StringReader(snapshot.getConfig())));
+      } else if (TrajectoryPlayer.isTrajectory(xmlFile)) {
+        replay = new TrajectoryPlayer(this.xmlFile);
+        xmlDocument = newDocumentBuilder()
+            .parse(new InputSource(new StringReader(replay.getConfig())));
+      } else if (streaming) {
+        streamedConfig = new StreamingConfigReader(this.xmlFile);
+        xmlDocument = streamedConfig.getDocument();
+      } else {
+        xmlDocument = newDocumentBuilder().parse(this.xmlFile);
+      }
+      this.root = xmlDocument.getDocumentElement();
+    } catch (NumberFormatException e) {
+      throw new InvalidConfigurationException("Invalid_number_given_in_data");
+    } catch (ParserConfigurationException e) {
+      throw new InvalidConfigurationException("Invalid_XML_Configuration");
+    } catch (SAXException | XMLStreamException | IOException e) {
+      throw new InvalidConfigurationException("Incorrectly_Formatted_XML_Data");
+    }
+  }
+
+  /**
+   * Creates a document builder that reports malformed XML only by throwing.  The default error
+   * handler also prints every error to the standard error stream, which a loader that is used
+   * without a GUI must not do.
+   */
+  private static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+    DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    builder.setErrorHandler(new ErrorHandler() {
+      @Override
+      public void warning(SAXParseException exception) {
+      }
+
+      @Override
+      public void error(SAXParseException exception) throws SAXException {
+        throw exception;
+      }
+
+      @Override
+      public void fatalError(SAXParseException exception) throws SAXException {
+        throw exception;
+      }
+    });
+    return builder;
+  }
+
+  public File getFile() {
+    return xmlFile;
+  }
+
+  public Document getDocument() {
+    return this.xmlDocument;
+  }
+
+  /**
+   * Retrieves the language specified in the XML file, e.g. "english".
+   *
+   * @return the language as given, empty if none was given
+   */
+  public String getLanguage() {
+    return getTextValueOrDefault(root, "language", "");
+  }
+
+  /**
+   * Retrieves the type of edge specified in the XML file.
+   *
+   * @return the type of edge as a String
+   */
+  public String getEdgeType() {
+    String edgeTypeTag = getTextValueOrDefault(root, "edgeType", "standard");
+    edgeTypeTag = edgeTypeTag.toLowerCase();
+    return edgeTypeTag;
+
+  }
+
+  /**
+   * Retrieves the update mode specified in the XML file, e.g. "parallel".
+   *
+   * @return the update mode as a lower case String, empty if none was given
+   */
+  public String getUpdateMode() {
+    return getTextValueOrDefault(root, "updateMode", "").toLowerCase();
+  }
+
+  /**
+   * Reads all basic info of the current file.
+   *
+   * @throws InvalidConfigurationException if the size is not a number or other info is missing
+   */
+  public void getBasicInfo() throws InvalidConfigurationException {
+    try {
+      this.width = Integer.parseInt(getTextValueOrDefault(root, "width", ""));
+      this.height = Integer.parseInt(getTextValueOrDefault(root, "height", ""));
+      this.typeName = getTextValueOrDefault(root, "gameType", "");
+      this.title = getTextValueOrDefault(root, "title", "");
+      this.author = getTextValueOrDefault(root, "author", "");
+      this.description = getTextValueOrDefault(root, "description", "");
+      this.arrangement = getTextValueOrDefault(root, "neighbors", "");
+
+      if (typeName.isEmpty() || title.isEmpty() || author.isEmpty() || description.isEmpty()) {
+        throw new InvalidConfigurationException("Missing_simulation_information");
+      }
+    } catch (NumberFormatException e) {
+      throw new InvalidConfigurationException("Invalid_number_given_in_data");
+    }
+  }
+
+  /**
+   * Retrieves the state colors specified in the XML file.
+   *
+   * @return a map containing state-color pairs, or null if no colors are specified
+   */
+  public Map<String, String> getStateColors() {
+    //it's default
+    if (root.getElementsByTagName("colors").getLength() == 0) {
+      return null;
+    }
+    Element colors = (Element) this.root.getElementsByTagName("colors").item(0);
+    NamedNodeMap states = colors.getAttributes();
+    Map<String, String> map = new HashMap<>();
+
+    //Find each color value pairing and add it to the map
+    for (int i = 0; i < states.getLength(); i++) {
+      Node attribute = states.item(i);
+      map.put(attribute.getNodeName().trim().toLowerCase(),
+          attribute.getNodeValue().trim().toLowerCase());
+    }
+    return map;
+  }
+
+  public int getWidth() {
+    return this.width;
+  }
+
+  public int getHeight() {
+    return this.height;
+  }
+
+  public String getTypeName() {
+    return this.typeName;
+  }
+
+  public String getTitle() {
+    return this.title;
+  }
+
+  public String getAuthor() {
+    return this.author;
+  }
+
+  public String getDescription() {
+    return this.description;
+  }
+
+  public String getArrangement() {
+    return arrangement;
+  }
+
+  /**
+   * Returns a copy of the initial states.  They are parsed and checked only the first time and
+   * kept as one byte per cell, so later calls, e.g. on every reset, just copy them.  A randomized
+   * grid stays the same until rerollCells is called.
+   *
+   * @return a new 2D array of the initial cell states
+   * @throws InvalidConfigurationException if a cell state or location is invalid
+   */
+  public int[][] getCells() throws InvalidConfigurationException {
+    return copyInitialCells();
+  }
+
+  // getCells without going through subclasses, which may handle errors in their own way
+  private int[][] copyInitialCells() throws InvalidConfigurationException {
+    if (initialCells == null) {
+      try {
+        storeInitialCells(getCellsHelper());
+      } catch (NumberFormatException e) {
+        throw new InvalidConfigurationException("Invalid_number_given_in_data");
+      }
+    }
+    int[][] grid = new int[initialRows][initialCols];
+    for (int row = 0; row < initialRows; row++) {
+      int offset = row * initialCols;
+      for (int col = 0; col < initialCols; col++) {
+        grid[row][col] = initialCells[offset + col];
+      }
+    }
+    return grid;
+  }
+
+  /**
+   * Checks if a reset should draw a new random grid instead of returning to the first one, which
+   * is asked for with {@code <randomize value="yes" reroll="yes">}.
+   *
+   * @return True if the configuration is randomized and rerolls on reset
+   */
+  public boolean rerollsOnReset() {
+    Element randomizeElement = getRandomizeElement();
+    return randomizeElement != null && randomizeElement.getAttribute("reroll").equalsIgnoreCase(
+        "yes");
+  }
+
+  /**
+   * Draws a new random grid as the initial states if the configuration is randomized; otherwise
+   * the initial states stay as they are.  With a {@code <seed>} the sequence of grids is the same
+   * on every run.
+   *
+   * @throws InvalidConfigurationException if the new grid cannot be drawn
+   */
+  public void rerollCells() throws InvalidConfigurationException {
+    if (getRandomizeElement() != null) {
+      if (randomizeSeed != null) {
+        // the next seed follows from the last one, so a seeded run rerolls the same grids
+        randomizeSeed = new SplittableRandom(randomizeSeed).nextLong();
+      }
+      initialCells = null;
+      getCells();
+    }
+  }
+
+  /**
+   * Returns the seed of the next random grid: the {@code <seed>} of the configuration at first,
+   * or the clock if there is none.
+   */
+  private long getRandomizeSeed() throws InvalidConfigurationException {
+    if (randomizeSeed == null) {
+      String seed = getTextValueOrDefault(root, "seed", "");
+      try {
+        randomizeSeed = seed.isEmpty() ? System.nanoTime() : Long.parseLong(seed.trim());
+      } catch (NumberFormatException e) {
+        throw new InvalidConfigurationException("Invalid_number_given_in_data");
+      }
+    }
+    return randomizeSeed;
+  }
+
+  /**
+   * Returns the randomize element if it asks for a randomized grid, null otherwise.
+   */
+  private Element getRandomizeElement() {
+    NodeList randomizeNodes = root.getElementsByTagName("randomize");
+    if (randomizeNodes.getLength() == 0) {
+      return null;
+    }
+    Element randomizeElement = (Element) randomizeNodes.item(0);
+    return randomizeElement.getAttribute("value").equalsIgnoreCase("yes") ? randomizeElement
+        : null;
+  }
+
+  /**
+   * Keeps the checked initial states.  States fit in a byte since no game has more than
+   * Byte.MAX_VALUE states.
+   */
+  private void storeInitialCells(int[][] grid) {
+    initialRows = grid.length;
+    initialCols = (initialRows == 0) ? 0 : grid[0].length;
+    initialCells = new byte[initialRows * initialCols];
+    for (int row = 0; row < initialRows; row++) {
+      int offset = row * initialCols;
+      for (int col = 0; col < initialCols; col++) {
+        initialCells[offset + col] = (byte) grid[row][col];
+      }
+    }
+    // the grid read while streaming is no longer needed
+    streamedConfig = null;
+  }
+
+  /**
+   * Helper method to retrieve cell states from the XML file and initialize the grid accordingly. If
+   * randomization is enabled, it calls the randomization method to assign states based on
+   * proportions. Otherwise, it uses cell state values from the XML file.
+   *
+   * @return a 2D array representing the grid of cell states
+   * @throws InvalidConfigurationException if there is an error in the configuration or cell states
+   */
+  private int[][] getCellsHelper() throws InvalidConfigurationException {
+    if (snapshot != null) {
+      return getSavedCells(snapshot.getTypeName(), snapshot.getGrid());
+    }
+    if (replay != null) {
+      try {
+        return getSavedCells(replay.getTypeName(), replay.seek(replay.getFirstGeneration()));
+      } catch (IOException e) {
+        throw new InvalidConfigurationException("Invalid_trajectory");
+      }
+    }
+    int[][] grid = new int[width][height];
+    NodeList cells = this.root.getElementsByTagName("cell");
+    NodeList randomizeNodes = root.getElementsByTagName("randomize");
+    if (randomizeNodes.getLength() > 0) {
+      Element randomizeElement = (Element) randomizeNodes.item(0);
+      String randomizeValue = randomizeElement.getAttribute("value");
+      if (randomizeValue.equalsIgnoreCase("yes")) {
+        // Randomize cell state values based on proportions
+        RandomizeXml.randomizeCellStates(grid, randomizeElement, getMaxStateValue(),
+            getRandomizeSeed());
+      }
+    } else if (getGridEncoding() != GridEncoding.CELLS) {
+      // Decode the compact grid and check its states like the cell elements
+      grid = getGridEncoding().decode((Element) root.getElementsByTagName("grid").item(0),
+          width, height);
+      int maxStateValue = getMaxStateValue();
+      for (int[] row : grid) {
+        for (int state : row) {
+          if (state < 0 || state > maxStateValue) {
+            throw new InvalidConfigurationException("Invalid_cell_state_value_for_game_type");
+          }
+        }
+      }
+    } else if (streamedConfig != null) {
+      // Use the cell state values read while streaming the file
+      return getStreamedCells();
+    } else {
+      // Use cell state values from the XML file
+      for (int i = 0; i < cells.getLength(); i++) {
+        Element current = (Element) cells.item(i);
+        int row = Integer.parseInt(current.getAttribute("row"));
+        int col = Integer.parseInt(current.getAttribute("column"));
+        int state = Integer.parseInt(current.getAttribute("state"));
+
+        int maxStateValue = getMaxStateValue();
+
+        if (state < 0 || state > maxStateValue) {
+          throw new InvalidConfigurationException("Invalid_cell_state_value_for_game_type");
+        }
+        if (row < 0 || row >= this.width || col < 0 || col >= this.height) {
+          throw new InvalidConfigurationException(
+              "invalidCellLocation", row, col);
+        }
+        // Populate the grid with these states
+        grid[row][col] = state;
+      }
+    }
+    return grid;
+  }
+
+  /**
+   * Returns the encoding of the grid element, cells if there is no grid element or no encoding.
+   *
+   * @return encoding of the grid
+   * @throws InvalidConfigurationException if the encoding is unknown
+   */
+  private GridEncoding getGridEncoding() throws InvalidConfigurationException {
+    NodeList gridNodes = root.getElementsByTagName("grid");
+    if (gridNodes.getLength() == 0) {
+      return GridEncoding.CELLS;
+    }
+    return GridEncoding.fromName(((Element) gridNodes.item(0)).getAttribute("encoding"));
+  }
+
+  /**
+   * Validates the grid read in streaming mode the same way as the cells of the DOM and returns a
+   * copy of it.
+   *
+   * @return a 2D array representing the grid of cell states
+   * @throws InvalidConfigurationException if a cell state or location is invalid
+   */
+  private int[][] getStreamedCells() throws InvalidConfigurationException {
+    if (streamedConfig.getMinState() < 0
+        || streamedConfig.getMaxState() > getMaxStateValue()) {
+      throw new InvalidConfigurationException("Invalid_cell_state_value_for_game_type");
+    }
+    int[] invalidLocation = streamedConfig.getInvalidLocation();
+    if (invalidLocation != null) {
+      throw new InvalidConfigurationException(
+          "invalidCellLocation", invalidLocation[0], invalidLocation[1]);
+    }
+    int[][] streamedGrid = streamedConfig.getGrid();
+    int[][] grid = new int[width][height];
+    for (int row = 0; row < Math.min(width, streamedGrid.length); row++) {
+      System.arraycopy(streamedGrid[row], 0, grid[row], 0,
+          Math.min(height, streamedGrid[row].length));
+    }
+    return grid;
+  }
+
+  /**
+   * Checks that the states saved in a snapshot or recording fit its configuration and returns a
+   * copy of them.
+   *
+   * @param savedType normalized game type the states were saved with
+   * @param saved     the saved states
+   * @return a 2D array representing the grid of cell states
+   * @throws InvalidConfigurationException if the states do not match the configuration
+   */
+  private int[][] getSavedCells(String savedType, int[][] saved)
+      throws InvalidConfigurationException {
+    if (saved.length != width || (width > 0 && saved[0].length != height)
+        || !savedType.equals(typeName.replaceAll("\\s", "").toLowerCase())) {
+      throw new InvalidConfigurationException(
+          (replay != null) ? "Invalid_trajectory" : "Invalid_snapshot");
+    }
+    int maxStateValue = getMaxStateValue();
+    int[][] grid = new int[width][];
+    for (int row = 0; row < width; row++) {
+      grid[row] = saved[row].clone();
+      for (int state : grid[row]) {
+        if (state > maxStateValue) {
+          throw new InvalidConfigurationException("Invalid_cell_state_value_for_game_type");
+        }
+      }
+    }
+    return grid;
+  }
+
+  /**
+   * Returns the highest state a cell may have.  For a rule table it follows from the rules.
+   *
+   * @return the maximum state value for the current game type
+   * @throws InvalidConfigurationException if the rule table is missing or invalid
+   */
+  private int getMaxStateValue() throws InvalidConfigurationException {
+    if (typeName.equals("ruletable")) {
+      return RuleTableReader.getNumStates(RuleTableReader.getRulesElement(root)) - 1;
+    }
+    return maxStateValues.get(typeName);
+  }
+
+  /**
+   * Retrieves the GameType specified in the XML file.
+   *
+   * @return a GameType object corresponding to the specified game type along with its parameters
+   * @throws InvalidConfigurationException if the game type, a parameter or the cells are invalid
+   */
+  public GameType<Cell> getGameTypeFromName() throws InvalidConfigurationException {
+    return createGameType();
+  }
+
+  /**
+   * Creates the game of the configuration ready to run, with its edge type and neighbors set.
+   * Unlike getGameTypeFromName this always throws its errors, even in a subclass that reports them
+   * to the user, so it can be called on a background thread.
+   *
+   * @return the game
+   * @throws InvalidConfigurationException if the game type, a parameter or the cells are invalid
+   */
+  public GameType<Cell> createGame() throws InvalidConfigurationException {
+    GameType<Cell> game = createGameType();
+    game.setEdgeType(getEdgeType());
+    game.setArrangement(getArrangement());
+    return game;
+  }
+
+  private GameType<Cell> createGameType() throws InvalidConfigurationException {
+    typeName = typeName.replaceAll("\\s", "").toLowerCase();
+    try {
+      switch (typeName) {
+        case "fallingsand":
+          FallingSand fallingSand = new FallingSand(copyInitialCells());
+          fallingSand.setMargolusUpdate(getUpdateMode().equals("margolus"));
+          currentGame = fallingSand;
+          break;
+        case "foragingants":
+          int antsInNest = Integer.parseInt(
+              getTextValueOrDefault(root, "antsInNest", "10"));
+          int maxPheromoneLevel = Integer.parseInt(
+              getTextValueOrDefault(root, "maxPheromoneLevel", "500"));
+          double diffusionRate = Double.parseDouble(
+              getTextValueOrDefault(root, "diffusionRate", "0"));
+          additionalParams.put("antsInNest", "" + antsInNest);
+          additionalParams.put("maxPheromoneLevel", "" + maxPheromoneLevel);
+          additionalParams.put("diffusionRate", "" + diffusionRate);
+          if (getUpdateMode().equals("agents")) {
+            currentGame = new ForagingAntsColony(copyInitialCells(), antsInNest, maxPheromoneLevel,
+                diffusionRate);
+          } else {
+            currentGame = new ForagingAnts(copyInitialCells(), antsInNest, maxPheromoneLevel,
+                diffusionRate);
+          }
+          currentGame.setStateMap(StateNamesMap.ants);
+          break;
+        case "percolation":
+          currentGame = new Percolation(copyInitialCells());
+          currentGame.setStateMap(StateNamesMap.percolation);
+          break;
+
+        case "watorworld":
+          int repAgeLimit = Integer.parseInt(
+              getTextValueOrDefault(root, "reproductionAgeLimit", "5"));
+          int startingEnergy = Integer.parseInt(getTextValueOrDefault(root, "startingEnergy", "3"));
+          int fishEnergy = Integer.parseInt(getTextValueOrDefault(root, "fishEnergy", "1"));
+          additionalParams.put("repAgeLimit", "" + repAgeLimit);
+          additionalParams.put("startingEnergy", "" + startingEnergy);
+          additionalParams.put("fishEnergy", "" + fishEnergy);
+          WaTorWorld watorWorld = new WaTorWorld(copyInitialCells(), repAgeLimit, startingEnergy,
+              fishEnergy);
+          watorWorld.setParallelUpdate(getUpdateMode().equals("parallel"));
+          currentGame = watorWorld;
+          currentGame.setStateMap(StateNamesMap.wator);
+          break;
+
+        case "spreadingoffire":
+          double probCatch = Double.parseDouble(getTextValueOrDefault(root,
+              "probCatch", defaultProbability));
+          double probFillTree = Double.parseDouble(
+              getTextValueOrDefault(root, "probFillTree", defaultProbability));
+          additionalParams.put("probCatch", "" + probCatch);
+          additionalParams.put("probFillTree", "" + probFillTree);
+          currentGame = new SpreadingOfFire(copyInitialCells(), probCatch, probFillTree);
+          currentGame.setStateMap(StateNamesMap.spreadingOfFire);
+          break;
+
+        case "modelofsegregation":
+          double neighborPercentage = Double.parseDouble(getTextValueOrDefault(root,
+              "neighborPercentage", defaultProbability));
+          additionalParams.put("neighborPercentage", "" + neighborPercentage);
+          currentGame = new ModelOfSegregation(copyInitialCells(), neighborPercentage);
+          currentGame.setStateMap(StateNamesMap.segregation);
+          break;
+
+        case "gameoflife":
+          currentGame = new GameOfLife(copyInitialCells());
+          currentGame.setStateMap(StateNamesMap.gameOfLife);
+          break;
+
+        case "ruletable":
+          Element rulesElement = RuleTableReader.getRulesElement(root);
+          int numStates = RuleTableReader.getNumStates(rulesElement);
+          RuleTable ruleTable;
+          try {
+            ruleTable = new RuleTable(copyInitialCells(), numStates,
+                RuleTableReader.parseRules(rulesElement, numStates));
+          } catch (IllegalArgumentException e) {
+            throw new InvalidConfigurationException("Invalid_rule_table");
+          }
+          ruleTable.setGeneratedKernel(getUpdateMode().equals("generated"));
+          currentGame = ruleTable;
+          currentGame.setStateMap(RuleTableReader.parseStateNames(rulesElement, numStates));
+          break;
+
+        default:
+          throw new InvalidConfigurationException("Invalid_game_type");
+      }
+      String seed = getTextValueOrDefault(root, "seed", "");
+      if (!seed.isEmpty()) {
+        currentGame.setSeed(Long.parseLong(seed));
+      }
+      for (HashMap.Entry<String, String> e : additionalParams.entrySet()) {
+        if (Double.parseDouble(e.getValue()) < 0) {
+          throw new InvalidConfigurationException(
+              "negativeParameterValue",
+              e.getKey()
+          );
+        }
+      }
+      restoreSnapshot(currentGame);
+    } catch (NumberFormatException e) {
+      throw new InvalidConfigurationException("Invalid_number_given_in_data");
+    }
+    return currentGame;
+  }
+
+  /**
+   * If this parser read a snapshot, restores the saved parameters, seed, random state, generation
+   * and extra planes of a game that was created from its states, e.g. after a reset.
+   *
+   * @param game the game to restore
+   */
+  public void restoreSnapshot(GameType<?> game) {
+    if (snapshot != null) {
+      snapshot.restore(game);
+    }
+  }
+
+  /**
+   * Getter for the recording being replayed
+   *
+   * @return the player of the recording, or null if this parser did not read a recording
+   */
+  public TrajectoryPlayer getReplay() {
+    return replay;
+  }
+
+  /**
+   * Creates a recorder for the game if the configuration has a record element, e.g.
+   * {@code <record file="run.celltraj" keyframes="64"/>}, and records the current states as its
+   * first frame.  A relative file is next to the configuration file, and without a file the
+   * recording is named after the configuration file.
+   *
+   * @param game the game to record
+   * @return the recorder, or null if recording is not configured or this is a replay
+   * @throws InvalidConfigurationException if the record element is invalid or the file cannot be
+   *                                       written
+   */
+  public TrajectoryRecorder createRecorder(GameType<?> game)
+      throws InvalidConfigurationException {
+    NodeList recordNodes = root.getElementsByTagName("record");
+    if (recordNodes.getLength() == 0 || replay != null) {
+      return null;
+    }
+    Element record = (Element) recordNodes.item(0);
+    try {
+      int keyframes = record.getAttribute("keyframes").isBlank()
+          ? TrajectoryRecorder.DEFAULT_KEYFRAME_INTERVAL
+          : Integer.parseInt(record.getAttribute("keyframes").trim());
+      if (keyframes < 1) {
+        throw new NumberFormatException("Keyframe interval must be positive");
+      }
+      String fileName = record.getAttribute("file").trim();
+      File file;
+      if (fileName.isEmpty()) {
+        file = new File(xmlFile.getPath().replaceFirst("\\.xml$", "")
+            + TrajectoryRecorder.EXTENSION);
+      } else {
+        file = new File(fileName);
+        if (!file.isAbsolute()) {
+          file = new File(xmlFile.getAbsoluteFile().getParentFile(), fileName);
+        }
+      }
+      return new TrajectoryRecorder(file, typeName.replaceAll("\\s", "").toLowerCase(),
+          createConfigXml("", "", ""), game.createStateGrid(), game.getGeneration(), keyframes);
+    } catch (NumberFormatException e) {
+      throw new InvalidConfigurationException("Invalid_number_given_in_data");
+    } catch (IOException | ParserConfigurationException | TransformerException e) {
+      throw new InvalidConfigurationException("Invalid_XML_Configuration");
+    }
+  }
+
+  /**
+   * Creates the history that lets the user step back, limited by the history element if there is
+   * one, e.g. {@code <history generations="1000" megabytes="64"/>}.
+   *
+   * @return the history, or null if it is turned off with zero generations or this is a replay
+   * @throws InvalidConfigurationException if a limit is not a non-negative number
+   */
+  public History createHistory() throws InvalidConfigurationException {
+    if (replay != null) {
+      return null;
+    }
+    int generations = History.DEFAULT_MAX_GENERATIONS;
+    long bytes = History.DEFAULT_MAX_BYTES;
+    NodeList historyNodes = root.getElementsByTagName("history");
+    if (historyNodes.getLength() > 0) {
+      Element history = (Element) historyNodes.item(0);
+      try {
+        if (!history.getAttribute("generations").isBlank()) {
+          generations = Integer.parseInt(history.getAttribute("generations").trim());
+        }
+        if (!history.getAttribute("megabytes").isBlank()) {
+          bytes = (long) (Double.parseDouble(history.getAttribute("megabytes").trim())
+              * 1024 * 1024);
+        }
+        if (generations < 0 || bytes < 0) {
+          throw new NumberFormatException("Negative history limit");
+        }
+      } catch (NumberFormatException e) {
+        throw new InvalidConfigurationException("Invalid_number_given_in_data");
+      }
+    }
+    return (generations == 0 || bytes == 0) ? null : new History(generations, bytes);
+  }
+
+  /**
+   * Returns the frame budget of turbo mode from the turbo element if there is one, e.g.
+   * {@code <turbo frameBudget="16"/>}: how many milliseconds of generations run before the latest
+   * one is handed to the GUI.
+   *
+   * @return the frame budget in milliseconds, or 0 to hand over a generation whenever the GUI
+   * has shown the previous one
+   * @throws InvalidConfigurationException if the frame budget is not a non-negative number
+   */
+  public double getTurboFrameBudget() throws InvalidConfigurationException {
+    NodeList turboNodes = root.getElementsByTagName("turbo");
+    if (turboNodes.getLength() == 0) {
+      return 0;
+    }
+    String frameBudget = ((Element) turboNodes.item(0)).getAttribute("frameBudget");
+    if (frameBudget.isBlank()) {
+      return 0;
+    }
+    try {
+      double milliseconds = Double.parseDouble(frameBudget.trim());
+      if (!(milliseconds >= 0)) {
+        throw new NumberFormatException("Negative frame budget");
+      }
+      return milliseconds;
+    } catch (NumberFormatException e) {
+      throw new InvalidConfigurationException("Invalid_number_given_in_data");
+    }
+  }
+
+  /**
+   * Creates a checkpointer for the game if the configuration has a checkpoint element, e.g.
+   * {@code <checkpoint generations="1000" seconds="600" file="run.cellsnap"/>}.  A relative file
+   * is next to the configuration file.  Without a file, a snapshot checkpoints into itself and a
+   * configuration file into a snapshot named after it.
+   *
+   * @param game the game to checkpoint
+   * @return the checkpointer, or null if checkpoints are not configured
+   * @throws InvalidConfigurationException if an interval is not a non-negative number, or the
+   *                                       configuration cannot be written as XML
+   */
+  public Checkpointer createCheckpointer(GameType<?> game) throws InvalidConfigurationException {
+    NodeList checkpointNodes = root.getElementsByTagName("checkpoint");
+    if (checkpointNodes.getLength() == 0) {
+      return null;
+    }
+    Element checkpoint = (Element) checkpointNodes.item(0);
+    try {
+      long generations = checkpoint.getAttribute("generations").isBlank() ? 0
+          : Long.parseLong(checkpoint.getAttribute("generations").trim());
+      double seconds = checkpoint.getAttribute("seconds").isBlank() ? 0
+          : Double.parseDouble(checkpoint.getAttribute("seconds").trim());
+      if (generations < 0 || seconds < 0) {
+        throw new NumberFormatException("Negative checkpoint interval");
+      }
+      File file;
+      String fileName = checkpoint.getAttribute("file").trim();
+      if (!fileName.isEmpty()) {
+        file = new File(fileName);
+        if (!file.isAbsolute()) {
+          file = new File(xmlFile.getAbsoluteFile().getParentFile(), fileName);
+        }
+      } else if (snapshot != null) {
+        file = xmlFile;
+      } else {
+        file = new File(xmlFile.getPath().replaceFirst("\\.xml$", "") + ".checkpoint"
+            + Snapshot.EXTENSION);
+      }
+      return new Checkpointer(typeName.replaceAll("\\s", "").toLowerCase(),
+          createConfigXml("", "", ""), game, file, generations, seconds);
+    } catch (NumberFormatException e) {
+      throw new InvalidConfigurationException("Invalid_number_given_in_data");
+    } catch (ParserConfigurationException | TransformerException e) {
+      throw new InvalidConfigurationException("Invalid_XML_Configuration");
+    }
+  }
+
+  /**
+   * Retrieves the text content of the specified tag name from the given XML element. If the tag is
+   * found and has non-empty text content, returns the trimmed text content. Otherwise, returns the
+   * default value.
+   *
+   * @param e            the XML element to search for the tag
+   * @param tagName      the name of the tag to retrieve text content from
+   * @param defaultValue the default value to return if the tag is not found or has empty text
+   *                     content
+   * @return the text content of the specified tag or the default value
+   */
+  private String getTextValueOrDefault(Element e, String tagName, String defaultValue) {
+    NodeList nodeList = e.getElementsByTagName(tagName);
+    if (nodeList.getLength() > 0) {
+      String textContent = nodeList.item(0).getTextContent().trim();
+      if (!textContent.isEmpty()) {
+        return textContent;
+      }
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Creates a new XML configuration file with everything but the cells: its grid element is
+   * empty.  Together with a copy of the states this is a consistent copy of the configuration
+   * that can be written by a StreamingConfigWriter on another thread.
+   *
+   * @return the newly created XML document
+   * @throws InvalidConfigurationException if no document can be created
+   */
+  public Document createConfigSkeleton(String newTitle, String newAuthor, String newDesc)
+      throws InvalidConfigurationException {
+    try {
+      Document skeleton = createConfigDocument(newTitle, newAuthor, newDesc);
+      createAndAppend(skeleton, "grid", skeleton.getDocumentElement(), null);
+      return skeleton;
+    } catch (ParserConfigurationException e) {
+      throw new InvalidConfigurationException("Invalid_XML_Configuration");
+    }
+  }
+
+
+  /**
+   * Takes a binary snapshot of the current game.  The configuration is kept without its grid, so
+   * the title, colors, rules, edge type and so on are restored as well.
+   *
+   * @return the snapshot, ready to be written
+   * @throws ParserConfigurationException if no document can be created for the configuration
+   * @throws TransformerException         if the configuration cannot be written as XML
+   */
+  public Snapshot createSnapshot(String newTitle, String newAuthor, String newDesc)
+      throws ParserConfigurationException, TransformerException {
+    return new Snapshot(typeName.replaceAll("\\s", "").toLowerCase(),
+        createConfigXml(newTitle, newAuthor, newDesc), currentGame);
+  }
+
+  /**
+   * Writes the configuration without its grid as XML, see createConfigDocument.
+   *
+   * @return the configuration XML
+   * @throws ParserConfigurationException if no document can be created for the configuration
+   * @throws TransformerException         if the configuration cannot be written as XML
+   */
+  private String createConfigXml(String newTitle, String newAuthor, String newDesc)
+      throws ParserConfigurationException, TransformerException {
+    StringWriter xml = new StringWriter();
+    TransformerFactory.newInstance().newTransformer()
+        .transform(new DOMSource(createConfigDocument(newTitle, newAuthor, newDesc)),
+            new StreamResult(xml));
+    return xml.toString();
+  }
+
+  /**
+   * Copies every element of the configuration but its grid and randomize elements, since the
+   * cells are saved, with the title, author and description replaced by the new ones that are not
+   * empty.
+   *
+   * @return the configuration without its grid
+   * @throws ParserConfigurationException if no document can be created for the configuration
+   */
+  private Document createConfigDocument(String newTitle, String newAuthor, String newDesc)
+      throws ParserConfigurationException {
+    Document config = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    Element configRoot = (Element) config.importNode(root, false);
+    config.appendChild(configRoot);
+    for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (!child.getNodeName().equals("grid") && !child.getNodeName().equals("randomize")) {
+        configRoot.appendChild(config.importNode(child, true));
+      }
+    }
+    if (!newTitle.isEmpty()) {
+      this.title = newTitle;
+    }
+    if (!newAuthor.isEmpty()) {
+      this.author = newAuthor;
+    }
+    if (!newDesc.isEmpty()) {
+      this.description = newDesc;
+    }
+    configRoot.getElementsByTagName("title").item(0).setTextContent(title);
+    configRoot.getElementsByTagName("author").item(0).setTextContent(author);
+    configRoot.getElementsByTagName("description").item(0).setTextContent(description);
+    return config;
+  }
+
+  /**
+   * Creates a new Element with the specified tagName, sets its text content to the given content,
+   * appends it to the specified root Element, and returns the newly created Element.
+   *
+   * @param file    the Document to which the new Element belongs
+   * @param tagName the tag name of the new Element
+   * @param root    the root Element to which the new Element will be appended
+   * @param content the text content of the new Element
+   * @return the newly created Element
+   */
+  private static Element createAndAppend(Document file, String tagName, Element root,
+      String content) {
+    Element child = file.createElement(tagName);
+    child.setTextContent(content);
+    root.appendChild(child);
+    return child;
+  }
+}
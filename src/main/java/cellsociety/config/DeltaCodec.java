@@ -0,0 +1,198 @@
+package cellsociety.config;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable little endian byte buffer for compact binary records, with variable length integers
+ * (7 bits per byte, LEB128) and change lists.  A change list is a sequence of (gap to the previous
+ * changed index, zigzag encoded difference) pairs that ends with a gap of zero, so a few changed
+ * cells of a large grid take a few bytes each and unchanged runs cost nothing.
+ */
+public class DeltaCodec {
+
+  private byte[] bytes = new byte[256];
+  private int size;
+  private long lastIndex = -1;
+
+  /**
+   * Callback for the changes read by readChanges
+   */
+  public interface ChangeConsumer {
+
+    /**
+     * Called for every changed value
+     *
+     * @param index index of the value
+     * @param delta new value minus old value
+     */
+    void accept(long index, int delta);
+  }
+
+  /**
+   * Appends an unsigned variable length integer
+   *
+   * @param value value to write, treated as unsigned
+   */
+  public void writeVarint(long value) {
+    ensureCapacity(10);
+    while ((value & ~0x7FL) != 0) {
+      bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    bytes[size++] = (byte) value;
+  }
+
+  /**
+   * Appends a signed value as a zigzag encoded variable length integer, so small negative values
+   * stay short
+   *
+   * @param value value to write
+   */
+  public void writeSignedVarint(long value) {
+    writeVarint((value << 1) ^ (value >> 63));
+  }
+
+  public void writeLong(long value) {
+    ensureCapacity(Long.BYTES);
+    ByteBuffer.wrap(bytes, size, Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(value);
+    size += Long.BYTES;
+  }
+
+  public void writeDouble(double value) {
+    writeLong(Double.doubleToLongBits(value));
+  }
+
+  /**
+   * Appends a string as its UTF-8 length followed by its UTF-8 bytes
+   *
+   * @param value string to write
+   */
+  public void writeString(String value) {
+    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+    writeVarint(utf8.length);
+    ensureCapacity(utf8.length);
+    System.arraycopy(utf8, 0, bytes, size, utf8.length);
+    size += utf8.length;
+  }
+
+  /**
+   * Appends one change of the current change list.  Indexes must increase within a list.
+   *
+   * @param index index of the changed value
+   * @param delta new value minus old value
+   */
+  public void writeChange(long index, int delta) {
+    writeVarint(index - lastIndex);
+    writeSignedVarint(delta);
+    lastIndex = index;
+  }
+
+  /**
+   * Appends every value that differs between two arrays to the current change list.
+   *
+   * @param previous old values, or null for all zeros
+   * @param current  new values
+   * @param offset   index of the first value, so several arrays can form one list
+   */
+  public void writeChanges(int[] previous, int[] current, long offset) {
+    for (int i = 0; i < current.length; i++) {
+      int old = (previous == null) ? 0 : previous[i];
+      if (current[i] != old) {
+        writeChange(offset + i, current[i] - old);
+      }
+    }
+  }
+
+  /**
+   * Ends the current change list
+   */
+  public void endChanges() {
+    writeVarint(0);
+    lastIndex = -1;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Drops everything written after the first size bytes
+   *
+   * @param size number of bytes to keep, e.g. an earlier result of size()
+   */
+  public void truncate(int size) {
+    if (size < 0 || size > this.size) {
+      throw new IllegalArgumentException("Cannot truncate to " + size + " bytes");
+    }
+    this.size = size;
+    lastIndex = -1;
+  }
+
+  /**
+   * Returns a copy of the bytes written so far
+   *
+   * @return written bytes
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(bytes, size);
+  }
+
+  private void ensureCapacity(int extra) {
+    if (size + extra > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+    }
+  }
+
+  /**
+   * Reads an unsigned variable length integer
+   *
+   * @param in buffer to read from
+   * @return the value
+   * @throws IllegalArgumentException if the integer is longer than 64 bits
+   */
+  public static long readVarint(ByteBuffer in) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte next = in.get();
+      value |= (long) (next & 0x7F) << shift;
+      if (next >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Variable length integer is too long");
+  }
+
+  public static long readSignedVarint(ByteBuffer in) {
+    long value = readVarint(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Reads a string written by writeString
+   *
+   * @param in buffer to read from
+   * @return the string
+   */
+  public static String readString(ByteBuffer in) {
+    byte[] utf8 = new byte[(int) readVarint(in)];
+    in.get(utf8);
+    return new String(utf8, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads one change list and passes every change to the consumer
+   *
+   * @param in       buffer to read from
+   * @param consumer receives the changes in order
+   */
+  public static void readChanges(ByteBuffer in, ChangeConsumer consumer) {
+    long index = -1;
+    for (long gap = readVarint(in); gap != 0; gap = readVarint(in)) {
+      index += gap;
+      consumer.accept(index, (int) readSignedVarint(in));
+    }
+  }
+}
@@ -1,19 +1,29 @@
 package cellsociety.config;
 
+import cellsociety.model.cells.Cell;
+import cellsociety.model.gametypes.GameType;
 import cellsociety.view.GamePlay;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.DoubleConsumer;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import org.w3c.dom.Document;
 
 
@@ -29,10 +39,46 @@ public class FileManagement {
 
   // kind of data files to look for
   public static final String DATA_FILE_EXTENSION = "*.xml";
-  private static final FileChooser FILE_CHOOSER = makeChooser(DATA_FILE_EXTENSION);
+  public static final String SNAPSHOT_FILE_EXTENSION = "*" + Snapshot.EXTENSION;
+  public static final String TRAJECTORY_FILE_EXTENSION = "*" + TrajectoryRecorder.EXTENSION;
+  private static final FileChooser FILE_CHOOSER = makeChooser(DATA_FILE_EXTENSION,
+      SNAPSHOT_FILE_EXTENSION, TRAJECTORY_FILE_EXTENSION);
   private GamePlay[] gamePlays;
 
   public static final int MAX_FILES = 2;
+  // saves run one after another, off the JavaFX thread
+  private static final ExecutorService SAVE_EXECUTOR = Executors.newSingleThreadExecutor(
+      runnable -> {
+        Thread thread = new Thread(runnable, "save-writer");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  // configurations load at the same time, off the JavaFX thread
+  private static final ExecutorService LOAD_EXECUTOR = Executors.newFixedThreadPool(MAX_FILES,
+      runnable -> {
+        Thread thread = new Thread(runnable, "config-loader");
+        thread.setDaemon(true);
+        return thread;
+      });
+  // reading the file, creating the game and building its GUI
+  private static final int NUM_LOAD_STAGES = 3;
+
+  /**
+   * Writes a file from a copy of the configuration taken on the simulation thread.
+   */
+  private interface SaveAction {
+
+    void write(DoubleConsumer progress) throws Exception;
+  }
+
+  /**
+   * One stage of loading a file on a load thread.
+   */
+  private interface LoadStage<T> {
+
+    T run() throws InvalidConfigurationException;
+  }
 
   static {
     // Load resource bundle
@@ -44,32 +90,106 @@ public class FileManagement {
   }
 
   /**
-   * Retrieves a file using a FileChooser dialog.
+   * Retrieves up to MAX_FILES files using a FileChooser dialog and loads their simulations in the
+   * background, see startLoad.
    *
    * @param primaryStage the primary stage of the JavaFX application
+   * @param onLoaded     runs on the JavaFX thread once the simulations are loaded, or right away if
+   *                     no file was chosen; getGamePlays returns them
    */
-  public void retrieveFile(Stage primaryStage) {
+  public void retrieveFile(Stage primaryStage, Runnable onLoaded) {
     List<File> files = FILE_CHOOSER.showOpenMultipleDialog(primaryStage);
-    try {
-      if (files != null) {
-        if (files.size() <= MAX_FILES) {
-          gamePlays = new GamePlay[files.size()];
-          for (int i = 0; i < files.size(); i++) {
-            gamePlays[i] = new GamePlay(files.get(i), primaryStage, this, files.size());
+    if (files == null) {
+      onLoaded.run();
+    } else if (files.size() <= MAX_FILES) {
+      startLoad(files, primaryStage, onLoaded);
+    } else {
+      showMessage(AlertType.ERROR, "TooManyFiles");
+      retrieveFile(primaryStage, onLoaded);
+    }
+  }
+
+  /**
+   * Loads the simulations of the files on the load threads, all files at the same time, while a
+   * small window shows how far each one is.  Every file is read, then its game is created from the
+   * initial states, then its GUI is built.  The languages of the files are set on the JavaFX thread
+   * once all of them are read, in the order of the files as if they were loaded one after another,
+   * so the GUIs are built in the same language.  Only showing the simulations is left to the
+   * JavaFX thread.  An invalid file is reported and closes the application.
+   */
+  private void startLoad(List<File> files, Stage primaryStage, Runnable onLoaded) {
+    VBox root = new VBox(10);
+    root.setPadding(new Insets(10));
+    Stage progressWindow = new Stage();
+    progressWindow.setTitle(resourceBundle.getString("Loading_file"));
+    progressWindow.setScene(new Scene(root));
+
+    List<CompletableFuture<Parser>> parsers = new ArrayList<>();
+    List<ProgressBar> progressBars = new ArrayList<>();
+    for (File file : files) {
+      ProgressBar progressBar = new ProgressBar(0);
+      progressBar.setPrefWidth(300);
+      root.getChildren().addAll(
+          new Label(resourceBundle.getString("Loading_file") + " " + file.getName()), progressBar);
+      progressBars.add(progressBar);
+      parsers.add(CompletableFuture.supplyAsync(
+          () -> runStage(() -> Parser.read(file), progressBar, 1), LOAD_EXECUTOR));
+    }
+    CompletableFuture<Void> languagesSet = CompletableFuture.allOf(
+            parsers.toArray(new CompletableFuture<?>[0]))
+        .thenRunAsync(() -> parsers.forEach(
+            parser -> parser.join().setDefaultLocaleFromLanguageTag()), Platform::runLater);
+
+    List<CompletableFuture<GamePlay>> loaded = new ArrayList<>();
+    for (int i = 0; i < files.size(); i++) {
+      CompletableFuture<Parser> parser = parsers.get(i);
+      ProgressBar progressBar = progressBars.get(i);
+      CompletableFuture<GameType<Cell>> game = parser.thenApplyAsync(
+          current -> runStage(current::createGame, progressBar, 2), LOAD_EXECUTOR);
+      loaded.add(game.thenCombineAsync(languagesSet,
+          (current, ignored) -> runStage(() -> new GamePlay(parser.join(), current, primaryStage,
+              this, files.size()), progressBar, NUM_LOAD_STAGES), LOAD_EXECUTOR));
+    }
+
+    CompletableFuture.allOf(loaded.toArray(new CompletableFuture<?>[0]))
+        .whenCompleteAsync((ignored, error) -> {
+          if (error != null) {
+            Parser.showFatalError(error);
+            return;
           }
-        } else {
-          showMessage(AlertType.ERROR, "TooManyFiles");
-          retrieveFile(primaryStage);
-        }
-      }
-    } catch (Exception e) {
-      // Show an error message or handle the case where the user doesn't select exactly two files
-      e.printStackTrace();
+          if (gamePlays != null) {
+            for (GamePlay gamePlay : gamePlays) {
+              gamePlay.close();
+            }
+          }
+          gamePlays = new GamePlay[loaded.size()];
+          for (int i = 0; i < gamePlays.length; i++) {
+            gamePlays[i] = loaded.get(i).join();
+          }
+          onLoaded.run();
+          for (GamePlay gamePlay : gamePlays) {
+            gamePlay.start();
+          }
+          progressWindow.close();
+        }, Platform::runLater);
+    progressWindow.show();
+  }
+
+  /**
+   * Runs a stage of loading a file and moves its progress bar to the end of the stage.
+   */
+  private static <T> T runStage(LoadStage<T> stage, ProgressBar progressBar, int stagesDone) {
+    try {
+      T result = stage.run();
+      Platform.runLater(() -> progressBar.setProgress((double) stagesDone / NUM_LOAD_STAGES));
+      return result;
+    } catch (InvalidConfigurationException e) {
+      throw new CompletionException(e);
     }
   }
 
   public GamePlay[] getGamePlays() {
-    return Arrays.copyOf(gamePlays, gamePlays.length);
+    return (gamePlays == null) ? null : Arrays.copyOf(gamePlays, gamePlays.length);
   }
 
   /**
@@ -87,16 +207,16 @@ public class FileManagement {
   /**
    * Creates a FileChooser with sensible default settings.
    *
-   * @param extensionAccepted the accepted file extension
+   * @param extensionsAccepted the accepted file extensions
    * @return a FileChooser instance with default settings
    */
-  private static FileChooser makeChooser(String extensionAccepted) {
+  private static FileChooser makeChooser(String... extensionsAccepted) {
     FileChooser result = new FileChooser();
     result.setTitle("Open Data File");
     // pick a reasonable place to start searching for files
     result.setInitialDirectory(new File(DATA_FILE_FOLDER));
     result.getExtensionFilters()
-        .setAll(new FileChooser.ExtensionFilter("Data Files", extensionAccepted));
+        .setAll(new FileChooser.ExtensionFilter("Data Files", extensionsAccepted));
     return result;
   }
 
@@ -104,14 +224,22 @@ public class FileManagement {
    * Saves the current configuration to a file.
    */
   public void saveFile(String title, String author, String desc, GamePlay gamePlay) {
+    saveFile(title, author, desc, GridEncoding.CELLS, gamePlay);
+  }
+
+  /**
+   * Saves the current configuration to a file, writing the grid with the given encoding.  If a
+   * snapshot file is chosen, a binary snapshot is written instead, which also keeps the internal
+   * state of the simulation so that it can be continued exactly.
+   * <p>
+   * The states are copied on the simulation thread between two generations, so the file holds a
+   * consistent generation, while building and writing the file happen on a background thread.
+   * The simulations keep running meanwhile and a small window shows the progress.
+   */
+  public void saveFile(String title, String author, String desc, GridEncoding encoding,
+      GamePlay gamePlay) {
     try {
       Parser currentParser = gamePlay.getParser();
-      Document newFile = currentParser.createConfigFile(title, author, desc);
-
-      TransformerFactory factory = TransformerFactory.newInstance();
-      Transformer transformer = factory.newTransformer();
-      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-      DOMSource source = new DOMSource(newFile);
 
       //Make a file chooser dialog box
       FileChooser fileChooser = new FileChooser();
@@ -120,18 +248,84 @@ public class FileManagement {
       fileChooser.setInitialFileName(currentParser.getTitle() + ".xml");
       FileChooser.ExtensionFilter extFilter = new FileChooser
           .ExtensionFilter("XML files (*.xml)", "*.xml");
-      fileChooser.getExtensionFilters().add(extFilter);
+      FileChooser.ExtensionFilter snapshotFilter = new FileChooser
+          .ExtensionFilter("Snapshots (" + SNAPSHOT_FILE_EXTENSION + ")", SNAPSHOT_FILE_EXTENSION);
+      fileChooser.getExtensionFilters().addAll(extFilter, snapshotFilter);
 
       File selectedFile = fileChooser.showSaveDialog(null);
-      if (selectedFile != null) {
-        StreamResult result = new StreamResult(selectedFile);
-        transformer.transform(source, result);
-
-        showMessage(AlertType.INFORMATION,
-            "Successfully saved file. Please check the selected location to find it.");
+      if (selectedFile == null) {
+        return;
+      }
+      if (Snapshot.isSnapshot(selectedFile)
+          || fileChooser.getSelectedExtensionFilter() == snapshotFilter) {
+        File snapshotFile = Snapshot.isSnapshot(selectedFile) ? selectedFile
+            : new File(selectedFile.getPath() + Snapshot.EXTENSION);
+        gamePlay.readGame(() -> currentParser.createSnapshot(title, author, desc))
+            .thenAcceptAsync(snapshot -> startSave(snapshotFile,
+                progress -> snapshot.write(snapshotFile, progress)), Platform::runLater)
+            .exceptionally(FileManagement::showSaveError);
+      } else {
+        gamePlay.readGame(() -> {
+          Document newFile = currentParser.createConfigSkeleton(title, author, desc);
+          int[][] grid = gamePlay.getGame().createStateGrid();
+          return (SaveAction) progress -> StreamingConfigWriter.write(newFile, grid, encoding,
+              selectedFile, progress);
+        }).thenAcceptAsync(action -> startSave(selectedFile, action), Platform::runLater)
+            .exceptionally(FileManagement::showSaveError);
       }
     } catch (Exception e) {
       e.printStackTrace();
     }
   }
+
+  /**
+   * Shows why the configuration could not be copied for saving; the simulation keeps running.
+   * Other errors are only printed.
+   */
+  private static Void showSaveError(Throwable error) {
+    Throwable cause = (error instanceof CompletionException) ? error.getCause() : error;
+    if (cause instanceof InvalidConfigurationException invalid) {
+      Platform.runLater(() -> Parser.showErrorDialog(invalid));
+    } else {
+      error.printStackTrace();
+    }
+    return null;
+  }
+
+  /**
+   * Runs a save on the save thread and shows its progress until it is done.
+   */
+  private void startSave(File file, SaveAction action) {
+    Task<Void> task = new Task<>() {
+      @Override
+      protected Void call() throws Exception {
+        action.write(fraction -> updateProgress(fraction, 1));
+        return null;
+      }
+    };
+
+    ProgressBar progressBar = new ProgressBar();
+    progressBar.progressProperty().bind(task.progressProperty());
+    progressBar.setPrefWidth(300);
+    Label label = new Label(LanguageManager.getText("Saving_file") + " " + file.getName());
+    VBox root = new VBox(10, label, progressBar);
+    root.setPadding(new Insets(10));
+    Stage progressWindow = new Stage();
+    progressWindow.setTitle(LanguageManager.getText("Saving_file"));
+    progressWindow.setScene(new Scene(root));
+
+    task.setOnSucceeded(event -> {
+      progressWindow.close();
+      new Alert(AlertType.INFORMATION,
+          LanguageManager.getText("Saved_file") + " " + file.getPath()).show();
+    });
+    task.setOnFailed(event -> {
+      progressWindow.close();
+      task.getException().printStackTrace();
+      new Alert(AlertType.ERROR,
+          LanguageManager.getText("Save_failed") + " " + file.getPath()).show();
+    });
+    progressWindow.show();
+    SAVE_EXECUTOR.execute(task);
+  }
 }
@@ -0,0 +1,279 @@
+package cellsociety.config;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.w3c.dom.Element;
+
+/**
+ * The ways the grid of a configuration file can be written.  The encoding is given by the encoding
+ * attribute of the grid element:
+ * <ul>
+ *   <li>cells (default): one cell element per cell</li>
+ *   <li>rle: one line per row ending in ';', each made of runs "state*count" (or just "state" for
+ *   a single cell), e.g. "0*12 1*3 0;"</li>
+ *   <li>base64: the states packed row by row into bytes, first bit first, behind one byte that
+ *   holds the number of bits per state (1, 2, 4 or 8)</li>
+ *   <li>sparse: "row,column,state" for every cell that is not in the state given by the default
+ *   attribute</li>
+ * </ul>
+ * Grids are indexed as [row][column], with width rows and height columns like the rest of the
+ * ConfigLoader.
+ */
+public enum GridEncoding {
+  CELLS, RLE, BASE64, SPARSE;
+
+  /**
+   * Finds the encoding with the given name, ignoring case.  An empty name means cells.
+   *
+   * @param name name of the encoding
+   * @return the encoding
+   * @throws InvalidConfigurationException if there is no encoding with that name
+   */
+  public static GridEncoding fromName(String name) throws InvalidConfigurationException {
+    if (name == null || name.isBlank()) {
+      return CELLS;
+    }
+    for (GridEncoding encoding : values()) {
+      if (encoding.getName().equals(name.trim().toLowerCase())) {
+        return encoding;
+      }
+    }
+    throw new InvalidConfigurationException("Invalid_grid_encoding");
+  }
+
+  /**
+   * Getter for the name of the encoding as used in the encoding attribute
+   *
+   * @return lower case name
+   */
+  public String getName() {
+    return name().toLowerCase();
+  }
+
+  /**
+   * Reads the grid from the text (and attributes) of a grid element.  Cell elements are read by
+   * the ConfigLoader itself, so this is only used for the compact encodings.
+   *
+   * @param gridElement the grid element
+   * @param width       number of rows
+   * @param height      number of columns
+   * @return 2D array of cell states
+   * @throws InvalidConfigurationException if the text does not describe a grid of that size
+   */
+  public int[][] decode(Element gridElement, int width, int height)
+      throws InvalidConfigurationException {
+    int[][] grid = new int[width][height];
+    String text = gridElement.getTextContent().trim();
+    try {
+      switch (this) {
+        case RLE:
+          decodeRle(text, grid);
+          break;
+        case BASE64:
+          decodeBase64(text, grid);
+          break;
+        case SPARSE:
+          decodeSparse(text, grid, gridElement.getAttribute("default"));
+          break;
+        default:
+          throw new InvalidConfigurationException("Invalid_grid_encoding");
+      }
+    } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+      throw new InvalidConfigurationException("Invalid_grid_encoding");
+    }
+    return grid;
+  }
+
+  /**
+   * Writes the grid as the attributes and text of a grid element just started on a stream writer.
+   * Run length and sparse text is written one row at a time.
+   *
+   * @param grid     2D array of cell states
+   * @param writer   the writer, right after the start of the grid element
+   * @param progress receives the fraction of rows written so far
+   * @throws XMLStreamException if the text cannot be written
+   */
+  void write(int[][] grid, XMLStreamWriter writer, DoubleConsumer progress)
+      throws XMLStreamException {
+    writer.writeAttribute("encoding", getName());
+    StringBuilder text = new StringBuilder();
+    switch (this) {
+      case RLE:
+        for (int row = 0; row < grid.length; row++) {
+          text.setLength(0);
+          appendRleRow(grid[row], text);
+          writer.writeCharacters(text.toString());
+          progress.accept((double) (row + 1) / grid.length);
+        }
+        break;
+      case BASE64:
+        writer.writeCharacters(encodeBase64(grid));
+        break;
+      case SPARSE:
+        int defaultState = mostCommonState(grid);
+        writer.writeAttribute("default", Integer.toString(defaultState));
+        for (int row = 0; row < grid.length; row++) {
+          text.setLength(0);
+          appendSparseRow(row, grid[row], defaultState, text);
+          writer.writeCharacters(text.toString());
+          progress.accept((double) (row + 1) / grid.length);
+        }
+        break;
+      default:
+        throw new IllegalStateException("Cells are written by the StreamingConfigWriter");
+    }
+    writer.writeCharacters("\n");
+  }
+
+  private static void decodeRle(String text, int[][] grid) throws InvalidConfigurationException {
+    String[] rows = text.split(";");
+    int numRows = rows.length;
+    if (numRows > 0 && rows[numRows - 1].isBlank()) {
+      numRows--;
+    }
+    if (numRows != grid.length) {
+      throw new InvalidConfigurationException("Invalid_grid_encoding");
+    }
+    for (int row = 0; row < numRows; row++) {
+      int col = 0;
+      for (String run : rows[row].trim().split("\\s+")) {
+        if (run.isEmpty()) {
+          continue;
+        }
+        int star = run.indexOf('*');
+        int state = Integer.parseInt(star < 0 ? run : run.substring(0, star));
+        int count = (star < 0) ? 1 : Integer.parseInt(run.substring(star + 1));
+        if (count < 0 || col + count > grid[row].length) {
+          throw new InvalidConfigurationException("Invalid_grid_encoding");
+        }
+        for (int i = 0; i < count; i++) {
+          grid[row][col++] = state;
+        }
+      }
+      if (col != grid[row].length) {
+        throw new InvalidConfigurationException("Invalid_grid_encoding");
+      }
+    }
+  }
+
+  private static void appendRleRow(int[] row, StringBuilder text) {
+    text.append('\n');
+    int col = 0;
+    while (col < row.length) {
+      int end = col;
+      while (end < row.length && row[end] == row[col]) {
+        end++;
+      }
+      if (col > 0) {
+        text.append(' ');
+      }
+      text.append(row[col]);
+      if (end - col > 1) {
+        text.append('*').append(end - col);
+      }
+      col = end;
+    }
+    text.append(';');
+  }
+
+  private static void decodeBase64(String text, int[][] grid) throws InvalidConfigurationException {
+    byte[] bytes = Base64.getMimeDecoder().decode(text);
+    if (bytes.length == 0) {
+      throw new InvalidConfigurationException("Invalid_grid_encoding");
+    }
+    int bits = bytes[0];
+    if (bits != 1 && bits != 2 && bits != 4 && bits != 8) {
+      throw new InvalidConfigurationException("Invalid_grid_encoding");
+    }
+    int cols = (grid.length == 0) ? 0 : grid[0].length;
+    long numCells = (long) grid.length * cols;
+    if ((bytes.length - 1) * 8L / bits < numCells) {
+      throw new InvalidConfigurationException("Invalid_grid_encoding");
+    }
+    int perByte = 8 / bits;
+    int mask = (1 << bits) - 1;
+    for (int cell = 0; cell < numCells; cell++) {
+      int shift = 8 - bits * (cell % perByte + 1);
+      grid[cell / cols][cell % cols] = (bytes[1 + cell / perByte] >> shift) & mask;
+    }
+  }
+
+  private static String encodeBase64(int[][] grid) {
+    int maxState = 0;
+    for (int[] row : grid) {
+      for (int state : row) {
+        maxState = Math.max(maxState, state);
+      }
+    }
+    if (maxState > 0xFF) {
+      throw new IllegalArgumentException("States above 255 cannot be packed");
+    }
+    int bits = 1;
+    while ((1 << bits) <= maxState) {
+      bits *= 2;
+    }
+    int cols = (grid.length == 0) ? 0 : grid[0].length;
+    int numCells = grid.length * cols;
+    int perByte = 8 / bits;
+    byte[] bytes = new byte[1 + (numCells + perByte - 1) / perByte];
+    bytes[0] = (byte) bits;
+    for (int cell = 0; cell < numCells; cell++) {
+      int shift = 8 - bits * (cell % perByte + 1);
+      bytes[1 + cell / perByte] |= (byte) (grid[cell / cols][cell % cols] << shift);
+    }
+    return Base64.getMimeEncoder(76, new byte[]{'\n'}).encodeToString(bytes);
+  }
+
+  private static void decodeSparse(String text, int[][] grid, String defaultAttribute)
+      throws InvalidConfigurationException {
+    int defaultState = defaultAttribute.isBlank() ? 0 : Integer.parseInt(defaultAttribute.trim());
+    for (int[] row : grid) {
+      Arrays.fill(row, defaultState);
+    }
+    if (text.isEmpty()) {
+      return;
+    }
+    for (String entry : text.split("\\s+")) {
+      String[] values = entry.split(",");
+      if (values.length != 3) {
+        throw new InvalidConfigurationException("Invalid_grid_encoding");
+      }
+      int row = Integer.parseInt(values[0]);
+      int col = Integer.parseInt(values[1]);
+      if (row < 0 || row >= grid.length || col < 0 || col >= grid[row].length) {
+        throw new InvalidConfigurationException("invalidCellLocation", row, col);
+      }
+      grid[row][col] = Integer.parseInt(values[2]);
+    }
+  }
+
+  private static void appendSparseRow(int row, int[] states, int defaultState,
+      StringBuilder text) {
+    for (int col = 0; col < states.length; col++) {
+      if (states[col] != defaultState) {
+        text.append('\n').append(row).append(',').append(col).append(',').append(states[col]);
+      }
+    }
+  }
+
+  private static int mostCommonState(int[][] grid) {
+    Map<Integer, Integer> counts = new HashMap<>();
+    int best = 0;
+    int bestCount = 0;
+    for (int[] row : grid) {
+      for (int state : row) {
+        int count = counts.merge(state, 1, Integer::sum);
+        if (count > bestCount) {
+          best = state;
+          bestCount = count;
+        }
+      }
+    }
+    return best;
+  }
+}
@@ -0,0 +1,231 @@
+package cellsociety.config;
+
+import cellsociety.model.gametypes.CellChanges;
+import cellsociety.model.gametypes.GameType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Keeps the most recent generations of a game in memory so the user can step back and forward.
+ * <p>
+ * Every step, and every edit of the cells like a click, is stored as one change list (see
+ * {@link DeltaCodec}) of the cells and extra plane values it changed, together with the generation
+ * and random state before and after it.  The cells come from the changes the game collected, so
+ * recording a step costs time proportional to the number of changed cells; only games with extra
+ * planes compare them, in arrays the game writes into again on every step.  Adding the differences
+ * moves forward and subtracting them moves back, so one record serves both directions and stepping
+ * costs time proportional to the number of changed values instead of recomputing the run.  Games
+ * with extra planes also get their planes set again.
+ * <p>
+ * The oldest generations are dropped once there are more than maxGenerations records or they
+ * take more than maxBytes.  Computing a new step or editing a cell after stepping back discards
+ * the generations that were stepped over.
+ */
+public class History {
+
+  public static final int DEFAULT_MAX_GENERATIONS = 1000;
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+  // bookkeeping of one record besides its bytes, roughly
+  private static final int RECORD_OVERHEAD = 48;
+
+  private final int maxGenerations;
+  private final long maxBytes;
+  private final Deque<byte[]> past = new ArrayDeque<>();
+  private final Deque<byte[]> future = new ArrayDeque<>();
+  private long numBytes;
+
+  // the generation the game is at, as far as the history knows
+  private int[][] states;
+  private Map<String, int[]> planes;
+  // the arrays the game writes the planes of the next generation into
+  private Map<String, int[]> nextPlanes = new HashMap<>();
+  private long generation;
+  private long randomState;
+
+  /**
+   * Constructor for a history.
+   *
+   * @param maxGenerations most steps that can be taken back
+   * @param maxBytes       most memory the records may take
+   */
+  public History(int maxGenerations, long maxBytes) {
+    if (maxGenerations < 1 || maxBytes < 1) {
+      throw new IllegalArgumentException("History limits must be positive");
+    }
+    this.maxGenerations = maxGenerations;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Forgets every record and starts over from the current generation of the game, e.g. after a
+   * reset.
+   *
+   * @param game the game
+   */
+  public void reset(GameType<?> game) {
+    past.clear();
+    future.clear();
+    numBytes = 0;
+    states = game.createStateGrid();
+    planes = game.getExtraPlanes();
+    nextPlanes = new HashMap<>();
+    generation = game.getGeneration();
+    randomState = game.getRandomState();
+  }
+
+  /**
+   * Records the step the game just computed, or an edit of its cells, from the generation the
+   * history is at.
+   *
+   * @param game    the game, one generation after the last call for a step
+   * @param changes the cells that changed since the last call, in increasing order, as
+   *                GameType.collectChanges adds them to an empty set
+   */
+  public void afterChange(GameType<?> game, CellChanges changes) {
+    for (byte[] record : future) {
+      numBytes -= RECORD_OVERHEAD + record.length;
+    }
+    future.clear();
+    game.copyExtraPlanes(nextPlanes);
+
+    DeltaCodec record = new DeltaCodec();
+    record.writeLong(generation);
+    record.writeLong(game.getGeneration());
+    record.writeLong(randomState);
+    record.writeLong(game.getRandomState());
+    int cols = changes.getNumCols();
+    for (int i = 0; i < changes.getNumChanged(); i++) {
+      int cell = changes.getChangedCell(i);
+      int[] row = states[cell / cols];
+      int delta = changes.getState(i) - row[cell % cols];
+      if (delta != 0) {
+        record.writeChange(cell, delta);
+        row[cell % cols] += delta;
+      }
+    }
+    record.endChanges();
+    TreeSet<String> names = new TreeSet<>(planes.keySet());
+    names.addAll(nextPlanes.keySet());
+    record.writeVarint(names.size());
+    for (String name : names) {
+      int[] before = planes.getOrDefault(name, new int[0]);
+      int[] after = nextPlanes.getOrDefault(name, new int[0]);
+      record.writeString(name);
+      record.writeVarint(before.length);
+      record.writeVarint(after.length);
+      int length = Math.max(before.length, after.length);
+      record.writeChanges(before.length == length ? before : widen(before, length),
+          after.length == length ? after : widen(after, length), 0);
+      record.endChanges();
+    }
+    byte[] bytes = record.toByteArray();
+    past.addLast(bytes);
+    numBytes += RECORD_OVERHEAD + bytes.length;
+    Map<String, int[]> swap = planes;
+    planes = nextPlanes;
+    nextPlanes = swap;
+    generation = game.getGeneration();
+    randomState = game.getRandomState();
+
+    while (!past.isEmpty() && (past.size() > maxGenerations || numBytes > maxBytes)) {
+      numBytes -= RECORD_OVERHEAD + past.removeFirst().length;
+    }
+  }
+
+  public boolean canStepBack() {
+    return !past.isEmpty();
+  }
+
+  public boolean canStepForward() {
+    return !future.isEmpty();
+  }
+
+  /**
+   * Moves the game back by one generation, or undoes an edit.
+   *
+   * @param game the game
+   * @throws IllegalStateException if there is no earlier generation
+   */
+  public void stepBack(GameType<?> game) {
+    if (past.isEmpty()) {
+      throw new IllegalStateException("No earlier generation");
+    }
+    byte[] record = past.removeLast();
+    apply(game, record, -1);
+    future.addFirst(record);
+  }
+
+  /**
+   * Moves the game forward by one generation that was stepped back over, without computing it, or
+   * redoes an edit.
+   *
+   * @param game the game
+   * @throws IllegalStateException if there is no later generation
+   */
+  public void stepForward(GameType<?> game) {
+    if (future.isEmpty()) {
+      throw new IllegalStateException("No later generation");
+    }
+    byte[] record = future.removeFirst();
+    apply(game, record, 1);
+    past.addLast(record);
+  }
+
+  /**
+   * Applies a record forwards (sign 1) or backwards (sign -1) to the copy of the states and to the
+   * game.
+   */
+  private void apply(GameType<?> game, byte[] record, int sign) {
+    ByteBuffer in = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+    long generationBefore = in.getLong();
+    long generationAfter = in.getLong();
+    long randomBefore = in.getLong();
+    long randomAfter = in.getLong();
+    int cols = game.getNumCols();
+    DeltaCodec.readChanges(in, (index, delta) -> {
+      int row = (int) (index / cols);
+      int col = (int) (index % cols);
+      states[row][col] += sign * delta;
+      game.setCellState(row, col, states[row][col]);
+    });
+    Map<String, int[]> newPlanes = new HashMap<>();
+    for (long numPlanes = DeltaCodec.readVarint(in); numPlanes > 0; numPlanes--) {
+      String name = DeltaCodec.readString(in);
+      int lengthBefore = (int) DeltaCodec.readVarint(in);
+      int lengthAfter = (int) DeltaCodec.readVarint(in);
+      int[] plane = widen(planes.getOrDefault(name, new int[0]),
+          Math.max(lengthBefore, lengthAfter));
+      DeltaCodec.readChanges(in, (index, delta) -> plane[(int) index] += sign * delta);
+      newPlanes.put(name, widen(plane, (sign > 0) ? lengthAfter : lengthBefore));
+    }
+    planes = newPlanes;
+    if (!planes.isEmpty()) {
+      // the game may keep the arrays it is given
+      Map<String, int[]> copies = new HashMap<>();
+      planes.forEach((name, plane) -> copies.put(name, plane.clone()));
+      game.setExtraPlanes(copies);
+    }
+    randomState = (sign > 0) ? randomAfter : randomBefore;
+    generation = (sign > 0) ? generationAfter : generationBefore;
+    game.setRandomState(randomState);
+    game.setGeneration(generation);
+  }
+
+  /**
+   * Returns the values padded with zeros or cut to a length, or the array itself if it already
+   * has that length.
+   */
+  private static int[] widen(int[] values, int length) {
+    if (values.length == length) {
+      return values;
+    }
+    int[] result = new int[length];
+    System.arraycopy(values, 0, result, 0, Math.min(length, values.length));
+    return result;
+  }
+}
@@ -1,8 +1,8 @@
 package cellsociety.config;
 
 import java.util.Arrays;
+import java.util.MissingResourceException;
 import java.util.ResourceBundle;
-import javafx.scene.control.Alert;
 
 /**
  * Custom exception class for handling invalid configurations.
@@ -32,24 +32,20 @@ public class InvalidConfigurationException extends Exception {
   }
 
 
-  // Method to display the error message as a pop-up dialog
-  public void showErrorDialog() {
-    ResourceBundle resourceBundle = ResourceBundle.getBundle("translations");
-    String errorMessage = resourceBundle.getString(getMessage());
-    if (args != null) {
-      errorMessage = String.format(errorMessage, args);
+  /**
+   * Translates the message, which is a key of the translations, into the default language and
+   * fills in the arguments.  A message that is not a key is returned as it is.
+   *
+   * @return the translated error message
+   */
+  @Override
+  public String getLocalizedMessage() {
+    try {
+      String errorMessage = ResourceBundle.getBundle("translations").getString(getMessage());
+      return (args != null) ? String.format(errorMessage, args) : errorMessage;
+    } catch (MissingResourceException e) {
+      return getMessage();
     }
-    Alert alert = new Alert(Alert.AlertType.ERROR, errorMessage);
-    alert.setHeaderText(null);
-    alert.showAndWait();
-  }
-
-  // Displays the error message related to language issues as a pop-up dialog.
-  public void showLanguageErrorDialog() {
-    Alert alert = new Alert(Alert.AlertType.ERROR);
-    alert.setHeaderText(null);
-    alert.setContentText(getMessage());
-    alert.showAndWait();
   }
 
 }
@@ -4,7 +4,7 @@ import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import javafx.scene.Node;
 import javafx.scene.Parent;
-import javafx.scene.control.Button;
+import javafx.scene.control.ButtonBase;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 
@@ -31,8 +31,8 @@ public class LanguageManager {
    * @param node the JavaFX node whose language is to be updated
    */
   public static void updateLanguage(Node node) {
-    if (node instanceof Button) {
-      ((Button) node).setText(getText(node.getId()));
+    if (node instanceof ButtonBase) {
+      ((ButtonBase) node).setText(getText(node.getId()));
     } else if (node instanceof Label) {
       ((Label) node).setText(getText(node.getId()));
     } else if (node instanceof TextField) {
@@ -1,110 +1,83 @@
 package cellsociety.config;
 
 import cellsociety.model.cells.Cell;
-import cellsociety.model.gametypes.FallingSand;
-import cellsociety.model.gametypes.ForagingAnts;
-import cellsociety.model.gametypes.GameOfLife;
 import cellsociety.model.gametypes.GameType;
-import cellsociety.model.gametypes.ModelOfSegregation;
-import cellsociety.model.gametypes.Percolation;
-import cellsociety.model.gametypes.SpreadingOfFire;
-import cellsociety.model.gametypes.WaTorWorld;
-import cellsociety.view.assets.StateNamesMap;
 import java.io.File;
-import java.io.IOException;
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.CompletionException;
+import javafx.application.Platform;
 import javafx.scene.control.Alert;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
 
 /**
- * A parser class for handling XML related functions.
+ * A parser class for handling XML related functions in the GUI.  It loads configurations with
+ * {@link ConfigLoader} and shows its errors to the user: problems that make the file unusable
+ * close the application, while invalid optional elements (history, recording, checkpoints) are
+ * reported and then left out.  Off the JavaFX thread, e.g. on the simulation thread on reset,
+ * problems that make the file unusable are thrown wrapped in a CompletionException instead, to be
+ * shown where they reach the GUI with {@link #showFatalError}.  It also sets the default locale to
+ * the language of the file.
  */
-public class Parser {
-
-  private File xmlFile;
-  private int width;
-  private int height;
-  private final String defaultProbability = "0.5";
-  private String typeName;
-  private String title;
-  private String author;
-  private String description;
-  private Element root;
-  private final Map<String, String> additionalParams = new HashMap<>();
-  private GameType currentGame;
-  private String arrangement;
-
-  private Document xmlDocument;
-
-  private static final Map<String, Integer> maxStateValues = new HashMap<>();
+public class Parser extends ConfigLoader {
 
-
-  static {
-    // Initialize the maximum state values for each game type
-    maxStateValues.put("percolation", 2);
-    maxStateValues.put("watorworld", 2);
-    maxStateValues.put("spreadingoffire", 2);
-    maxStateValues.put("modelofsegregation", 2);
-    maxStateValues.put("gameoflife", 1);
-    maxStateValues.put("foragingants", 4);
-    maxStateValues.put("fallingsand", 3);
+  /**
+   * Constructs a Parser object with the given XML file.  Files larger than a few megabytes are read
+   * in streaming mode.  Snapshot files are read as a snapshot instead, with the checkpoints logged
+   * next to them applied, and recordings are opened for replay.
+   *
+   * @param xmlFile the XML, snapshot or recording file to parse
+   */
+  public Parser(File xmlFile) {
+    this(xmlFile, xmlFile.length() > STREAMING_THRESHOLD_BYTES);
   }
 
   /**
-   * Constructs a Parser object with the given XML file.
+   * Constructs a Parser object with the given XML file.  In streaming mode the file is read with
+   * StAX: the cells go straight into a state grid and only the other elements are kept as a
+   * document, so large grids do not need a DOM node per cell.
    *
-   * @param xmlFile the XML file to parse
+   * @param xmlFile   the XML file to parse
+   * @param streaming true to read the file in streaming mode, false to build the whole DOM
    */
-  public Parser(File xmlFile) {
+  public Parser(File xmlFile, boolean streaming) {
     try {
-
-      if (xmlFile.length() == 0) {
-        throw new InvalidConfigurationException("Empty_configuration_file");
-      }
-      this.xmlFile = xmlFile;
-      xmlDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder()
-          .parse(this.xmlFile);
-      this.root = xmlDocument.getDocumentElement();
-      setDefaultLocaleFromLanguageTag(root);
-      getBasicInfo();
-
-    } catch (NumberFormatException e) {
-      showMessage(Alert.AlertType.ERROR, "Invalid_number_given_in_data");
-      System.exit(1);
-    } catch (ParserConfigurationException e) {
-      showMessage(Alert.AlertType.ERROR, "Invalid_XML_Configuration");
-      System.exit(1);
-    } catch (SAXException | IOException e) {
-      showMessage(Alert.AlertType.ERROR, "Incorrectly_Formatted_XML_Data");
-      System.exit(1);
+      readDocument(xmlFile, streaming);
+      setDefaultLocaleFromLanguageTag();
+      super.getBasicInfo();
     } catch (InvalidConfigurationException e) {
-      e.showErrorDialog();
-      System.exit(1);
+      throw exitWithError(e);
     }
   }
 
-  public Document getDocument() {
-    return this.xmlDocument;
+  private Parser() {
   }
 
   /**
-   * Extracts the language tag from the XML root element and sets the default locale accordingly.
+   * Reads a configuration without showing anything, so it can be done on a background thread:
+   * problems are thrown instead of shown, and the language of the file is only set by a later
+   * call to setDefaultLocaleFromLanguageTag on the JavaFX thread.
    *
-   * @param root the root element of the XML document
+   * @param xmlFile the XML, snapshot or recording file to parse
+   * @return the parser of the file
+   * @throws InvalidConfigurationException if the file cannot be read or its basic info is invalid
+   */
+  public static Parser read(File xmlFile) throws InvalidConfigurationException {
+    Parser parser = new Parser();
+    parser.readDocument(xmlFile, xmlFile.length() > STREAMING_THRESHOLD_BYTES);
+    parser.readBasicInfo();
+    return parser;
+  }
+
+  private void readBasicInfo() throws InvalidConfigurationException {
+    super.getBasicInfo();
+  }
+
+  /**
+   * Sets the default locale from the language of the file, so messages are shown in it.  An
+   * unknown or missing language is reported and English is used.
    */
-  private void setDefaultLocaleFromLanguageTag(Element root) {
-    String languageTag = getTextValueOrDefault(root, "language", "");
+  public void setDefaultLocaleFromLanguageTag() {
+    String languageTag = getLanguage();
     if (!languageTag.isEmpty()) {
       Locale locale;
       switch (languageTag.toLowerCase()) {
@@ -118,257 +91,128 @@ public class Parser {
           locale = new Locale("es", "ES");
           break;
         default:
-          new InvalidConfigurationException("Language should be English, French, or Spanish. " +
-              "Defaulting to English since you entered " + languageTag).showLanguageErrorDialog();
+          showLanguageErrorDialog(new InvalidConfigurationException(
+              "Language should be English, French, or Spanish. "
+                  + "Defaulting to English since you entered " + languageTag));
           locale = Locale.ENGLISH; // Default to English
       }
       Locale.setDefault(locale);
     } else {
-      new InvalidConfigurationException(
-          "Couldn't find language. Defaulting to English.").showLanguageErrorDialog();
+      showLanguageErrorDialog(new InvalidConfigurationException(
+          "Couldn't find language. Defaulting to English."));
       Locale.setDefault(Locale.ENGLISH); // Default to English
     }
   }
 
-  /**
-   * Retrieves the type of edge specified in the XML file.
-   *
-   * @return the type of edge as a String
-   */
-  public String getEdgeType() {
-    String edgeTypeTag = getTextValueOrDefault(root, "edgeType", "standard");
-    edgeTypeTag = edgeTypeTag.toLowerCase();
-    return edgeTypeTag;
-
-  }
-
-  /**
-   * Returns all basic info of the current file.
-   */
+  @Override
   public void getBasicInfo() {
     try {
-      this.width = Integer.parseInt(getTextValueOrDefault(root, "width", ""));
-      this.height = Integer.parseInt(getTextValueOrDefault(root, "height", ""));
-      this.typeName = getTextValueOrDefault(root, "gameType", "");
-      this.title = getTextValueOrDefault(root, "title", "");
-      this.author = getTextValueOrDefault(root, "author", "");
-      this.description = getTextValueOrDefault(root, "description", "");
-      this.arrangement = getTextValueOrDefault(root, "neighbors", "");
-
-      if (typeName.isEmpty() || title.isEmpty() || author.isEmpty() || description.isEmpty()) {
-        throw new InvalidConfigurationException("Missing_simulation_information");
-      }
+      super.getBasicInfo();
     } catch (InvalidConfigurationException e) {
-      e.showErrorDialog();
-      System.exit(1);
+      throw exitWithError(e);
     }
   }
 
-  /**
-   * Retrieves the state colors specified in the XML file.
-   *
-   * @return a map containing state-color pairs, or null if no colors are specified
-   */
-  public Map<String, String> getStateColors() {
-    //it's default
-    if (root.getElementsByTagName("colors").getLength() == 0) {
-      return null;
-    }
-    Element colors = (Element) this.root.getElementsByTagName("colors").item(0);
-    NamedNodeMap states = colors.getAttributes();
-    Map<String, String> map = new HashMap<>();
-
-    //Find each color value pairing and add it to the map
-    for (int i = 0; i < states.getLength(); i++) {
-      Node attribute = states.item(i);
-      map.put(attribute.getNodeName().trim().toLowerCase(),
-          attribute.getNodeValue().trim().toLowerCase());
+  @Override
+  public int[][] getCells() {
+    try {
+      return super.getCells();
+    } catch (InvalidConfigurationException e) {
+      throw exitWithError(e);
     }
-    return map;
   }
 
-  public int getWidth() {
-    return this.width;
-  }
-
-  public int getHeight() {
-    return this.height;
-  }
-
-  public String getTypeName() {
-    return this.typeName;
-  }
-
-  public String getTitle() {
-    return this.title;
-  }
-
-  public String getAuthor() {
-    return this.author;
-  }
-
-  public String getDescription() {
-    return this.description;
+  @Override
+  public void rerollCells() {
+    try {
+      super.rerollCells();
+    } catch (InvalidConfigurationException e) {
+      throw exitWithError(e);
+    }
   }
 
-  public String getArrangement() {
-    return arrangement;
+  @Override
+  public GameType<Cell> getGameTypeFromName() {
+    try {
+      return super.getGameTypeFromName();
+    } catch (InvalidConfigurationException e) {
+      throw exitWithError(e);
+    }
   }
 
-  public int[][] getCells() {
+  /**
+   * Creates the recorder of the game, see {@link ConfigLoader#createRecorder}.  An invalid record
+   * element is reported and the run is not recorded.
+   *
+   * @param game the game to record
+   * @return the recorder, or null
+   */
+  @Override
+  public TrajectoryRecorder createRecorder(GameType<?> game) {
     try {
-      return getCellsHelper();
+      return super.createRecorder(game);
     } catch (InvalidConfigurationException e) {
-      e.showErrorDialog();
-      System.exit(1);
+      showMessage(Alert.AlertType.ERROR, e.getMessage());
       return null;
     }
   }
 
   /**
-   * Helper method to retrieve cell states from the XML file and initialize the grid accordingly. If
-   * randomization is enabled, it calls the randomization method to assign states based on
-   * proportions. Otherwise, it uses cell state values from the XML file.
+   * Creates the history of the game, see {@link ConfigLoader#createHistory}.  An invalid history
+   * element is reported and the default limits are used.
    *
-   * @return a 2D array representing the grid of cell states
-   * @throws InvalidConfigurationException if there is an error in the configuration or cell states
+   * @return the history, or null
    */
-  private int[][] getCellsHelper() throws InvalidConfigurationException {
-    int[][] grid = new int[width][height];
-    NodeList cells = this.root.getElementsByTagName("cell");
-    NodeList randomizeNodes = root.getElementsByTagName("randomize");
-    if (randomizeNodes.getLength() > 0) {
-      Element randomizeElement = (Element) randomizeNodes.item(0);
-      String randomizeValue = randomizeElement.getAttribute("value");
-      if (randomizeValue.equalsIgnoreCase("yes")) {
-        // Randomize cell state values based on proportions
-        RandomizeXml.randomizeCellStates(cells, grid, randomizeElement);
-      }
-    } else {
-      // Use cell state values from the XML file
-      for (int i = 0; i < cells.getLength(); i++) {
-        Element current = (Element) cells.item(i);
-        int row = Integer.parseInt(current.getAttribute("row"));
-        int col = Integer.parseInt(current.getAttribute("column"));
-        int state = Integer.parseInt(current.getAttribute("state"));
-
-        int maxStateValue = maxStateValues.get(typeName);
-
-        if (state < 0 || state > maxStateValue) {
-          throw new InvalidConfigurationException("Invalid_cell_state_value_for_game_type");
-        }
-        if (row < 0 || row >= this.width || col < 0 || col >= this.height) {
-          throw new InvalidConfigurationException(
-              "invalidCellLocation", row, col);
-        }
-        // Populate the grid with these states
-        grid[row][col] = state;
-      }
+  @Override
+  public History createHistory() {
+    try {
+      return super.createHistory();
+    } catch (InvalidConfigurationException e) {
+      showMessage(Alert.AlertType.ERROR, e.getMessage());
+      return new History(History.DEFAULT_MAX_GENERATIONS, History.DEFAULT_MAX_BYTES);
     }
-    return grid;
   }
 
   /**
-   * Retrieves the GameType specified in the XML file.
+   * Returns the frame budget of turbo mode, see {@link ConfigLoader#getTurboFrameBudget}.  An
+   * invalid turbo element is reported and the default is used.
    *
-   * @return a GameType object corresponding to the specified game type along with its parameters
+   * @return the frame budget in milliseconds, or 0
    */
-  public GameType<Cell> getGameTypeFromName() {
-    typeName = typeName.replaceAll("\\s", "").toLowerCase();
+  @Override
+  public double getTurboFrameBudget() {
     try {
-      switch (typeName) {
-        case "fallingsand":
-          currentGame = new FallingSand(getCells());
-          break;
-        case "foragingants":
-          int antsInNest = Integer.parseInt(
-              getTextValueOrDefault(root, "antsInNest", "10"));
-          int maxPheromoneLevel = Integer.parseInt(
-              getTextValueOrDefault(root, "maxPheromoneLevel", "500"));
-          additionalParams.put("antsInNest", "" + antsInNest);
-          additionalParams.put("maxPheromoneLevel", "" + maxPheromoneLevel);
-          currentGame = new ForagingAnts(getCells(), antsInNest, maxPheromoneLevel);
-          currentGame.setStateMap(StateNamesMap.ants);
-          break;
-        case "percolation":
-          currentGame = new Percolation(getCells());
-          currentGame.setStateMap(StateNamesMap.percolation);
-          break;
-
-        case "watorworld":
-          int repAgeLimit = Integer.parseInt(
-              getTextValueOrDefault(root, "reproductionAgeLimit", "5"));
-          int startingEnergy = Integer.parseInt(getTextValueOrDefault(root, "startingEnergy", "3"));
-          int fishEnergy = Integer.parseInt(getTextValueOrDefault(root, "fishEnergy", "1"));
-          additionalParams.put("repAgeLimit", "" + repAgeLimit);
-          additionalParams.put("startingEnergy", "" + startingEnergy);
-          additionalParams.put("fishEnergy", "" + fishEnergy);
-          currentGame = new WaTorWorld(getCells(), repAgeLimit, startingEnergy, fishEnergy);
-          currentGame.setStateMap(StateNamesMap.wator);
-          break;
-
-        case "spreadingoffire":
-          double probCatch = Double.parseDouble(getTextValueOrDefault(root,
-              "probCatch", defaultProbability));
-          double probFillTree = Double.parseDouble(
-              getTextValueOrDefault(root, "probFillTree", defaultProbability));
-          additionalParams.put("probCatch", "" + probCatch);
-          additionalParams.put("probFillTree", "" + probFillTree);
-          currentGame = new SpreadingOfFire(getCells(), probCatch, probFillTree);
-          currentGame.setStateMap(StateNamesMap.spreadingOfFire);
-          break;
-
-        case "modelofsegregation":
-          double neighborPercentage = Double.parseDouble(getTextValueOrDefault(root,
-              "neighborPercentage", defaultProbability));
-          additionalParams.put("neighborPercentage", "" + neighborPercentage);
-          currentGame = new ModelOfSegregation(getCells(), neighborPercentage);
-          currentGame.setStateMap(StateNamesMap.segregation);
-          break;
-
-        case "gameoflife":
-          currentGame = new GameOfLife(getCells());
-          currentGame.setStateMap(StateNamesMap.gameOfLife);
-          break;
-
-        default:
-          throw new InvalidConfigurationException("Invalid_game_type");
-      }
-      for (HashMap.Entry<String, String> e : additionalParams.entrySet()) {
-        if (Double.parseDouble(e.getValue()) < 0) {
-          throw new InvalidConfigurationException(
-              "negativeParameterValue",
-              e.getKey()
-          );
-        }
-      }
+      return super.getTurboFrameBudget();
     } catch (InvalidConfigurationException e) {
-      e.showErrorDialog();
-      System.exit(1);
+      showMessage(Alert.AlertType.ERROR, e.getMessage());
+      return 0;
     }
-    return currentGame;
   }
 
   /**
-   * Retrieves the text content of the specified tag name from the given XML element. If the tag is
-   * found and has non-empty text content, returns the trimmed text content. Otherwise, returns the
-   * default value.
+   * Creates the checkpointer of the game, see {@link ConfigLoader#createCheckpointer}.  An invalid
+   * checkpoint element is reported and no checkpoints are taken.
    *
-   * @param e            the XML element to search for the tag
-   * @param tagName      the name of the tag to retrieve text content from
-   * @param defaultValue the default value to return if the tag is not found or has empty text
-   *                     content
-   * @return the text content of the specified tag or the default value
+   * @param game the game to checkpoint
+   * @return the checkpointer, or null
    */
-  private String getTextValueOrDefault(Element e, String tagName, String defaultValue) {
-    NodeList nodeList = e.getElementsByTagName(tagName);
-    if (nodeList.getLength() > 0) {
-      String textContent = nodeList.item(0).getTextContent().trim();
-      if (!textContent.isEmpty()) {
-        return textContent;
-      }
+  @Override
+  public Checkpointer createCheckpointer(GameType<?> game) {
+    try {
+      return super.createCheckpointer(game);
+    } catch (InvalidConfigurationException e) {
+      showMessage(Alert.AlertType.ERROR, e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public Document createConfigSkeleton(String newTitle, String newAuthor, String newDesc) {
+    try {
+      return super.createConfigSkeleton(newTitle, newAuthor, newDesc);
+    } catch (InvalidConfigurationException e) {
+      throw exitWithError(e);
     }
-    return defaultValue;
   }
 
   // display given message to user using the given type of Alert dialog box
@@ -378,90 +222,56 @@ public class Parser {
   }
 
   /**
-   * Creates a new XML configuration file based on the current state.
+   * Shows the translated message of an invalid configuration as a pop-up dialog.  The exception
+   * itself does not depend on JavaFX, so that ConfigLoader can be used without a GUI.
    *
-   * @return the newly created XML document
+   * @param e the invalid configuration to report
    */
-  public Document createConfigFile(String newTitle, String newAuthor, String newDesc) {
-    try {
-      DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-      Document newFile = builder.newDocument();
-
-      //create the root
-      Element root = newFile.createElement("simulation");
-      newFile.appendChild(root);
-
-      //Add the new edited info, if the user put it in
-      if (!newTitle.isEmpty()) {
-        this.title = newTitle;
-      }
-      if (!newAuthor.isEmpty()) {
-        this.author = newAuthor;
-      }
-      if (!newDesc.isEmpty()) {
-        this.description = newDesc;
-      }
-
-      //create all the basic info tags
-      createAndAppend(newFile, "width", root, "" + this.width);
-      createAndAppend(newFile, "height", root, "" + this.height);
-      createAndAppend(newFile, "gameType", root, this.typeName);
-      createAndAppend(newFile, "title", root, this.title);
-      createAndAppend(newFile, "author", root, this.author);
-      createAndAppend(newFile, "description", root, this.description);
-
-      //additional param tags
-      for (HashMap.Entry<String, String> e : additionalParams.entrySet()) {
-        createAndAppend(newFile, e.getKey(), root, e.getValue());
-      }
-      int[][] newGrid = currentGame.createStateGrid();
-      //add new wrapper element for grid
-      Element cellRoot = createAndAppend(newFile, "grid", root, null);
-      //populate document with all the cells
-      root.appendChild(cellRoot);
-      populateCellsToFile(newGrid, cellRoot, newFile);
-
-      return newFile;
-    } catch (ParserConfigurationException e) {
-      showMessage(Alert.AlertType.ERROR, "Invalid_XML_Configuration");
-      System.exit(1);
-      return null;
-    }
+  public static void showErrorDialog(InvalidConfigurationException e) {
+    Alert alert = new Alert(Alert.AlertType.ERROR, e.getLocalizedMessage());
+    alert.setHeaderText(null);
+    alert.showAndWait();
   }
 
+  // Displays the error message related to language issues as a pop-up dialog.
+  private static void showLanguageErrorDialog(InvalidConfigurationException e) {
+    Alert alert = new Alert(Alert.AlertType.ERROR);
+    alert.setHeaderText(null);
+    alert.setContentText(e.getMessage());
+    alert.showAndWait();
+  }
 
   /**
-   * Creates a new Element with the specified tagName, sets its text content to the given content,
-   * appends it to the specified root Element, and returns the newly created Element.
+   * Reports a problem that makes the file unusable.  On the JavaFX thread it is shown and the
+   * application is closed.  Other threads cannot show it, so it is returned wrapped for the caller
+   * to throw, and the GUI shows it with showFatalError.
    *
-   * @param file    the Document to which the new Element belongs
-   * @param tagName the tag name of the new Element
-   * @param root    the root Element to which the new Element will be appended
-   * @param content the text content of the new Element
-   * @return the newly created Element
+   * @param e the invalid configuration to report
+   * @return the exception to throw off the JavaFX thread
    */
-  private Element createAndAppend(Document file, String tagName, Element root, String content) {
-    Element child = file.createElement(tagName);
-    child.setTextContent(content);
-    root.appendChild(child);
-    return child;
+  private static CompletionException exitWithError(InvalidConfigurationException e) {
+    if (Platform.isFxApplicationThread()) {
+      showErrorDialog(e);
+      System.exit(1);
+    }
+    return new CompletionException(e);
   }
 
   /**
-   * Populates the XML document with cell elements representing the grid.
+   * Shows why a configuration could not be read and closes the application.  Runs on the JavaFX
+   * thread, for errors that came up on another thread while loading or resetting a simulation.
    *
-   * @param grid     the grid containing cell states
-   * @param cellRoot the root Element for cell elements
-   * @param file     the XML Document
+   * @param error the error, usually an InvalidConfigurationException wrapped in a
+   *              CompletionException
    */
-  private void populateCellsToFile(int[][] grid, Element cellRoot, Document file) {
-    for (int row = 0; row < grid.length; row++) {
-      for (int col = 0; col < grid[0].length; col++) {
-        Element cell = createAndAppend(file, "cell", cellRoot, null);
-        cell.setAttribute("row", "" + row);
-        cell.setAttribute("column", "" + col);
-        cell.setAttribute("state", "" + grid[row][col]);
-      }
+  public static void showFatalError(Throwable error) {
+    Throwable cause = (error instanceof CompletionException) ? error.getCause() : error;
+    if (cause instanceof InvalidConfigurationException invalid) {
+      showErrorDialog(invalid);
+    } else {
+      cause.printStackTrace();
+      showErrorDialog(new InvalidConfigurationException("Invalid_XML_Configuration"));
     }
+    System.exit(1);
   }
 }
@@ -1,189 +1,184 @@
 package cellsociety.config;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 /**
  * Utility class for randomizing cell states based on proportions defined in XML.
+ * <p>
+ * The number of cells of every state is fixed first, by rounding the proportions with the largest
+ * remainder method so the counts add up to the size of the grid exactly.  The grid is then split
+ * into chunks of about CHUNK_SIZE cells that are filled in parallel: the states, in order, are
+ * dealt to the chunks in turn like cards, so every chunk gets its share of every state, and each
+ * chunk shuffles its cells with a Fisher-Yates shuffle over a primitive array.  This takes time
+ * proportional to the number of cells.  Every chunk draws from its own random stream split off
+ * the seed in order, so a seed always gives the same grid.  A grid of at most CHUNK_SIZE cells is
+ * one chunk, so all its arrangements are equally likely.
  */
 public class RandomizeXml {
 
-  private static Map<Integer, Double> stateProportions;
+  public static final int CHUNK_SIZE = 1 << 16;
 
   /**
    * Randomizes the cell states based on proportions defined in the given XML element.
    *
-   * @param cells            NodeList containing cell elements
-   * @param grid             2D array representing the grid
+   * @param grid             2D array representing the grid, overwritten with the states
    * @param randomizeElement Element containing state proportions
+   * @param maxStateValue    highest state of the game type
+   * @param seed             seed of the random arrangement
+   * @throws InvalidConfigurationException if a state does not exist or the proportions are
+   *                                       invalid
    */
-  public static void randomizeCellStates(NodeList cells, int[][] grid, Element randomizeElement) {
-    if (stateProportions == null) {
-      stateProportions = parseStateProportions(randomizeElement);
+  public static void randomizeCellStates(int[][] grid, Element randomizeElement,
+      int maxStateValue, long seed) throws InvalidConfigurationException {
+    int rows = grid.length;
+    int cols = (rows == 0) ? 0 : grid[0].length;
+    int totalCells = rows * cols;
+    if (totalCells == 0) {
+      return;
     }
-
-    int totalCells = grid.length * grid[0].length;
-    int[] numCellsByState = calculateNumCellsByState(stateProportions, totalCells);
-    List<Integer> states = new ArrayList<>(stateProportions.keySet());
-    randomizeRemainingCells(numCellsByState, grid, states);
-
-    // Assign states to cells based on randomized proportions
-    List<CellPosition> cellPositions = generateCellPositions(grid);
-    Collections.shuffle(cellPositions);
-
-    int cellIndex = 0;
-    for (CellPosition cellPosition : cellPositions) {
-      int row = cellPosition.row;
-      int col = cellPosition.column;
-      int state = states.get(cellIndex);
-      grid[row][col] = state;
-      numCellsByState[state]--;
-
-      if (numCellsByState[state] == 0) {
-        cellIndex++;
+    Map<Integer, Double> stateProportions = parseStateProportions(randomizeElement);
+    int[] states = new int[stateProportions.size()];
+    int index = 0;
+    for (int state : stateProportions.keySet()) {
+      if (state < 0 || state > maxStateValue) {
+        throw new InvalidConfigurationException("Invalid_cell_state_value_for_game_type");
       }
+      states[index++] = state;
     }
-  }
-
-  /**
-   * Calculates the number of cells for each state based on proportions.
-   *
-   * @param stateProportions Map containing state proportions
-   * @param totalCells       Total number of cells
-   * @return Array containing the number of cells for each state
-   */
-  private static int[] calculateNumCellsByState(Map<Integer, Double> stateProportions,
-      int totalCells) {
-    int[] numCellsByState = new int[stateProportions.size()];
-    int remainingCells = totalCells;
+    int[] numCellsByState = calculateNumCellsByState(stateProportions, totalCells);
 
-    // Calculate number of cells for each state based on proportions
-    for (Map.Entry<Integer, Double> entry : stateProportions.entrySet()) {
-      int state = entry.getKey();
-      double proportion = entry.getValue();
-      int numCells = (int) Math.round(proportion * totalCells);
-      numCellsByState[state] = numCells;
-      remainingCells -= numCells;
+    // the first cell of every state's run when the states are laid out in order
+    long[] firstCells = new long[states.length];
+    for (int i = 1; i < states.length; i++) {
+      firstCells[i] = firstCells[i - 1] + numCellsByState[i - 1];
+    }
+    int numChunks = (totalCells + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    SplittableRandom seedRandom = new SplittableRandom(seed);
+    List<SplittableRandom> chunkRandoms = new ArrayList<>(numChunks);
+    for (int chunk = 0; chunk < numChunks; chunk++) {
+      chunkRandoms.add(seedRandom.split());
     }
 
-    // Distribute remaining cells to states with non-zero proportions
-    while (remainingCells > 0) {
-      for (int i = 0; i < numCellsByState.length; i++) {
-        if (numCellsByState[i] > 0) {
-          numCellsByState[i]++;
-          remainingCells--;
-          if (remainingCells == 0) {
-            break;
-          }
+    IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+      int size = totalCells / numChunks + (chunk < totalCells % numChunks ? 1 : 0);
+      int start = chunk * (totalCells / numChunks) + Math.min(chunk, totalCells % numChunks);
+      int[] cells = new int[size];
+      int filled = 0;
+      for (int i = 0; i < states.length; i++) {
+        long lastCell = firstCells[i] + numCellsByState[i];
+        int count = (int) (dealt(lastCell, chunk, numChunks) - dealt(firstCells[i], chunk,
+            numChunks));
+        for (int j = 0; j < count; j++) {
+          cells[filled++] = states[i];
         }
       }
-    }
-
-    return numCellsByState;
+      shuffle(cells, chunkRandoms.get(chunk));
+      for (int i = 0; i < size; i++) {
+        int cell = start + i;
+        grid[cell / cols][cell % cols] = cells[i];
+      }
+    });
   }
 
   /**
-   * Randomly assigns remaining cells to states.
-   *
-   * @param numCellsByState Array containing the number of cells for each state
-   * @param grid            2D array representing the grid
-   * @param states          List containing state values
+   * Returns how many of the first numCells cells are dealt to a chunk when they are dealt to the
+   * chunks in turn.
    */
-  private static void randomizeRemainingCells(int[] numCellsByState, int[][] grid,
-      List<Integer> states) {
-    Random random = new Random();
-
-    // Shuffle the states list to ensure randomness
-    Collections.shuffle(states);
-
-    // Distribute remaining cells randomly across the grid
-    int remainingEmptyCells = countEmptyCells(grid);
-    for (int state : states) {
-      while (numCellsByState[state] > 0 && remainingEmptyCells > 0) {
-        // Randomly select an empty cell and assign the state
-        int randomRow = random.nextInt(grid.length);
-        int randomCol = random.nextInt(grid[0].length);
-        if (grid[randomRow][randomCol] == -1) {
-          grid[randomRow][randomCol] = state;
-          numCellsByState[state]--;
-          remainingEmptyCells--;
-        }
-      }
-    }
+  private static long dealt(long numCells, int chunk, int numChunks) {
+    return numCells / numChunks + (numCells % numChunks > chunk ? 1 : 0);
   }
 
   /**
-   * Counts the number of empty cells in the grid.
-   *
-   * @param grid 2D array representing the grid
-   * @return Number of empty cells
+   * Shuffles the values in place with the Fisher-Yates algorithm.
    */
-  private static int countEmptyCells(int[][] grid) {
-    int count = 0;
-    for (int[] row : grid) {
-      for (int cell : row) {
-        if (cell == -1) {
-          count++;
-        }
-      }
+  private static void shuffle(int[] values, SplittableRandom random) {
+    for (int i = values.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int value = values[i];
+      values[i] = values[j];
+      values[j] = value;
     }
-    return count;
   }
 
   /**
-   * Generates a list of cell positions for the grid.
+   * Calculates the number of cells for each state based on proportions.  Every state first gets
+   * the whole part of its share, and the cells left over go to the states with the largest
+   * fractions, so the counts add up to totalCells.
    *
-   * @param grid 2D array representing the grid
-   * @return List of cell positions
+   * @param stateProportions Map containing state proportions, in order of the states
+   * @param totalCells       Total number of cells
+   * @return Array containing the number of cells for each state, in the order of the map
    */
-  private static List<CellPosition> generateCellPositions(int[][] grid) {
-    List<CellPosition> cellPositions = new ArrayList<>();
-    for (int row = 0; row < grid.length; row++) {
-      for (int col = 0; col < grid[row].length; col++) {
-        cellPositions.add(new CellPosition(row, col));
-      }
-    }
-    return cellPositions;
-  }
-
-  private static class CellPosition {
+  private static int[] calculateNumCellsByState(Map<Integer, Double> stateProportions,
+      int totalCells) {
+    int[] numCellsByState = new int[stateProportions.size()];
+    double[] fractions = new double[numCellsByState.length];
+    int remainingCells = totalCells;
 
-    int row;
-    int column;
+    int index = 0;
+    for (double proportion : stateProportions.values()) {
+      double share = proportion * totalCells;
+      numCellsByState[index] = (int) Math.min(Math.floor(share), remainingCells);
+      fractions[index] = share - numCellsByState[index];
+      remainingCells -= numCellsByState[index];
+      index++;
+    }
 
-    CellPosition(int row, int column) {
-      this.row = row;
-      this.column = column;
+    // Give the remaining cells to the largest fractions, earlier states first on ties
+    for (; remainingCells > 0; remainingCells--) {
+      int largest = 0;
+      for (int i = 1; i < fractions.length; i++) {
+        if (fractions[i] > fractions[largest]) {
+          largest = i;
+        }
+      }
+      numCellsByState[largest]++;
+      fractions[largest] = -1;
     }
+    return numCellsByState;
   }
 
   /**
    * Parses state proportions from the given XML element.
    *
    * @param randomizeElement Element containing state proportions
-   * @return Map containing state proportions
+   * @return Map containing the normalized state proportions, in order of the states
+   * @throws InvalidConfigurationException if there are no states or a proportion is not a
+   *                                       non-negative number
    */
-  private static Map<Integer, Double> parseStateProportions(Element randomizeElement) {
-    Map<Integer, Double> stateProportions = new HashMap<>();
+  private static Map<Integer, Double> parseStateProportions(Element randomizeElement)
+      throws InvalidConfigurationException {
+    Map<Integer, Double> stateProportions = new TreeMap<>();
     NodeList stateNodes = randomizeElement.getElementsByTagName("state");
     double totalProportion = 0.0;
-    for (int i = 0; i < stateNodes.getLength(); i++) {
-      Element stateElement = (Element) stateNodes.item(i);
-      int stateValue = Integer.parseInt(stateElement.getAttribute("value"));
-      double proportion = Double.parseDouble(stateElement.getAttribute("proportion"));
-      stateProportions.put(stateValue, proportion);
-      totalProportion += proportion;
+    try {
+      for (int i = 0; i < stateNodes.getLength(); i++) {
+        Element stateElement = (Element) stateNodes.item(i);
+        int stateValue = Integer.parseInt(stateElement.getAttribute("value"));
+        double proportion = Double.parseDouble(stateElement.getAttribute("proportion"));
+        if (!(proportion >= 0) || Double.isInfinite(proportion)) {
+          throw new NumberFormatException("Invalid proportion " + proportion);
+        }
+        stateProportions.merge(stateValue, proportion, Double::sum);
+        totalProportion += proportion;
+      }
+    } catch (NumberFormatException e) {
+      throw new InvalidConfigurationException("Invalid_number_given_in_data");
+    }
+    if (!(totalProportion > 0)) {
+      throw new InvalidConfigurationException("Invalid_number_given_in_data");
     }
 
     // Normalize proportions to ensure they sum up to 1.0
-    for (int state : stateProportions.keySet()) {
-      stateProportions.put(state, stateProportions.get(state) / totalProportion);
+    for (Map.Entry<Integer, Double> entry : stateProportions.entrySet()) {
+      entry.setValue(entry.getValue() / totalProportion);
     }
     return stateProportions;
   }
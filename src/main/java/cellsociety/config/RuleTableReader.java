@@ -0,0 +1,191 @@
+package cellsociety.config;
+
+import cellsociety.model.gametypes.TransitionRule;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Utility class for reading the rules of a rule table simulation from XML.  The rules are either
+ * given as a Life-like rule string:
+ * <pre>
+ *   &lt;rules rule="B3/S23"/&gt;
+ * </pre>
+ * or as a list of rules, where the first matching rule wins and a cell keeps its state if no rule
+ * matches.  The attribute countN lists the allowed numbers of neighbors in state N, as single
+ * numbers or ranges; leaving out state or countN means any:
+ * <pre>
+ *   &lt;rules states="3" names="empty,tree,burning"&gt;
+ *     &lt;rule state="1" next="2" count2="1-8"/&gt;
+ *     &lt;rule state="2" next="0"/&gt;
+ *   &lt;/rules&gt;
+ * </pre>
+ */
+public class RuleTableReader {
+
+  private static final int MAX_NEIGHBORS = 8;
+
+  /**
+   * Finds the rules element of the configuration.
+   *
+   * @param root root element of the configuration
+   * @return the rules element
+   * @throws InvalidConfigurationException if there is no rules element
+   */
+  public static Element getRulesElement(Element root) throws InvalidConfigurationException {
+    NodeList rulesNodes = root.getElementsByTagName("rules");
+    if (rulesNodes.getLength() == 0) {
+      throw new InvalidConfigurationException("Missing_rule_table");
+    }
+    return (Element) rulesNodes.item(0);
+  }
+
+  /**
+   * Reads the number of states.  A rule string always has two states.
+   *
+   * @param rulesElement the rules element
+   * @return number of states
+   * @throws InvalidConfigurationException if the number of states is missing or invalid
+   */
+  public static int getNumStates(Element rulesElement) throws InvalidConfigurationException {
+    if (!rulesElement.getAttribute("rule").isEmpty()) {
+      return 2;
+    }
+    try {
+      int numStates = Integer.parseInt(rulesElement.getAttribute("states").trim());
+      if (numStates < 1 || numStates > Byte.MAX_VALUE) {
+        throw new InvalidConfigurationException("Invalid_rule_table");
+      }
+      return numStates;
+    } catch (NumberFormatException e) {
+      throw new InvalidConfigurationException("Invalid_rule_table");
+    }
+  }
+
+  /**
+   * Reads the rules in order of priority.
+   *
+   * @param rulesElement the rules element
+   * @param numStates    number of states
+   * @return list of rules
+   * @throws InvalidConfigurationException if a rule is malformed
+   */
+  public static List<TransitionRule> parseRules(Element rulesElement, int numStates)
+      throws InvalidConfigurationException {
+    try {
+      String ruleString = rulesElement.getAttribute("rule").trim();
+      if (!ruleString.isEmpty()) {
+        return parseRuleString(ruleString);
+      }
+      List<TransitionRule> rules = new ArrayList<>();
+      NodeList ruleNodes = rulesElement.getElementsByTagName("rule");
+      for (int i = 0; i < ruleNodes.getLength(); i++) {
+        rules.add(parseRule((Element) ruleNodes.item(i), numStates));
+      }
+      return rules;
+    } catch (NumberFormatException e) {
+      throw new InvalidConfigurationException("Invalid_rule_table");
+    }
+  }
+
+  /**
+   * Reads the state names, given as a comma separated list.  States without a name are called
+   * "state N".
+   *
+   * @param rulesElement the rules element
+   * @param numStates    number of states
+   * @return map with state (key) and name (value)
+   */
+  public static Map<Integer, String> parseStateNames(Element rulesElement, int numStates) {
+    String[] names = rulesElement.getAttribute("names").split(",");
+    if (!rulesElement.getAttribute("rule").isEmpty() && rulesElement.getAttribute("names")
+        .isEmpty()) {
+      names = new String[]{"dead", "alive"};
+    }
+    Map<Integer, String> stateNames = new HashMap<>();
+    for (int state = 0; state < numStates; state++) {
+      if (state < names.length && !names[state].isBlank()) {
+        stateNames.put(state, names[state].trim());
+      } else {
+        stateNames.put(state, "state " + state);
+      }
+    }
+    return stateNames;
+  }
+
+  private static TransitionRule parseRule(Element ruleElement, int numStates)
+      throws InvalidConfigurationException {
+    String state = ruleElement.getAttribute("state").trim();
+    int currentState = state.isEmpty() || state.equals("*") ? TransitionRule.ANY_STATE
+        : parseState(state, numStates);
+    int nextState = parseState(ruleElement.getAttribute("next").trim(), numStates);
+
+    boolean[][] allowedCounts = new boolean[numStates][];
+    for (int countedState = 0; countedState < numStates; countedState++) {
+      String counts = ruleElement.getAttribute("count" + countedState).trim();
+      if (!counts.isEmpty()) {
+        allowedCounts[countedState] = parseCounts(counts);
+      }
+    }
+    return new TransitionRule(currentState, nextState, allowedCounts);
+  }
+
+  private static int parseState(String state, int numStates)
+      throws InvalidConfigurationException {
+    int value = Integer.parseInt(state);
+    if (value < 0 || value >= numStates) {
+      throw new InvalidConfigurationException("Invalid_rule_table");
+    }
+    return value;
+  }
+
+  /**
+   * Parses a list of counts such as "2,3" or "0-1,4-8".
+   */
+  private static boolean[] parseCounts(String counts) throws InvalidConfigurationException {
+    boolean[] allowed = new boolean[MAX_NEIGHBORS + 1];
+    for (String part : counts.split(",")) {
+      String[] range = part.trim().split("-");
+      int low = Integer.parseInt(range[0].trim());
+      int high = (range.length > 1) ? Integer.parseInt(range[1].trim()) : low;
+      if (range.length > 2 || low < 0 || high > MAX_NEIGHBORS || low > high) {
+        throw new InvalidConfigurationException("Invalid_rule_table");
+      }
+      for (int count = low; count <= high; count++) {
+        allowed[count] = true;
+      }
+    }
+    return allowed;
+  }
+
+  /**
+   * Parses a rule string such as "B3/S23": dead cells with a count listed after B are born, live
+   * cells with a count listed after S survive, and all other cells die.
+   */
+  private static List<TransitionRule> parseRuleString(String ruleString)
+      throws InvalidConfigurationException {
+    boolean[] birth = new boolean[MAX_NEIGHBORS + 1];
+    boolean[] survival = new boolean[MAX_NEIGHBORS + 1];
+    for (String part : ruleString.toUpperCase().split("/")) {
+      part = part.trim();
+      if (part.isEmpty() || (part.charAt(0) != 'B' && part.charAt(0) != 'S')) {
+        throw new InvalidConfigurationException("Invalid_rule_table");
+      }
+      boolean[] counts = (part.charAt(0) == 'B') ? birth : survival;
+      for (char digit : part.substring(1).toCharArray()) {
+        if (digit < '0' || digit > '0' + MAX_NEIGHBORS) {
+          throw new InvalidConfigurationException("Invalid_rule_table");
+        }
+        counts[digit - '0'] = true;
+      }
+    }
+    List<TransitionRule> rules = new ArrayList<>();
+    rules.add(new TransitionRule(0, 1, new boolean[][]{null, birth}));
+    rules.add(new TransitionRule(1, 1, new boolean[][]{null, survival}));
+    rules.add(new TransitionRule(TransitionRule.ANY_STATE, 0, new boolean[2][]));
+    return rules;
+  }
+}
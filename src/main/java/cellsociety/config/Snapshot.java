@@ -0,0 +1,494 @@
+package cellsociety.config;
+
+import cellsociety.model.gametypes.GameType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.DoubleConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * A binary snapshot of a running simulation.  Unlike a configuration file it keeps everything that
+ * is needed to continue the run exactly: the cell states, the current parameters, the seed, the
+ * generation, the position of the random number generator and the per-simulation data that is not
+ * part of the cell states (see {@link GameType#getExtraPlanes()}).
+ * <p>
+ * The file is little endian and laid out as:
+ * <ul>
+ *   <li>magic number, version and length of the header (3 ints)</li>
+ *   <li>header: game type, rows, columns, generation, seed, random state, parameters, the
+ *   configuration without its grid as XML (for title, colors, rules and so on), the number of
+ *   bits per state and the name and length of every extra plane</li>
+ *   <li>the states packed row by row, first cell in the highest bits, like the base64 grid
+ *   encoding</li>
+ *   <li>every extra plane as ints</li>
+ * </ul>
+ * Every section starts at a multiple of 8 bytes.  The sections are written through a FileChannel
+ * and read through memory-mapped buffers, and states are packed and unpacked in parallel, so large
+ * worlds are saved and loaded at about disk speed.
+ */
+public class Snapshot {
+
+  public static final String EXTENSION = ".cellsnap";
+  private static final int MAGIC = 0x50534E43; // "CNSP"
+  private static final int VERSION = 1;
+  private static final int PREFIX_SIZE = 3 * Integer.BYTES;
+  private static final int ALIGNMENT = 8;
+  private static final long WINDOW_SIZE = 1L << 30;
+  private static final int BUFFER_SIZE = 1 << 20;
+  private static final int TASK_BYTES = 1 << 14;
+
+  private final String typeName;
+  private final String config;
+  private final int rows;
+  private final int cols;
+  private final long generation;
+  private final long seed;
+  private final long randomState;
+  private final Map<String, Double> params;
+  private final int[][] grid;
+  private final Map<String, int[]> planes;
+
+  /**
+   * Takes a snapshot of a game.
+   *
+   * @param typeName name of the game type
+   * @param config   configuration file without its grid, as XML
+   * @param game     the game to save
+   */
+  public Snapshot(String typeName, String config, GameType<?> game) {
+    this(typeName, config, game.getGeneration(), game.getSeed(), game.getRandomState(),
+        game.getParamValues(), game.createStateGrid(), game.getExtraPlanes());
+  }
+
+  /**
+   * Constructor for a snapshot read from a file or rebuilt from checkpoints.  Nothing is copied.
+   */
+  Snapshot(String typeName, String config, long generation, long seed, long randomState,
+      Map<String, Double> params, int[][] grid, Map<String, int[]> planes) {
+    this.typeName = typeName;
+    this.config = config;
+    this.rows = grid.length;
+    this.cols = (rows == 0) ? 0 : grid[0].length;
+    this.generation = generation;
+    this.seed = seed;
+    this.randomState = randomState;
+    this.params = new TreeMap<>(params);
+    this.grid = grid;
+    this.planes = new TreeMap<>(planes);
+  }
+
+  /**
+   * Checks if a file is a snapshot by its extension
+   *
+   * @param file the file to check
+   * @return True if the file name ends with the snapshot extension
+   */
+  public static boolean isSnapshot(File file) {
+    return file.getName().toLowerCase().endsWith(EXTENSION);
+  }
+
+  /**
+   * Puts the saved parameters, seed, random state, generation and extra planes into a game that
+   * was created from the configuration and the states of this snapshot.
+   *
+   * @param game the game to restore
+   */
+  public void restore(GameType<?> game) {
+    game.updateParams(params);
+    game.setSeed(seed);
+    game.setRandomState(randomState);
+    game.setGeneration(generation);
+    game.setExtraPlanes(planes);
+  }
+
+  /**
+   * Writes the snapshot to a file, replacing its contents.
+   *
+   * @param file the file to write
+   * @throws IOException              if the file cannot be written
+   * @throws IllegalArgumentException if a state is outside of 0 to 255
+   */
+  public void write(File file) throws IOException {
+    write(file, progress -> {
+    });
+  }
+
+  /**
+   * Writes the snapshot to a file, replacing its contents, and reports how far it got.
+   *
+   * @param file     the file to write
+   * @param progress receives the fraction of the file written so far
+   * @throws IOException              if the file cannot be written
+   * @throws IllegalArgumentException if a state is outside of 0 to 255
+   */
+  public void write(File file, DoubleConsumer progress) throws IOException {
+    int bits = bitsPerState();
+    ByteBuffer header = createHeader(bits);
+    long statesStart = align(PREFIX_SIZE + header.remaining());
+    long planesStart = align(statesStart + packedSize(bits));
+    long size = planesStart;
+    for (int[] plane : planes.values()) {
+      size = align(size + (long) plane.length * Integer.BYTES);
+    }
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(header.remaining()).put(header);
+      padTo(buffer, channel, statesStart);
+      writeStates(buffer, channel, bits, progress, size);
+      padTo(buffer, channel, planesStart);
+      for (int[] plane : planes.values()) {
+        writeInts(buffer, channel, plane);
+        padTo(buffer, channel, align(channel.position() + buffer.position()));
+        progress.accept((double) (channel.position() + buffer.position()) / size);
+      }
+      flush(buffer, channel);
+    }
+    progress.accept(1);
+  }
+
+  /**
+   * Reads a snapshot.  The states and planes are read from memory-mapped buffers.
+   *
+   * @param file the file to read
+   * @return the snapshot
+   * @throws IOException                   if the file cannot be read
+   * @throws InvalidConfigurationException if the file is not a snapshot of a supported version
+   */
+  public static Snapshot read(File file) throws IOException, InvalidConfigurationException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < PREFIX_SIZE) {
+        throw new InvalidConfigurationException("Invalid_snapshot");
+      }
+      ByteBuffer prefix = readFully(channel, 0, PREFIX_SIZE);
+      if (prefix.getInt() != MAGIC || prefix.getInt() != VERSION) {
+        throw new InvalidConfigurationException("Invalid_snapshot");
+      }
+      int headerSize = prefix.getInt();
+      if (headerSize < 0 || PREFIX_SIZE + (long) headerSize > size) {
+        throw new InvalidConfigurationException("Invalid_snapshot");
+      }
+      ByteBuffer header = readFully(channel, PREFIX_SIZE, headerSize);
+      try {
+        return read(channel, header, align(PREFIX_SIZE + headerSize), size);
+      } catch (RuntimeException e) {
+        throw new InvalidConfigurationException("Invalid_snapshot");
+      }
+    }
+  }
+
+  private static Snapshot read(FileChannel channel, ByteBuffer header, long statesStart,
+      long size) throws IOException, InvalidConfigurationException {
+    String typeName = getString(header);
+    int rows = header.getInt();
+    int cols = header.getInt();
+    long generation = header.getLong();
+    long seed = header.getLong();
+    long randomState = header.getLong();
+    Map<String, Double> params = new LinkedHashMap<>();
+    for (int numParams = header.getInt(); numParams > 0; numParams--) {
+      params.put(getString(header), header.getDouble());
+    }
+    String config = getString(header);
+    int bits = header.get();
+    Map<String, Integer> planeLengths = new LinkedHashMap<>();
+    for (int numPlanes = header.getInt(); numPlanes > 0; numPlanes--) {
+      planeLengths.put(getString(header), header.getInt());
+    }
+    if (rows < 0 || cols < 0 || (bits != 1 && bits != 2 && bits != 4 && bits != 8)) {
+      throw new InvalidConfigurationException("Invalid_snapshot");
+    }
+
+    long position = statesStart + packedSize(rows, cols, bits);
+    for (int length : planeLengths.values()) {
+      position = align(position) + (long) length * Integer.BYTES;
+    }
+    if (position > size) {
+      throw new InvalidConfigurationException("Invalid_snapshot");
+    }
+
+    int[][] grid = readStates(channel, statesStart, rows, cols, bits);
+    Map<String, int[]> planes = new LinkedHashMap<>();
+    position = align(statesStart + packedSize(rows, cols, bits));
+    for (Map.Entry<String, Integer> plane : planeLengths.entrySet()) {
+      planes.put(plane.getKey(), readInts(channel, position, plane.getValue()));
+      position = align(position + (long) plane.getValue() * Integer.BYTES);
+    }
+    return new Snapshot(typeName, config, generation, seed, randomState, params, grid, planes);
+  }
+
+  private ByteBuffer createHeader(int bits) {
+    byte[] typeBytes = typeName.getBytes(StandardCharsets.UTF_8);
+    byte[] configBytes = config.getBytes(StandardCharsets.UTF_8);
+    Map<byte[], Double> paramBytes = new LinkedHashMap<>();
+    int size = 2 * Integer.BYTES + typeBytes.length + 2 * Integer.BYTES + 3 * Long.BYTES
+        + Integer.BYTES + configBytes.length + 1 + 2 * Integer.BYTES;
+    for (Map.Entry<String, Double> param : params.entrySet()) {
+      byte[] name = param.getKey().getBytes(StandardCharsets.UTF_8);
+      paramBytes.put(name, param.getValue());
+      size += Integer.BYTES + name.length + Double.BYTES;
+    }
+    Map<byte[], Integer> planeBytes = new LinkedHashMap<>();
+    for (Map.Entry<String, int[]> plane : planes.entrySet()) {
+      byte[] name = plane.getKey().getBytes(StandardCharsets.UTF_8);
+      planeBytes.put(name, plane.getValue().length);
+      size += 2 * Integer.BYTES + name.length;
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(typeBytes.length).put(typeBytes);
+    header.putInt(rows).putInt(cols);
+    header.putLong(generation).putLong(seed).putLong(randomState);
+    header.putInt(paramBytes.size());
+    for (Map.Entry<byte[], Double> param : paramBytes.entrySet()) {
+      header.putInt(param.getKey().length).put(param.getKey()).putDouble(param.getValue());
+    }
+    header.putInt(configBytes.length).put(configBytes);
+    header.put((byte) bits);
+    header.putInt(planeBytes.size());
+    for (Map.Entry<byte[], Integer> plane : planeBytes.entrySet()) {
+      header.putInt(plane.getKey().length).put(plane.getKey()).putInt(plane.getValue());
+    }
+    return header.flip();
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Finds the smallest number of bits (1, 2, 4 or 8) that holds every state.
+   */
+  private int bitsPerState() {
+    int maxState = IntStream.range(0, rows).parallel()
+        .map(row -> IntStream.of(grid[row]).max().orElse(0)).max().orElse(0);
+    int minState = IntStream.range(0, rows).parallel()
+        .map(row -> IntStream.of(grid[row]).min().orElse(0)).min().orElse(0);
+    if (minState < 0 || maxState > 0xFF) {
+      throw new IllegalArgumentException("States outside of 0 to 255 cannot be packed");
+    }
+    int bits = 1;
+    while ((1 << bits) <= maxState) {
+      bits *= 2;
+    }
+    return bits;
+  }
+
+  private long packedSize(int bits) {
+    return packedSize(rows, cols, bits);
+  }
+
+  private static long packedSize(int rows, int cols, int bits) {
+    return ((long) rows * cols * bits + 7) / 8;
+  }
+
+  private static long align(long position) {
+    return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+  }
+
+  /**
+   * Packs the states into the buffer, writing it out whenever it is full.  The cells are packed in
+   * bands of about one buffer, and each band in parallel ranges that start on a byte boundary, so
+   * no two tasks write to the same byte.
+   */
+  private void writeStates(ByteBuffer buffer, FileChannel channel, int bits,
+      DoubleConsumer progress, long size) throws IOException {
+    long numCells = (long) rows * cols;
+    int perByte = 8 / bits;
+    long bandCells = (long) BUFFER_SIZE * perByte;
+    long taskCells = (long) TASK_BYTES * perByte;
+    for (long firstCell = 0; firstCell < numCells; firstCell += bandCells) {
+      long bandStart = firstCell;
+      long bandEnd = Math.min(numCells, firstCell + bandCells);
+      byte[] packed = new byte[(int) ((bandEnd - bandStart + perByte - 1) / perByte)];
+      int numTasks = (packed.length + TASK_BYTES - 1) / TASK_BYTES;
+      IntStream.range(0, numTasks).parallel().forEach(task -> {
+        long cell = bandStart + task * taskCells;
+        long end = Math.min(bandEnd, cell + taskCells);
+        int row = (int) (cell / cols);
+        int col = (int) (cell % cols);
+        for (; cell < end; cell++) {
+          int shift = 8 - bits * (int) (cell % perByte + 1);
+          packed[(int) ((cell - bandStart) / perByte)] |= (byte) (grid[row][col] << shift);
+          if (++col == cols) {
+            col = 0;
+            row++;
+          }
+        }
+      });
+      put(buffer, channel, packed);
+      progress.accept((double) (channel.position() + buffer.position()) / size);
+    }
+  }
+
+  private static int[][] readStates(FileChannel channel, long start, int rows, int cols, int bits)
+      throws IOException {
+    int[][] states = new int[rows][cols];
+    long size = packedSize(rows, cols, bits);
+    MappedByteBuffer[] windows = map(channel, start, size);
+    int perByte = 8 / bits;
+    int mask = (1 << bits) - 1;
+    IntStream.range(0, rows).parallel().forEach(row -> {
+      long cell = (long) row * cols;
+      for (int col = 0; col < cols; col++, cell++) {
+        long index = cell / perByte;
+        int shift = 8 - bits * (int) (cell % perByte + 1);
+        byte packed = windows[(int) (index / WINDOW_SIZE)].get((int) (index % WINDOW_SIZE));
+        states[row][col] = (packed >> shift) & mask;
+      }
+    });
+    return states;
+  }
+
+  private static void writeInts(ByteBuffer buffer, FileChannel channel, int[] values)
+      throws IOException {
+    int written = 0;
+    while (written < values.length) {
+      if (buffer.remaining() < Integer.BYTES) {
+        flush(buffer, channel);
+      }
+      int count = Math.min(values.length - written, buffer.remaining() / Integer.BYTES);
+      buffer.asIntBuffer().put(values, written, count);
+      buffer.position(buffer.position() + count * Integer.BYTES);
+      written += count;
+    }
+  }
+
+  private static int[] readInts(FileChannel channel, long start, int length) throws IOException {
+    int[] values = new int[length];
+    MappedByteBuffer[] windows = map(channel, start, (long) length * Integer.BYTES);
+    int read = 0;
+    for (MappedByteBuffer window : windows) {
+      int count = window.remaining() / Integer.BYTES;
+      window.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values, read, count);
+      read += count;
+    }
+    return values;
+  }
+
+  /**
+   * Maps a region of the file as read-only windows of at most WINDOW_SIZE bytes, since a single
+   * mapped buffer is limited to 2 GB.  WINDOW_SIZE is a multiple of 4, so no int is split.
+   */
+  private static MappedByteBuffer[] map(FileChannel channel, long start, long size)
+      throws IOException {
+    MappedByteBuffer[] windows = new MappedByteBuffer[(int) ((size + WINDOW_SIZE - 1)
+        / WINDOW_SIZE)];
+    for (int i = 0; i < windows.length; i++) {
+      long offset = i * WINDOW_SIZE;
+      windows[i] = channel.map(MapMode.READ_ONLY, start + offset,
+          Math.min(WINDOW_SIZE, size - offset));
+    }
+    return windows;
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, long position, int size)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of snapshot");
+      }
+    }
+    return buffer.flip();
+  }
+
+  private static void put(ByteBuffer buffer, FileChannel channel, byte[] bytes)
+      throws IOException {
+    int written = 0;
+    while (written < bytes.length) {
+      if (!buffer.hasRemaining()) {
+        flush(buffer, channel);
+      }
+      int count = Math.min(bytes.length - written, buffer.remaining());
+      buffer.put(bytes, written, count);
+      written += count;
+    }
+  }
+
+  /**
+   * Writes zeros until the file (including what is still buffered) reaches the given position.
+   */
+  private static void padTo(ByteBuffer buffer, FileChannel channel, long position)
+      throws IOException {
+    long padding = position - channel.position() - buffer.position();
+    put(buffer, channel, new byte[(int) padding]);
+  }
+
+  private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  public String getTypeName() {
+    return typeName;
+  }
+
+  /**
+   * Getter for the configuration without its grid
+   *
+   * @return configuration file as XML
+   */
+  public String getConfig() {
+    return config;
+  }
+
+  public int getNumRows() {
+    return rows;
+  }
+
+  public int getNumCols() {
+    return cols;
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public long getRandomState() {
+    return randomState;
+  }
+
+  public Map<String, Double> getParams() {
+    return params;
+  }
+
+  /**
+   * Getter for the saved states.  The grid is not copied.
+   *
+   * @return 2D array of cell states, indexed by row and column
+   */
+  public int[][] getGrid() {
+    return grid;
+  }
+
+  /**
+   * Getter for the saved extra planes.  The planes are not copied.
+   *
+   * @return map from plane name to values
+   */
+  public Map<String, int[]> getPlanes() {
+    return planes;
+  }
+}
@@ -0,0 +1,217 @@
+package cellsociety.config;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Reads a configuration file with StAX instead of building the whole DOM.  Every element except
+ * the cell elements is kept in a small skeleton document, so the rest of the Parser can read the
+ * simulation information as usual.  The cell elements are written straight into a primitive state
+ * grid while reading, so memory scales with the grid and not with the XML tree.
+ * <p>
+ * Cells are checked against the grid bounds while reading; the first cell outside the grid is
+ * remembered so the Parser can report it.  The lowest and highest state seen are remembered as
+ * well, since the allowed states depend on the game type.
+ */
+public class StreamingConfigReader {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Document skeleton;
+  private int width = -1;
+  private int height = -1;
+  private int[][] grid;
+  private int[] pendingCells = new int[0];
+  private int numPendingCells;
+  private int[] invalidLocation;
+  private int minState = Integer.MAX_VALUE;
+  private int maxState = Integer.MIN_VALUE;
+
+  /**
+   * Reads the given configuration file.
+   *
+   * @param xmlFile the XML file to read
+   * @throws IOException                  if the file cannot be read
+   * @throws XMLStreamException           if the file is not well formed XML
+   * @throws ParserConfigurationException if no document can be created for the skeleton
+   * @throws NumberFormatException        if a size or cell attribute is not a number
+   */
+  public StreamingConfigReader(File xmlFile)
+      throws IOException, XMLStreamException, ParserConfigurationException {
+    skeleton = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+    try (InputStream in = new BufferedInputStream(new FileInputStream(xmlFile), BUFFER_SIZE)) {
+      XMLStreamReader reader = factory.createXMLStreamReader(in);
+      try {
+        read(reader);
+      } finally {
+        reader.close();
+      }
+    }
+    if (grid == null) {
+      createGrid();
+    }
+  }
+
+  private void read(XMLStreamReader reader) throws XMLStreamException {
+    Deque<Node> parents = new ArrayDeque<>();
+    parents.push(skeleton);
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        String name = reader.getLocalName();
+        if (name.equals("cell")) {
+          readCell(reader);
+          continue;
+        }
+        Element element = skeleton.createElement(name);
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+          element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        parents.peek().appendChild(element);
+        parents.push(element);
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        Node finished = parents.pop();
+        readSize(finished);
+      } else if ((event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)
+          && !reader.isWhiteSpace() && parents.peek() != skeleton) {
+        parents.peek().appendChild(skeleton.createTextNode(reader.getText()));
+      }
+    }
+  }
+
+  /**
+   * Remembers the width and height as soon as both are known, so that cells can go straight into
+   * the grid.
+   */
+  private void readSize(Node finished) {
+    if (finished.getParentNode() != skeleton.getDocumentElement()) {
+      return;
+    }
+    if (finished.getNodeName().equals("width") && width < 0) {
+      width = Integer.parseInt(finished.getTextContent().trim());
+    } else if (finished.getNodeName().equals("height") && height < 0) {
+      height = Integer.parseInt(finished.getTextContent().trim());
+    }
+    if (grid == null && width >= 0 && height >= 0) {
+      createGrid();
+    }
+  }
+
+  /**
+   * Reads one cell element and skips to its end.
+   */
+  private void readCell(XMLStreamReader reader) throws XMLStreamException {
+    int row = Integer.parseInt(String.valueOf(reader.getAttributeValue(null, "row")));
+    int col = Integer.parseInt(String.valueOf(reader.getAttributeValue(null, "column")));
+    int state = Integer.parseInt(String.valueOf(reader.getAttributeValue(null, "state")));
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+    if (grid != null) {
+      setCell(row, col, state);
+    } else {
+      if (numPendingCells * 3 == pendingCells.length) {
+        pendingCells = Arrays.copyOf(pendingCells, Math.max(48, pendingCells.length * 2));
+      }
+      pendingCells[numPendingCells * 3] = row;
+      pendingCells[numPendingCells * 3 + 1] = col;
+      pendingCells[numPendingCells * 3 + 2] = state;
+      numPendingCells++;
+    }
+  }
+
+  /**
+   * Creates the grid once the size is known, or at the end of the file, and adds the cells that
+   * were read before.
+   */
+  private void createGrid() {
+    grid = new int[Math.max(width, 0)][Math.max(height, 0)];
+    for (int cell = 0; cell < numPendingCells; cell++) {
+      setCell(pendingCells[cell * 3], pendingCells[cell * 3 + 1], pendingCells[cell * 3 + 2]);
+    }
+    pendingCells = null;
+  }
+
+  private void setCell(int row, int col, int state) {
+    minState = Math.min(minState, state);
+    maxState = Math.max(maxState, state);
+    if (row < 0 || row >= grid.length || col < 0 || col >= Math.max(height, 0)) {
+      if (invalidLocation == null) {
+        invalidLocation = new int[]{row, col};
+      }
+      return;
+    }
+    grid[row][col] = state;
+  }
+
+  /**
+   * Getter for the skeleton document, which holds everything except the cells
+   *
+   * @return the skeleton document
+   */
+  public Document getDocument() {
+    return skeleton;
+  }
+
+  /**
+   * Getter for the grid filled from the cell elements.  The grid is not copied.
+   *
+   * @return 2D array of cell states, indexed by row and column
+   */
+  public int[][] getGrid() {
+    return grid;
+  }
+
+  /**
+   * Getter for the first cell that was outside the grid
+   *
+   * @return row and column of the cell, or null if all cells were inside the grid
+   */
+  public int[] getInvalidLocation() {
+    return invalidLocation;
+  }
+
+  /**
+   * Getter for the lowest state of any cell element
+   *
+   * @return lowest state, or Integer.MAX_VALUE if there were no cells
+   */
+  public int getMinState() {
+    return minState;
+  }
+
+  /**
+   * Getter for the highest state of any cell element
+   *
+   * @return highest state, or Integer.MIN_VALUE if there were no cells
+   */
+  public int getMaxState() {
+    return maxState;
+  }
+}
@@ -0,0 +1,166 @@
+package cellsociety.config;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.function.DoubleConsumer;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes a configuration file with StAX instead of building and transforming a DOM with a node per
+ * cell.  Everything but the grid comes from the small skeleton document made by
+ * ConfigLoader.createConfigSkeleton; the grid is written row by row straight from the state grid
+ * into a buffered stream, so memory does not grow with the grid.  Cell attributes reuse the text
+ * of row, column and small state numbers instead of converting every number again.
+ * <p>
+ * The file is indented like the data files, four spaces per level.
+ */
+public class StreamingConfigWriter {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final String INDENT = "    ";
+  private static final int NUM_CACHED_STATES = 256;
+
+  /**
+   * Writes a configuration file.
+   *
+   * @param skeleton the configuration without cells, see ConfigLoader.createConfigSkeleton
+   * @param grid     the states to write into its grid element
+   * @param encoding how the grid is written
+   * @param file     the file to write
+   * @param progress receives the fraction of rows written so far
+   * @throws IOException        if the file cannot be written
+   * @throws XMLStreamException if the XML cannot be written
+   */
+  public static void write(Document skeleton, int[][] grid, GridEncoding encoding, File file,
+      DoubleConsumer progress) throws IOException, XMLStreamException {
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()),
+        BUFFER_SIZE)) {
+      write(skeleton, grid, encoding, out, progress);
+    }
+  }
+
+  /**
+   * Writes a configuration file to a stream, which is flushed but not closed.
+   *
+   * @param skeleton the configuration without cells, see ConfigLoader.createConfigSkeleton
+   * @param grid     the states to write into its grid element
+   * @param encoding how the grid is written
+   * @param out      the stream to write to, best buffered
+   * @param progress receives the fraction of rows written so far
+   * @throws XMLStreamException if the XML cannot be written
+   */
+  public static void write(Document skeleton, int[][] grid, GridEncoding encoding,
+      OutputStream out, DoubleConsumer progress) throws XMLStreamException {
+    XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+    writer.writeStartDocument("UTF-8", "1.0");
+    Element root = skeleton.getDocumentElement();
+    writer.writeCharacters("\n");
+    writer.writeStartElement(root.getNodeName());
+    for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() != Node.ELEMENT_NODE) {
+        continue;
+      }
+      if (child.getNodeName().equals("grid")) {
+        writeGrid(writer, grid, encoding, progress);
+      } else {
+        writeElement(writer, (Element) child, 1);
+      }
+    }
+    writer.writeCharacters("\n");
+    writer.writeEndElement();
+    writer.writeCharacters("\n");
+    writer.writeEndDocument();
+    writer.flush();
+    writer.close();
+    progress.accept(1);
+  }
+
+  private static void writeGrid(XMLStreamWriter writer, int[][] grid, GridEncoding encoding,
+      DoubleConsumer progress) throws XMLStreamException {
+    writer.writeCharacters("\n" + INDENT);
+    writer.writeStartElement("grid");
+    if (encoding != GridEncoding.CELLS) {
+      encoding.write(grid, writer, progress);
+      writer.writeEndElement();
+      return;
+    }
+    int cols = (grid.length == 0) ? 0 : grid[0].length;
+    String[] colTexts = new String[cols];
+    for (int col = 0; col < cols; col++) {
+      colTexts[col] = Integer.toString(col);
+    }
+    String[] stateTexts = new String[NUM_CACHED_STATES];
+    for (int state = 0; state < NUM_CACHED_STATES; state++) {
+      stateTexts[state] = Integer.toString(state);
+    }
+    String cellIndent = "\n" + INDENT + INDENT;
+    for (int row = 0; row < grid.length; row++) {
+      String rowText = Integer.toString(row);
+      for (int col = 0; col < cols; col++) {
+        int state = grid[row][col];
+        writer.writeCharacters(cellIndent);
+        writer.writeEmptyElement("cell");
+        writer.writeAttribute("row", rowText);
+        writer.writeAttribute("column", colTexts[col]);
+        writer.writeAttribute("state", (state >= 0 && state < NUM_CACHED_STATES)
+            ? stateTexts[state] : Integer.toString(state));
+      }
+      progress.accept((double) (row + 1) / grid.length);
+    }
+    writer.writeCharacters("\n" + INDENT);
+    writer.writeEndElement();
+  }
+
+  /**
+   * Writes an element of the skeleton with its attributes and children.  Blank text between child
+   * elements is only layout and is replaced by the indentation.
+   */
+  private static void writeElement(XMLStreamWriter writer, Element element, int depth)
+      throws XMLStreamException {
+    writer.writeCharacters("\n" + INDENT.repeat(depth));
+    writer.writeStartElement(element.getNodeName());
+    NamedNodeMap attributes = element.getAttributes();
+    for (int i = 0; i < attributes.getLength(); i++) {
+      Node attribute = attributes.item(i);
+      writer.writeAttribute(attribute.getNodeName(), attribute.getNodeValue());
+    }
+    boolean hasElements = false;
+    for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+      hasElements |= child.getNodeType() == Node.ELEMENT_NODE;
+    }
+    for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+      switch (child.getNodeType()) {
+        case Node.ELEMENT_NODE:
+          writeElement(writer, (Element) child, depth + 1);
+          break;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+          if (!hasElements) {
+            writer.writeCharacters(child.getNodeValue());
+          } else if (!child.getNodeValue().isBlank()) {
+            writer.writeCharacters(child.getNodeValue().trim());
+          }
+          break;
+        case Node.COMMENT_NODE:
+          writer.writeCharacters("\n" + INDENT.repeat(depth + 1));
+          writer.writeComment(child.getNodeValue());
+          break;
+        default:
+          break;
+      }
+    }
+    if (hasElements) {
+      writer.writeCharacters("\n" + INDENT.repeat(depth));
+    }
+    writer.writeEndElement();
+  }
+}
@@ -0,0 +1,282 @@
+package cellsociety.config;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Replays a run recorded by a {@link TrajectoryRecorder}.  Opening a recording only reads the
+ * small block headers.  Seeking decompresses the block that holds the generation and applies its
+ * frames from the keyframe on, so it takes time proportional to the keyframe interval however long
+ * the run was; stepping forward applies one frame.  Neither computes the simulation again.
+ */
+public class TrajectoryPlayer implements AutoCloseable {
+
+  private final FileChannel channel;
+  private final String typeName;
+  private final String config;
+  private final int numRows;
+  private final int numCols;
+  private final int keyframeInterval;
+  private final List<Block> blocks = new ArrayList<>();
+  private final int[][] grid;
+  private final Inflater inflater = new Inflater();
+
+  private int blockIndex = -1;
+  private ByteBuffer frames;
+  private int frame;
+
+  /**
+   * Position and size of one compressed block in the file.
+   */
+  private static class Block {
+
+    long generation;
+    int numFrames;
+    int rawLength;
+    int length;
+    long offset;
+
+    Block(long generation, int numFrames, int rawLength, int length, long offset) {
+      this.generation = generation;
+      this.numFrames = numFrames;
+      this.rawLength = rawLength;
+      this.length = length;
+      this.offset = offset;
+    }
+  }
+
+  /**
+   * Opens a recording and reads its header and block headers.  A block that was cut off when the
+   * recording stopped ends the recording.
+   *
+   * @param file the recording
+   * @throws IOException                   if the file cannot be read
+   * @throws InvalidConfigurationException if the file is not a recording
+   */
+  public TrajectoryPlayer(File file) throws IOException, InvalidConfigurationException {
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      ByteBuffer prefix = readAt(0, TrajectoryRecorder.PREFIX_SIZE);
+      if (prefix.getInt() != TrajectoryRecorder.MAGIC
+          || prefix.getInt() != TrajectoryRecorder.VERSION) {
+        throw new InvalidConfigurationException("Invalid_trajectory");
+      }
+      int headerLength = prefix.getInt();
+      ByteBuffer header = readAt(TrajectoryRecorder.PREFIX_SIZE, headerLength);
+      typeName = DeltaCodec.readString(header);
+      config = DeltaCodec.readString(header);
+      numRows = (int) DeltaCodec.readVarint(header);
+      numCols = (int) DeltaCodec.readVarint(header);
+      keyframeInterval = (int) DeltaCodec.readVarint(header);
+      grid = new int[numRows][numCols];
+
+      long position = TrajectoryRecorder.PREFIX_SIZE + headerLength;
+      while (position + TrajectoryRecorder.BLOCK_HEADER_SIZE <= channel.size()) {
+        ByteBuffer blockHeader = readAt(position, TrajectoryRecorder.BLOCK_HEADER_SIZE);
+        Block block = new Block(blockHeader.getLong(), blockHeader.getInt(),
+            blockHeader.getInt(), blockHeader.getInt(),
+            position + TrajectoryRecorder.BLOCK_HEADER_SIZE);
+        if (block.numFrames <= 0 || block.length < 0
+            || block.offset + block.length > channel.size()) {
+          break;
+        }
+        blocks.add(block);
+        position = block.offset + block.length;
+      }
+      if (blocks.isEmpty()) {
+        throw new InvalidConfigurationException("Invalid_trajectory");
+      }
+    } catch (EOFException | BufferUnderflowException | IllegalArgumentException e) {
+      channel.close();
+      throw new InvalidConfigurationException("Invalid_trajectory");
+    } catch (IOException | InvalidConfigurationException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Checks if a file is a recording, by its extension
+   *
+   * @param file file to check
+   * @return True if the file is named like a recording
+   */
+  public static boolean isTrajectory(File file) {
+    return file.getName().toLowerCase().endsWith(TrajectoryRecorder.EXTENSION);
+  }
+
+  /**
+   * Moves to a generation and returns its states.
+   *
+   * @param generation generation to move to, between the first and last generation
+   * @return the states; the array is reused by the player and must not be changed
+   * @throws IOException                   if the file cannot be read
+   * @throws InvalidConfigurationException if the block holding the generation is damaged
+   * @throws IllegalArgumentException      if the generation was not recorded
+   */
+  public int[][] seek(long generation) throws IOException, InvalidConfigurationException {
+    int index = findBlock(generation);
+    if (index < 0) {
+      throw new IllegalArgumentException("Generation " + generation + " was not recorded");
+    }
+    Block block = blocks.get(index);
+    int target = (int) (generation - block.generation);
+    if (index != blockIndex || frame > target + 1) {
+      loadBlock(index);
+    }
+    while (frame <= target) {
+      applyFrame();
+    }
+    return grid;
+  }
+
+  /**
+   * Moves to the next generation and returns its states.
+   *
+   * @return the states, reused by the player, or null at the end of the recording
+   * @throws IOException                   if the file cannot be read
+   * @throws InvalidConfigurationException if the next block is damaged
+   */
+  public int[][] next() throws IOException, InvalidConfigurationException {
+    if (blockIndex < 0) {
+      return seek(getFirstGeneration());
+    }
+    if (frame == blocks.get(blockIndex).numFrames) {
+      if (blockIndex + 1 == blocks.size()) {
+        return null;
+      }
+      loadBlock(blockIndex + 1);
+    }
+    applyFrame();
+    return grid;
+  }
+
+  /**
+   * Getter for the generation shown by the last seek or next
+   *
+   * @return the current generation, or the first generation before the first seek
+   */
+  public long getGeneration() {
+    return (blockIndex < 0) ? getFirstGeneration()
+        : blocks.get(blockIndex).generation + frame - 1;
+  }
+
+  public long getFirstGeneration() {
+    return blocks.get(0).generation;
+  }
+
+  public long getLastGeneration() {
+    Block last = blocks.get(blocks.size() - 1);
+    return last.generation + last.numFrames - 1;
+  }
+
+  public String getTypeName() {
+    return typeName;
+  }
+
+  public String getConfig() {
+    return config;
+  }
+
+  public int getNumRows() {
+    return numRows;
+  }
+
+  public int getNumCols() {
+    return numCols;
+  }
+
+  public int getKeyframeInterval() {
+    return keyframeInterval;
+  }
+
+  @Override
+  public void close() throws IOException {
+    inflater.end();
+    channel.close();
+  }
+
+  /**
+   * Finds the block holding a generation with a binary search, since the blocks of a recording
+   * follow each other.
+   */
+  private int findBlock(long generation) {
+    int low = 0;
+    int high = blocks.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      Block block = blocks.get(mid);
+      if (generation < block.generation) {
+        high = mid - 1;
+      } else if (generation >= block.generation + block.numFrames) {
+        low = mid + 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private void loadBlock(int index) throws IOException, InvalidConfigurationException {
+    Block block = blocks.get(index);
+    byte[] raw = new byte[block.rawLength];
+    inflater.reset();
+    inflater.setInput(readAt(block.offset, block.length));
+    try {
+      int length = 0;
+      while (length < raw.length && !inflater.finished()) {
+        int inflated = inflater.inflate(raw, length, raw.length - length);
+        if (inflated == 0 && inflater.needsInput()) {
+          break;
+        }
+        length += inflated;
+      }
+      if (length != raw.length) {
+        throw new InvalidConfigurationException("Invalid_trajectory");
+      }
+    } catch (DataFormatException e) {
+      throw new InvalidConfigurationException("Invalid_trajectory");
+    }
+    frames = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+    blockIndex = index;
+    frame = 0;
+  }
+
+  private void applyFrame() throws InvalidConfigurationException {
+    if (frame == 0) {
+      // the keyframe is stored against an empty grid
+      for (int[] row : grid) {
+        Arrays.fill(row, 0);
+      }
+    }
+    try {
+      DeltaCodec.readChanges(frames,
+          (index, delta) -> grid[(int) (index / numCols)][(int) (index % numCols)] += delta);
+    } catch (RuntimeException e) {
+      blockIndex = -1;
+      throw new InvalidConfigurationException("Invalid_trajectory");
+    }
+    frame++;
+  }
+
+  private ByteBuffer readAt(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    return buffer.flip();
+  }
+}
@@ -0,0 +1,223 @@
+package cellsociety.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Records the states of a run, one frame per generation, so it can be replayed and searched later
+ * with a {@link TrajectoryPlayer} without computing it again.
+ * <p>
+ * Every frame is stored as the change list (see {@link DeltaCodec}) of the cells that differ from
+ * the previous frame.  The first frame of every block of keyframeInterval frames is a keyframe,
+ * stored against an empty grid, so a block can be decoded on its own.  Each block is compressed
+ * with Deflate and written once it is full or flushed, so at most one block is held in memory.
+ * <p>
+ * File layout, little endian: a header (magic, version, length of the header data, then the type
+ * name, configuration XML, rows, columns and keyframe interval), followed by the blocks.  A block
+ * starts with its first generation, number of frames, uncompressed length and compressed length.
+ * If the process stops, the blocks written so far can still be replayed.
+ * <p>
+ * When the run goes back, e.g. after a reset or stepping back, the frames from that generation on
+ * are cut from the recording: blocks after it are removed and the frame count of the block holding
+ * it is lowered, as the player ignores frames past the count.  Recording then goes on with a new
+ * keyframe.
+ */
+public class TrajectoryRecorder {
+
+  public static final String EXTENSION = ".celltraj";
+  static final int MAGIC = 0x4A525443; // "CTRJ"
+  static final int VERSION = 1;
+  static final int PREFIX_SIZE = 3 * Integer.BYTES;
+  static final int BLOCK_HEADER_SIZE = Long.BYTES + 3 * Integer.BYTES;
+  public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+
+  private final File file;
+  private final int numRows;
+  private final int numCols;
+  private final int keyframeInterval;
+  private final int[][] previous;
+  private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+  private final List<long[]> writtenBlocks = new ArrayList<>(); // generation, position, frames
+  private final int[] frameOffsets;
+  private long fileSize;
+
+  private DeltaCodec block = new DeltaCodec();
+  private long blockGeneration;
+  private int blockFrames;
+  private long lastGeneration;
+
+  /**
+   * Constructor for a recorder.  Creates or replaces the file and records the first frame.
+   *
+   * @param file             file to record to
+   * @param typeName         normalized name of the game type
+   * @param config           configuration XML without its grid, see ConfigLoader.createConfigXml
+   * @param grid             states of the first frame
+   * @param generation       generation of the first frame
+   * @param keyframeInterval number of frames per keyframe, the most frames a seek has to decode
+   * @throws IOException if the file cannot be written
+   */
+  public TrajectoryRecorder(File file, String typeName, String config, int[][] grid,
+      long generation, int keyframeInterval) throws IOException {
+    if (keyframeInterval < 1) {
+      throw new IllegalArgumentException("Keyframe interval must be positive");
+    }
+    this.file = file;
+    this.numRows = grid.length;
+    this.numCols = (numRows == 0) ? 0 : grid[0].length;
+    this.keyframeInterval = keyframeInterval;
+    this.previous = new int[numRows][numCols];
+    this.frameOffsets = new int[keyframeInterval];
+
+    DeltaCodec header = new DeltaCodec();
+    header.writeString(typeName);
+    header.writeString(config);
+    header.writeVarint(numRows);
+    header.writeVarint(numCols);
+    header.writeVarint(keyframeInterval);
+    byte[] headerBytes = header.toByteArray();
+    ByteBuffer prefix = ByteBuffer.allocate(PREFIX_SIZE + headerBytes.length)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    prefix.putInt(MAGIC).putInt(VERSION).putInt(headerBytes.length).put(headerBytes).flip();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeFully(channel, prefix, 0);
+    }
+    fileSize = PREFIX_SIZE + headerBytes.length;
+    addFrame(grid, generation);
+  }
+
+  /**
+   * Records the states of the next generation.  If the generation does not follow the previous
+   * one, the frames from this generation on are cut first and the frame becomes a keyframe.
+   *
+   * @param grid       states of the generation
+   * @param generation the generation
+   * @throws IOException if a block cannot be written
+   */
+  public void record(int[][] grid, long generation) throws IOException {
+    if (generation != lastGeneration + 1) {
+      cut(generation);
+      flush();
+    } else if (blockFrames == keyframeInterval) {
+      flush();
+    }
+    addFrame(grid, generation);
+  }
+
+  /**
+   * Writes the frames that are not yet in a complete block as a shorter block, e.g. when the run
+   * is paused, so they can be replayed.  The next frame starts a new block with a keyframe.
+   *
+   * @throws IOException if the block cannot be written
+   */
+  public void flush() throws IOException {
+    if (blockFrames == 0) {
+      return;
+    }
+    byte[] raw = block.toByteArray();
+    deflater.reset();
+    deflater.setInput(raw);
+    deflater.finish();
+    byte[] compressed = new byte[Math.max(64, raw.length / 4)];
+    int length = 0;
+    while (!deflater.finished()) {
+      if (length == compressed.length) {
+        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+      }
+      length += deflater.deflate(compressed, length, compressed.length - length);
+    }
+    ByteBuffer out = ByteBuffer.allocate(BLOCK_HEADER_SIZE + length)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    out.putLong(blockGeneration).putInt(blockFrames).putInt(raw.length).putInt(length)
+        .put(compressed, 0, length).flip();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+      writeFully(channel, out, fileSize);
+    }
+    writtenBlocks.add(new long[]{blockGeneration, fileSize, blockFrames});
+    fileSize += BLOCK_HEADER_SIZE + length;
+    block = new DeltaCodec();
+    blockFrames = 0;
+  }
+
+  /**
+   * Writes the remaining frames.  The recorder must not be used afterwards.
+   *
+   * @throws IOException if the block cannot be written
+   */
+  public void close() throws IOException {
+    flush();
+    deflater.end();
+  }
+
+  public int getKeyframeInterval() {
+    return keyframeInterval;
+  }
+
+  /**
+   * Removes the frames of the given generation and later ones.
+   */
+  private void cut(long generation) throws IOException {
+    if (blockFrames > 0 && generation < blockGeneration + blockFrames) {
+      int keep = (int) Math.max(0, generation - blockGeneration);
+      block.truncate(frameOffsets[keep]);
+      blockFrames = keep;
+    }
+    long newSize = fileSize;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+      while (!writtenBlocks.isEmpty()) {
+        long[] last = writtenBlocks.get(writtenBlocks.size() - 1);
+        if (last[0] >= generation) {
+          writtenBlocks.remove(writtenBlocks.size() - 1);
+          newSize = last[1];
+        } else {
+          if (last[0] + last[2] > generation) {
+            last[2] = generation - last[0];
+            ByteBuffer frames = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            frames.putInt((int) last[2]).flip();
+            writeFully(channel, frames, last[1] + Long.BYTES);
+          }
+          break;
+        }
+      }
+      if (newSize != fileSize) {
+        channel.truncate(newSize);
+        fileSize = newSize;
+      }
+    }
+  }
+
+  private void addFrame(int[][] grid, long generation) {
+    if (grid.length != numRows || (numRows > 0 && grid[0].length != numCols)) {
+      throw new IllegalArgumentException("Grid size changed while recording");
+    }
+    if (blockFrames == 0) {
+      blockGeneration = generation;
+    }
+    frameOffsets[blockFrames] = block.size();
+    for (int row = 0; row < numRows; row++) {
+      // a keyframe is written against an empty grid
+      block.writeChanges(blockFrames == 0 ? null : previous[row], grid[row],
+          (long) row * numCols);
+      System.arraycopy(grid[row], 0, previous[row], 0, numCols);
+    }
+    block.endChanges();
+    blockFrames++;
+    lastGeneration = generation;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position());
+    }
+  }
+}
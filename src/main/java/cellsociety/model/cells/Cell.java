@@ -35,14 +35,30 @@ public class Cell {
     nextState = -1;
   }
 
+  /**
+   * Puts the cell back to how it is when created with the given state, so a grid can be reset
+   * without creating new cells.  Subclasses with more fields reset them as well.
+   *
+   * @param state the cell's initial state
+   */
+  public void reset(int state) {
+    currentState = state;
+    nextState = -1;
+  }
+
   /**
    * This method sets the current state equal to the next state and resets the next state to -1
+   *
+   * @return True if the current state changed
    */
-  public void switchState() {
-    if (nextState != -1) {
-      currentState = nextState;
-      nextState = -1;
+  public boolean switchState() {
+    if (nextState == -1) {
+      return false;
     }
+    boolean changed = (nextState != currentState);
+    currentState = nextState;
+    nextState = -1;
+    return changed;
   }
 
   /**
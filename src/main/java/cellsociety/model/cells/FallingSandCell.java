@@ -80,4 +80,28 @@ public class FallingSandCell extends Cell {
   public boolean nextStateWater() {
     return (nextState == WATER);
   }
+
+  /**
+   * Method to keep the current state as the next state.  Used while the cell is asleep, so that
+   * neighbors see it as a settled cell.
+   */
+  public void holdState() {
+    nextState = currentState;
+  }
+
+  /**
+   * Method to clear the next state so that the cell is updated normally again
+   */
+  public void releaseState() {
+    nextState = -1;
+  }
+
+  /**
+   * Method to determine if switching states will change the cell
+   *
+   * @return True if a next state is set and differs from the current state, false if not
+   */
+  public boolean nextStateChanges() {
+    return (nextState != -1 && nextState != currentState);
+  }
 }
@@ -16,8 +16,6 @@ public class ForagingAntsCell extends Cell {
   public static final int PHEROMONE = 4;
   private boolean hasFood;
   private boolean atFoodSource;
-  private int foodPheromoneLevel;
-  private int homePheromoneLevel;
   private final int[] orientation = new int[2];
 
   /**
@@ -31,8 +29,20 @@ public class ForagingAntsCell extends Cell {
     super(row, col, state);
     hasFood = false;
     atFoodSource = false;
-    foodPheromoneLevel = 0;
-    homePheromoneLevel = 0;
+    orientation[0] = 0;
+    orientation[1] = 1;
+  }
+
+  /**
+   * Resets the state, drops any food and turns the cell back to its initial orientation
+   *
+   * @param state the cell's initial state
+   */
+  @Override
+  public void reset(int state) {
+    super.reset(state);
+    hasFood = false;
+    atFoodSource = false;
     orientation[0] = 0;
     orientation[1] = 1;
   }
@@ -44,16 +54,13 @@ public class ForagingAntsCell extends Cell {
     nextState = EMPTY;
     hasFood = false;
     atFoodSource = false;
-    foodPheromoneLevel = 0;
-    homePheromoneLevel = 0;
   }
 
   /**
    * Method to set next state to nest
    */
-  public void setNextStateNest(int homePheromoneLevel) {
+  public void setNextStateNest() {
     nextState = NEST;
-    this.homePheromoneLevel = homePheromoneLevel;
   }
 
   /**
@@ -78,6 +85,22 @@ public class ForagingAntsCell extends Cell {
     this.orientation[1] = orientation[1];
   }
 
+  /**
+   * Method to set next state to ant without allocating an orientation array
+   *
+   * @param hasFood      True if ant has food, false if not
+   * @param atFoodSource True if ant is at food source, false if not
+   * @param rowDir       row direction of the ant
+   * @param colDir       column direction of the ant
+   */
+  public void setNextStateAnt(boolean hasFood, boolean atFoodSource, int rowDir, int colDir) {
+    nextState = ANT;
+    this.hasFood = hasFood;
+    this.atFoodSource = atFoodSource;
+    orientation[0] = rowDir;
+    orientation[1] = colDir;
+  }
+
   /**
    * Method to set next state to food pheromone
    */
@@ -104,6 +127,17 @@ public class ForagingAntsCell extends Cell {
   }
 
 
+  /**
+   * Method to restore whether a saved ant holds food and is at the food source
+   *
+   * @param hasFood      True if ant has food, false if not
+   * @param atFoodSource True if ant is at food source, false if not
+   */
+  public void setFoodStatus(boolean hasFood, boolean atFoodSource) {
+    this.hasFood = hasFood;
+    this.atFoodSource = atFoodSource;
+  }
+
   /**
    * Method to check if a cell's next state is occupied by an ant
    *
@@ -123,32 +157,21 @@ public class ForagingAntsCell extends Cell {
   }
 
   /**
-   * Method to get food pheromone level
-   *
-   * @return int representing food pheromone level
-   */
-  public int getFoodPheromoneLevel() {
-    return foodPheromoneLevel;
-  }
-
-  /**
-   * Method to get home pheromone level
+   * Method to get the row direction of the ant's orientation
    *
-   * @return int representing home pheromone level
+   * @return row direction
    */
-  public int getHomePheromoneLevel() {
-    return homePheromoneLevel;
+  public int getRowOrientation() {
+    return orientation[0];
   }
 
   /**
-   * Method to set pheromone levels
+   * Method to get the column direction of the ant's orientation
    *
-   * @param homeLevel level of home pheromones
-   * @param foodLevel level of food pheromones
+   * @return column direction
    */
-  public void setPheromoneLevels(int foodLevel, int homeLevel) {
-    homePheromoneLevel = homeLevel;
-    foodPheromoneLevel = foodLevel;
+  public int getColOrientation() {
+    return orientation[1];
   }
 
   /**
@@ -0,0 +1,28 @@
+package cellsociety.model.cells;
+
+/**
+ * This is a child of the Cell class.  It represents a simulation whose rules are read from the
+ * configuration file, so it can hold any state and has no named states of its own.
+ */
+public class RuleTableCell extends Cell {
+
+  /**
+   * Constructor for RuleTableCell
+   *
+   * @param row   row position
+   * @param col   column position
+   * @param state original state of cell
+   */
+  public RuleTableCell(int row, int col, int state) {
+    super(row, col, state);
+  }
+
+  /**
+   * Method to set the cell's next state
+   *
+   * @param state integer representation of the next state
+   */
+  public void setNextState(int state) {
+    nextState = state;
+  }
+}
@@ -24,6 +24,18 @@ public class WaTorWorldCell extends Cell {
     super(row, col, state);
   }
 
+  /**
+   * Resets the state and clears the reproduction age and energy
+   *
+   * @param state the cell's initial state
+   */
+  @Override
+  public void reset(int state) {
+    super.reset(state);
+    reproductionAge = 0;
+    energy = 0;
+  }
+
   /**
    * Method to set next state to empty
    */
@@ -85,6 +97,17 @@ public class WaTorWorldCell extends Cell {
     energy = startingEnergy;
   }
 
+  /**
+   * Method to restore the reproduction age and energy of a saved cell
+   *
+   * @param reproductionAge reproducing years accumulated
+   * @param energy          the shark's energy
+   */
+  public void setAgeAndEnergy(int reproductionAge, int energy) {
+    this.reproductionAge = reproductionAge;
+    this.energy = energy;
+  }
+
   /**
    * Method to check if the fish has been eaten
    *
@@ -0,0 +1,159 @@
+package cellsociety.model.gametypes;
+
+import java.util.Arrays;
+
+/**
+ * A set of cells of a grid whose states changed, each with its latest state, see
+ * {@link GameType#collectChanges(CellChanges)}.  Cells are numbered row by row, row * number of
+ * columns + column.  A cell that changes again while it is in the set only gets its new state, so
+ * the set never holds more entries than the grid has cells.
+ * <p>
+ * The arrays grow with the number of changes and are reused after clear, which takes time
+ * proportional to the number of changed cells, not to the size of the grid.
+ */
+public class CellChanges {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final int numRows;
+  private final int numCols;
+  // the position of every cell in the set plus one, 0 if it is not in it; created by the first put
+  private int[] positions;
+  private int[] cells;
+  private int[] states;
+  private int numChanged;
+
+  /**
+   * Creates an empty set for a grid of the given size.
+   *
+   * @param numRows number of rows of the grid
+   * @param numCols number of columns of the grid
+   */
+  public CellChanges(int numRows, int numCols) {
+    this.numRows = numRows;
+    this.numCols = numCols;
+    int capacity = Math.min(INITIAL_CAPACITY, numRows * numCols);
+    cells = new int[capacity];
+    states = new int[capacity];
+  }
+
+  public int getNumRows() {
+    return numRows;
+  }
+
+  public int getNumCols() {
+    return numCols;
+  }
+
+  /**
+   * Getter for the number of changed cells
+   *
+   * @return number of cells in the set
+   */
+  public int getNumChanged() {
+    return numChanged;
+  }
+
+  /**
+   * Returns a changed cell.
+   *
+   * @param index index among the changed cells, less than getNumChanged
+   * @return the number of the cell, row * number of columns + column
+   */
+  public int getChangedCell(int index) {
+    return cells[index];
+  }
+
+  /**
+   * Returns the latest state of a changed cell.
+   *
+   * @param index index among the changed cells, less than getNumChanged
+   * @return its state
+   */
+  public int getState(int index) {
+    return states[index];
+  }
+
+  /**
+   * Adds a cell to the set, or gives it its new state if it is already in it.
+   *
+   * @param cell  the number of the cell, row * number of columns + column
+   * @param state its current state
+   */
+  public void put(int cell, int state) {
+    if (positions == null) {
+      positions = new int[numRows * numCols];
+    }
+    int position = positions[cell];
+    if (position == 0) {
+      if (numChanged == cells.length) {
+        int capacity = Math.min(2 * cells.length, numRows * numCols);
+        cells = Arrays.copyOf(cells, capacity);
+        states = Arrays.copyOf(states, capacity);
+      }
+      cells[numChanged] = cell;
+      position = ++numChanged;
+      positions[cell] = position;
+    }
+    states[position - 1] = state;
+  }
+
+  /**
+   * Adds every cell of another set of the same grid, with its state.
+   *
+   * @param changes the changes to add
+   */
+  public void putAll(CellChanges changes) {
+    for (int i = 0; i < changes.numChanged; i++) {
+      put(changes.cells[i], changes.states[i]);
+    }
+  }
+
+  /**
+   * Adds every cell of the grid with the given states, e.g. for a generation that was not
+   * computed by the game, like a frame of a recording.
+   *
+   * @param stateGrid the states of all cells
+   */
+  public void putAll(int[][] stateGrid) {
+    for (int row = 0; row < numRows; row++) {
+      for (int col = 0; col < numCols; col++) {
+        put(row * numCols + col, stateGrid[row][col]);
+      }
+    }
+  }
+
+  /**
+   * Replaces the contents of this set with the contents of another set of the same grid.  Unlike
+   * clear and putAll, this copies the arrays as they are.
+   *
+   * @param changes the changes to copy
+   */
+  public void copyFrom(CellChanges changes) {
+    clear();
+    if (cells.length < changes.numChanged) {
+      cells = new int[changes.cells.length];
+      states = new int[changes.states.length];
+    }
+    System.arraycopy(changes.cells, 0, cells, 0, changes.numChanged);
+    System.arraycopy(changes.states, 0, states, 0, changes.numChanged);
+    numChanged = changes.numChanged;
+    if (positions != null) {
+      for (int i = 0; i < numChanged; i++) {
+        positions[cells[i]] = i + 1;
+      }
+    }
+  }
+
+  /**
+   * Empties the set.
+   */
+  public void clear() {
+    if (positions != null) {
+      for (int i = 0; i < numChanged; i++) {
+        positions[cells[i]] = 0;
+      }
+    }
+    numChanged = 0;
+  }
+}
@@ -3,16 +3,33 @@ package cellsociety.model.gametypes;
 
 import cellsociety.model.cells.FallingSandCell;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  * This is a child of the GameType class.  It represents the Falling Sand simulation.  It implements
  * abstract methods and declares helper functions.
+ * <p>
+ * The grid is divided into square chunks.  A chunk in which no cell changed during the last step
+ * goes to sleep: its cells hold their state and are skipped until a change next to the chunk (or a
+ * click inside it) wakes it up again, so a settled sandbox costs almost nothing per step.
+ * <p>
+ * In Margolus mode the grid is instead split into 2x2 blocks whose offset alternates between
+ * generations.  Every block is updated on its own, so one step runs in parallel.
  */
 public class FallingSand extends GameType<FallingSandCell> {
 
   public static final int TOTAL_STATES = 4;
+  private static final int CHUNK_SIZE = 16;
+  private static final int[][] CHUNK_OFFSETS = {{0, 0}, {-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+
+  private int chunkRows;
+  private int chunkCols;
+  private boolean[] awake;
+  private boolean[] nextAwake;
+  private boolean margolusUpdate;
 
   /**
    * Constructor for Falling Sand
@@ -22,6 +39,312 @@ public class FallingSand extends GameType<FallingSandCell> {
   public FallingSand(int[][] parserGrid) {
     super(parserGrid);
     this.setNumGameStateIterations(1);
+    resetAuxiliaryState();
+  }
+
+  /**
+   * Wakes up every chunk.  The cells were reset, so none of them holds its state any more.
+   */
+  @Override
+  protected void resetAuxiliaryState() {
+    chunkRows = (getNumRows() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    chunkCols = (getNumCols() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    if (awake == null || awake.length != chunkRows * chunkCols) {
+      awake = new boolean[chunkRows * chunkCols];
+      nextAwake = new boolean[chunkRows * chunkCols];
+    }
+    Arrays.fill(awake, true);
+    Arrays.fill(nextAwake, false);
+  }
+
+  /**
+   * Turns the Margolus update mode on or off.  In Margolus mode every step splits the grid into 2x2
+   * blocks, shifted by one cell on every other generation so that particles can cross block
+   * borders.  Cells outside the grid act as metal walls.  A block only reads and writes its own
+   * four cells, so all blocks are updated in parallel, each with random bits derived from the
+   * seed, the generation and the block, and the results only depend on the seed.
+   *
+   * @param margolus true for the Margolus update, false for the serial sweep
+   */
+  public void setMargolusUpdate(boolean margolus) {
+    this.margolusUpdate = margolus;
+    for (int chunk = 0; chunk < awake.length; chunk++) {
+      if (!awake[chunk]) {
+        awake[chunk] = true;
+        holdChunk(chunk, false);
+      }
+    }
+  }
+
+  /**
+   * Performs one step over the awake chunks only.  Cells are visited bottom up as in the full
+   * sweep, then switched.  Cells just outside an awake chunk can receive falling sand or flowing
+   * water, so they are switched as well.  Every chunk with a changed cell stays awake, together
+   * with the neighboring chunk when the change is on the border between them; all other chunks
+   * fall asleep.
+   *
+   * @param iteration index of the iteration within the current generation
+   */
+  @Override
+  protected void updateIteration(int iteration) {
+    if (margolusUpdate) {
+      updateMargolus();
+      return;
+    }
+    for (int row = getNumRows() - 1; row >= 0; row--) {
+      for (int chunkCol = 0; chunkCol < chunkCols; chunkCol++) {
+        if (awake[chunkIndex(row / CHUNK_SIZE, chunkCol)]) {
+          int lastCol = Math.min(getNumCols(), (chunkCol + 1) * CHUNK_SIZE);
+          for (int col = chunkCol * CHUNK_SIZE; col < lastCol; col++) {
+            setCellNextState(getCell(row, col));
+          }
+        }
+      }
+    }
+
+    Arrays.fill(nextAwake, false);
+    for (int chunk = 0; chunk < awake.length; chunk++) {
+      if (awake[chunk]) {
+        switchChunk(chunk);
+      }
+    }
+    for (int chunk = 0; chunk < awake.length; chunk++) {
+      if (awake[chunk]) {
+        switchRim(chunk);
+      }
+    }
+
+    for (int chunk = 0; chunk < awake.length; chunk++) {
+      if (awake[chunk] && !nextAwake[chunk]) {
+        holdChunk(chunk, true);
+      } else if (!awake[chunk] && nextAwake[chunk]) {
+        holdChunk(chunk, false);
+      }
+    }
+    boolean[] swap = awake;
+    awake = nextAwake;
+    nextAwake = swap;
+  }
+
+  private void updateMargolus() {
+    int offset = (int) (getGeneration() % 2);
+    int blockRows = (getNumRows() + offset + 1) / 2;
+    int blockCols = (getNumCols() + offset + 1) / 2;
+    IntStream.range(0, blockRows).parallel().forEach(blockRow -> {
+      for (int blockCol = 0; blockCol < blockCols; blockCol++) {
+        updateBlock(2 * blockRow - offset, 2 * blockCol - offset,
+            streamSeed((long) blockRow * blockCols + blockCol));
+      }
+    });
+  }
+
+  /**
+   * Updates one 2x2 block.  Sand and water fall into an empty cell below them and sand sinks
+   * below water.  Then water swaps with an empty cell next to it in the same row of the block,
+   * each row with probability one half.
+   *
+   * @param top  row of the upper cells of the block
+   * @param left column of the left cells of the block
+   * @param bits random bits of the block
+   */
+  private void updateBlock(int top, int left, long bits) {
+    int topLeft = stateAt(top, left);
+    int topRight = stateAt(top, left + 1);
+    int bottomLeft = stateAt(top + 1, left);
+    int bottomRight = stateAt(top + 1, left + 1);
+    int swap;
+
+    if (falls(topLeft, bottomLeft)) {
+      swap = topLeft;
+      topLeft = bottomLeft;
+      bottomLeft = swap;
+    }
+    if (falls(topRight, bottomRight)) {
+      swap = topRight;
+      topRight = bottomRight;
+      bottomRight = swap;
+    }
+    if (flows(bottomLeft, bottomRight) && (bits & 1) != 0) {
+      swap = bottomLeft;
+      bottomLeft = bottomRight;
+      bottomRight = swap;
+    }
+    if (flows(topLeft, topRight) && (bits & 2) != 0) {
+      swap = topLeft;
+      topLeft = topRight;
+      topRight = swap;
+    }
+
+    setStateAt(top, left, topLeft);
+    setStateAt(top, left + 1, topRight);
+    setStateAt(top + 1, left, bottomLeft);
+    setStateAt(top + 1, left + 1, bottomRight);
+  }
+
+  private boolean falls(int upper, int lower) {
+    return (upper == FallingSandCell.SAND || upper == FallingSandCell.WATER)
+        && lower == FallingSandCell.EMPTY
+        || upper == FallingSandCell.SAND && lower == FallingSandCell.WATER;
+  }
+
+  private boolean flows(int first, int second) {
+    return first == FallingSandCell.WATER && second == FallingSandCell.EMPTY
+        || first == FallingSandCell.EMPTY && second == FallingSandCell.WATER;
+  }
+
+  private int stateAt(int row, int col) {
+    if (row < 0 || row >= getNumRows() || col < 0 || col >= getNumCols()) {
+      return FallingSandCell.METAL;
+    }
+    return getCell(row, col).getCurrentState();
+  }
+
+  private void setStateAt(int row, int col, int state) {
+    if (row >= 0 && row < getNumRows() && col >= 0 && col < getNumCols()
+        && getCell(row, col).getCurrentState() != state) {
+      getCell(row, col).manuallySetState(state);
+      markChanged(row, col);
+    }
+  }
+
+  private void switchChunk(int chunk) {
+    int firstRow = (chunk / chunkCols) * CHUNK_SIZE;
+    int firstCol = (chunk % chunkCols) * CHUNK_SIZE;
+    int lastRow = Math.min(getNumRows(), firstRow + CHUNK_SIZE);
+    int lastCol = Math.min(getNumCols(), firstCol + CHUNK_SIZE);
+    for (int row = firstRow; row < lastRow; row++) {
+      for (int col = firstCol; col < lastCol; col++) {
+        switchCell(row, col);
+      }
+    }
+  }
+
+  /**
+   * Switches the cells below, left and right of a chunk, the only cells outside of it that its
+   * sand and water can move into.  A cell of a sleeping chunk that nothing moved into keeps
+   * holding its state, since its chunk may stay asleep.
+   */
+  private void switchRim(int chunk) {
+    int firstRow = (chunk / chunkCols) * CHUNK_SIZE;
+    int firstCol = (chunk % chunkCols) * CHUNK_SIZE;
+    int lastRow = Math.min(getNumRows(), firstRow + CHUNK_SIZE);
+    int lastCol = Math.min(getNumCols(), firstCol + CHUNK_SIZE);
+    if (lastRow < getNumRows()) {
+      for (int col = firstCol; col < lastCol; col++) {
+        switchCell(lastRow, col);
+      }
+    }
+    for (int row = firstRow; row < lastRow; row++) {
+      if (firstCol > 0) {
+        switchCell(row, firstCol - 1);
+      }
+      if (lastCol < getNumCols()) {
+        switchCell(row, lastCol);
+      }
+    }
+  }
+
+  private void switchCell(int row, int col) {
+    FallingSandCell cell = getCell(row, col);
+    if (cell.nextStateChanges()) {
+      wakeChunks(nextAwake, row, col);
+    } else if (!awake[chunkIndex(row / CHUNK_SIZE, col / CHUNK_SIZE)]) {
+      return;
+    }
+    if (cell.switchState()) {
+      markChanged(row, col);
+    }
+  }
+
+  /**
+   * Marks the chunk of a cell as awake, and the neighboring chunk on every chunk border the cell
+   * lies on, since the cells across that border react to it.
+   */
+  private void wakeChunks(boolean[] chunks, int row, int col) {
+    int chunkRow = row / CHUNK_SIZE;
+    int chunkCol = col / CHUNK_SIZE;
+    chunks[chunkIndex(chunkRow, chunkCol)] = true;
+    if (row % CHUNK_SIZE == 0 && chunkRow > 0) {
+      chunks[chunkIndex(chunkRow - 1, chunkCol)] = true;
+    }
+    if (row % CHUNK_SIZE == CHUNK_SIZE - 1 && chunkRow < chunkRows - 1) {
+      chunks[chunkIndex(chunkRow + 1, chunkCol)] = true;
+    }
+    if (col % CHUNK_SIZE == 0 && chunkCol > 0) {
+      chunks[chunkIndex(chunkRow, chunkCol - 1)] = true;
+    }
+    if (col % CHUNK_SIZE == CHUNK_SIZE - 1 && chunkCol < chunkCols - 1) {
+      chunks[chunkIndex(chunkRow, chunkCol + 1)] = true;
+    }
+  }
+
+  /**
+   * Puts a chunk to sleep, making all of its cells hold their state, or wakes it up again.
+   */
+  private void holdChunk(int chunk, boolean hold) {
+    int firstRow = (chunk / chunkCols) * CHUNK_SIZE;
+    int firstCol = (chunk % chunkCols) * CHUNK_SIZE;
+    int lastRow = Math.min(getNumRows(), firstRow + CHUNK_SIZE);
+    int lastCol = Math.min(getNumCols(), firstCol + CHUNK_SIZE);
+    for (int row = firstRow; row < lastRow; row++) {
+      for (int col = firstCol; col < lastCol; col++) {
+        if (hold) {
+          getCell(row, col).holdState();
+        } else {
+          getCell(row, col).releaseState();
+        }
+      }
+    }
+  }
+
+  private int chunkIndex(int chunkRow, int chunkCol) {
+    return chunkRow * chunkCols + chunkCol;
+  }
+
+  /**
+   * Writes which chunks are awake (1) or asleep (0), since sleeping chunks hold their cells.
+   */
+  @Override
+  public void copyExtraPlanes(Map<String, int[]> planes) {
+    int[] awakeChunks = reusePlane(planes, "awakeChunks", awake.length);
+    for (int chunk = 0; chunk < awake.length; chunk++) {
+      awakeChunks[chunk] = awake[chunk] ? 1 : 0;
+    }
+  }
+
+  @Override
+  public void setExtraPlanes(Map<String, int[]> planes) {
+    int[] awakeChunks = getPlane(planes, "awakeChunks", awake.length);
+    if (awakeChunks == null || margolusUpdate) {
+      return;
+    }
+    for (int chunk = 0; chunk < awake.length; chunk++) {
+      boolean chunkAwake = awakeChunks[chunk] != 0;
+      if (awake[chunk] != chunkAwake) {
+        awake[chunk] = chunkAwake;
+        holdChunk(chunk, !chunkAwake);
+      }
+    }
+  }
+
+  /**
+   * Changes the state of a cell, e.g. when the user clicks it, and wakes up the chunk it is in, as
+   * well as the chunks around it.
+   */
+  @Override
+  public void setCellState(int row, int col, int state) {
+    super.setCellState(row, col, state);
+    int chunkRow = row / CHUNK_SIZE;
+    int chunkCol = col / CHUNK_SIZE;
+    for (int[] offset : CHUNK_OFFSETS) {
+      int neighborRow = chunkRow + offset[0];
+      int neighborCol = chunkCol + offset[1];
+      if (neighborRow >= 0 && neighborRow < chunkRows && neighborCol >= 0
+          && neighborCol < chunkCols && !awake[chunkIndex(neighborRow, neighborCol)]) {
+        awake[chunkIndex(neighborRow, neighborCol)] = true;
+        holdChunk(chunkIndex(neighborRow, neighborCol), false);
+      }
+    }
   }
 
   /**
@@ -46,8 +369,8 @@ public class FallingSand extends GameType<FallingSandCell> {
   private void moveSand(FallingSandCell currCell) {
     int currRow = currCell.getRowPos();
     int currCol = currCell.getColPos();
-    if (currRow < getGrid().length - 1) {
-      FallingSandCell belowCell = getGrid()[currRow + 1][currCol];
+    if (currRow < getNumRows() - 1) {
+      FallingSandCell belowCell = getCell(currRow + 1, currCol);
       if (belowCell.nextStateEmpty()) {
         belowCell.setNextStateSand();
         currCell.setNextStateEmpty();
@@ -74,21 +397,20 @@ public class FallingSand extends GameType<FallingSandCell> {
   }
 
   private List<FallingSandCell> getWaterNeighbors(FallingSandCell currCell) {
-    FallingSandCell[][] grid = getGrid();
     List<FallingSandCell> neighbors = new ArrayList<>();
     int row = currCell.getRowPos();
     int col = currCell.getColPos();
 
-    if (row < grid.length - 1 && grid[row + 1][col].canBeWater()) {
-      neighbors.add(grid[row + 1][col]);
+    if (row < getNumRows() - 1 && getCell(row + 1, col).canBeWater()) {
+      neighbors.add(getCell(row + 1, col));
     }
 
-    if (col > 0 && grid[row][col - 1].canBeWater()) {
-      neighbors.add(grid[row][col - 1]);
+    if (col > 0 && getCell(row, col - 1).canBeWater()) {
+      neighbors.add(getCell(row, col - 1));
     }
 
-    if (col < grid[0].length - 1 && grid[row][col + 1].canBeWater()) {
-      neighbors.add(grid[row][col + 1]);
+    if (col < getNumCols() - 1 && getCell(row, col + 1).canBeWater()) {
+      neighbors.add(getCell(row, col + 1));
     }
     return neighbors;
   }
@@ -18,10 +18,16 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
   private int maxPheromoneLevel;
   private int nestRow;
   private int nestCol;
+  private double diffusionRate;
+  private PheromoneField pheromones;
+  private final int[] candidates = new int[8];
+  private final int[] nestCandidates = new int[8];
   public static final int TOTAL_STATES = 5;
+  private static final int[][] NEIGHBOR_OFFSETS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}, {-1, -1},
+      {-1, 1}, {1, -1}, {1, 1}};
 
   private final List<String> params = new ArrayList<>(Arrays.asList("antsInNest",
-      "maxPheromoneLevel"));
+      "maxPheromoneLevel", "diffusionRate"));
 
   /**
    * Constructor for Foraging Ants
@@ -29,12 +35,40 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
    * @param parserGrid 2D array of cell starting states as integers
    */
   public ForagingAnts(int[][] parserGrid, int antsInNest, int maxPheromoneLevel) {
+    this(parserGrid, antsInNest, maxPheromoneLevel, 0);
+  }
+
+  /**
+   * Constructor for Foraging Ants with pheromone diffusion
+   *
+   * @param parserGrid    2D array of cell starting states as integers
+   * @param diffusionRate fraction by which pheromones spread to neighbors each step, 0 to disable
+   */
+  public ForagingAnts(int[][] parserGrid, int antsInNest, int maxPheromoneLevel,
+      double diffusionRate) {
     super(parserGrid);
-    findNest();
     this.setNumGameStateIterations(1);
     this.antsInNest = antsInNest;
-    currAntsInNest = antsInNest;
     this.maxPheromoneLevel = maxPheromoneLevel;
+    this.diffusionRate = diffusionRate;
+    resetAuxiliaryState();
+  }
+
+  /**
+   * Lets the pheromones evaporate (and diffuse, if enabled) in one bulk pass over the pheromone
+   * field before the cells are updated.  The nest keeps its home pheromones, and food sources are
+   * refilled when their cells are updated.
+   *
+   * @param iteration index of the iteration within the current generation
+   */
+  @Override
+  protected void updateIteration(int iteration) {
+    int nestIndex = pheromones.index(nestRow, nestCol);
+    int nestLevel = pheromones.getHome(nestIndex);
+    pheromones.evaporate();
+    pheromones.diffuse(diffusionRate, edgeType == EdgeType.WRAPPED);
+    pheromones.setHome(nestIndex, nestLevel);
+    super.updateIteration(iteration);
   }
 
   /**
@@ -44,16 +78,15 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
    */
   public void setCellNextState(ForagingAntsCell currCell) {
     if (currCell.getCurrentState() == ForagingAntsCell.NEST) {
-      currCell.setNextStateNest(currCell.getHomePheromoneLevel());
+      currCell.setNextStateNest();
       currAntsInNest = moveAntsInNest();
     } else if (currCell.getCurrentState() == ForagingAntsCell.FOOD && currCell.nextStateNull()) {
       currCell.setNextStateFood();
-      currCell.setPheromoneLevels(maxPheromoneLevel, currCell.getHomePheromoneLevel());
-    } else if (currCell.getCurrentState() == ForagingAntsCell.EMPTY && currCell.nextStateNull()) {
-      currCell.setNextStateEmpty();
-    } else if (currCell.getCurrentState() == ForagingAntsCell.PHEROMONE
+      pheromones.setFood(fieldIndex(currCell), maxPheromoneLevel);
+    } else if ((currCell.getCurrentState() == ForagingAntsCell.EMPTY
+        || currCell.getCurrentState() == ForagingAntsCell.PHEROMONE)
         && currCell.nextStateNull()) {
-      decreasePheromones(currCell);
+      updatePheromoneState(currCell);
     } else if (currCell.getCurrentState() == ForagingAntsCell.ANT) {
       if (currCell.hasFood()) {
         returnToNest(currCell);
@@ -63,63 +96,73 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
     }
   }
 
-  private void decreasePheromones(ForagingAntsCell currCell) {
-    int homeLevel;
-    int foodLevel;
-    if (currCell.getHomePheromoneLevel() > 0) {
-      homeLevel = currCell.getHomePheromoneLevel() - 1;
-    } else {
-      homeLevel = 0;
-    }
-    if (currCell.getFoodPheromoneLevel() > 0) {
-      foodLevel = currCell.getFoodPheromoneLevel() - 1;
-    } else {
-      foodLevel = 0;
-    }
-
-    if (homeLevel > 0 || foodLevel > 0) {
-      currCell.setPheromoneLevels(foodLevel, homeLevel);
+  /**
+   * Shows a cell without ants as a pheromone cell while any pheromones are left on it, and as an
+   * empty cell otherwise.  The levels themselves have already evaporated in the bulk pass.
+   *
+   * @param currCell an empty or pheromone cell
+   */
+  private void updatePheromoneState(ForagingAntsCell currCell) {
+    if (pheromones.hasPheromones(fieldIndex(currCell))) {
       currCell.setNextStatePheromone();
     } else {
       currCell.setNextStateEmpty();
     }
   }
 
+  private int fieldIndex(ForagingAntsCell cell) {
+    return pheromones.index(cell.getRowPos(), cell.getColPos());
+  }
+
+  private int getFoodLevel(ForagingAntsCell cell) {
+    return pheromones.getFood(fieldIndex(cell));
+  }
+
+  private int getHomeLevel(ForagingAntsCell cell) {
+    return pheromones.getHome(fieldIndex(cell));
+  }
+
+  /**
+   * Sends ants out of the nest, one to each free neighbor, strongest food pheromones first.  The
+   * nest neighborhood is collected once and every departing ant removes its cell from it.
+   *
+   * @return number of ants left in the nest
+   */
   private int moveAntsInNest() {
-    Map<Integer, List<ForagingAntsCell>> availableCells = findNeighborPheromones(
-        getGrid()[nestRow][nestCol], true);
+    int count = collectNeighbors(nestRow, nestCol, nestCandidates);
     int newAntsInNest = currAntsInNest;
-    for (int currAnt = 0; currAnt < currAntsInNest; currAnt++) {
-      if (!availableCells.isEmpty()) {
-        dropHomePheromones(getGrid()[nestRow][nestCol]);
-        int maxLevel = getMaxInMap(availableCells);
-        ForagingAntsCell movingCell = getCellWithMaxPheromones(availableCells);
-        availableCells.get(maxLevel).remove(movingCell);
-        if (availableCells.get(maxLevel).isEmpty()) {
-          availableCells.remove(maxLevel);
-        }
-        int[] orientation = {movingCell.getRowPos() - nestRow, movingCell.getColPos() - nestCol};
-        movingCell.setNextStateAnt(false, false, orientation);
-        newAntsInNest--;
-      }
+    if (count > 0 && currAntsInNest > 0) {
+      dropHomePheromones(getCell(nestRow, nestCol));
+    }
+    for (int currAnt = 0; currAnt < currAntsInNest && count > 0; currAnt++) {
+      int choice = selectMax(nestCandidates, count, true, false);
+      ForagingAntsCell movingCell = cellAt(nestCandidates[choice]);
+      count--;
+      nestCandidates[choice] = nestCandidates[count];
+      movingCell.setNextStateAnt(false, false, movingCell.getRowPos() - nestRow,
+          movingCell.getColPos() - nestCol);
+      newAntsInNest--;
     }
     return newAntsInNest;
   }
 
   private void findFood(ForagingAntsCell currCell) {
-    Map<Integer, List<ForagingAntsCell>> neighbors = findNeighborPheromones(currCell, true);
-    if (!neighbors.isEmpty()) {
+    int count = collectNeighbors(currCell.getRowPos(), currCell.getColPos(), candidates);
+    if (count > 0) {
       dropHomePheromones(currCell);
       ForagingAntsCell movingCell = moveTowardsFood(currCell);
       if (movingCell.getCurrentState() == ForagingAntsCell.FOOD) {
-        movingCell.setNextStateAnt(true, true, currCell.getOrientation());
+        movingCell.setNextStateAnt(true, true, currCell.getRowOrientation(),
+            currCell.getColOrientation());
       } else if (atNest(movingCell.getRowPos(), movingCell.getColPos())) {
         currAntsInNest++;
       } else {
-        movingCell.setNextStateAnt(false, false, currCell.getOrientation());
+        movingCell.setNextStateAnt(false, false, currCell.getRowOrientation(),
+            currCell.getColOrientation());
       }
     } else {
-      currCell.setNextStateAnt(false, false, currCell.getOrientation());
+      currCell.setNextStateAnt(false, false, currCell.getRowOrientation(),
+          currCell.getColOrientation());
     }
   }
 
@@ -129,8 +172,7 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
     if (currCell.atFoodSource()) {
       level = maxPheromoneLevel;
     } else {
-      Map<Integer, List<ForagingAntsCell>> neighbors = findNeighborPheromones(currCell, true);
-      level = getMaxInMap(neighbors) - 2;
+      level = getMaxNeighborLevel(currCell, true) - 2;
     }
 
     dropPheromones(currCell, level, true);
@@ -141,10 +183,10 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
 
     if (atNest(currCell.getRowPos(), currCell.getColPos())) {
       level = maxPheromoneLevel;
-      currCell.setNextStateNest(level);
+      pheromones.setHome(fieldIndex(currCell), level);
+      currCell.setNextStateNest();
     } else {
-      Map<Integer, List<ForagingAntsCell>> neighbors = findNeighborPheromones(currCell, false);
-      level = getMaxInMap(neighbors) - 2;
+      level = getMaxNeighborLevel(currCell, false) - 2;
 
       dropPheromones(currCell, level, false);
     }
@@ -153,16 +195,14 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
   private void dropPheromones(ForagingAntsCell currCell, int level, boolean foodPheromones) {
     if (level > 0) {
       if (foodPheromones) {
-        currCell.setPheromoneLevels(level, currCell.getHomePheromoneLevel());
+        pheromones.setFood(fieldIndex(currCell), level);
       } else {
-        currCell.setPheromoneLevels(currCell.getFoodPheromoneLevel(), level);
+        pheromones.setHome(fieldIndex(currCell), level);
       }
       if (currCell.nextStateNotAnt()) {
         currCell.setNextStatePheromone();
       }
-    } else if (currCell.getFoodPheromoneLevel() > 0 || currCell.getHomePheromoneLevel() > 0) {
-      currCell.setPheromoneLevels(currCell.getFoodPheromoneLevel(),
-          currCell.getHomePheromoneLevel());
+    } else if (pheromones.hasPheromones(fieldIndex(currCell))) {
       if (currCell.nextStateNotAnt()) {
         currCell.setNextStatePheromone();
       }
@@ -176,135 +216,173 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
       changeOrientation(currCell, true);
     }
 
-    Map<Integer, List<ForagingAntsCell>> neighbors = findNeighborPheromones(currCell, false);
-    ForagingAntsCell maxCell = getCellWithMaxPheromones(neighbors);
-    if (maxCell != null && maxCell.getHomePheromoneLevel() > 0) {
+    if (getMaxNeighborLevel(currCell, false) > 0) {
       dropFoodPheromones(currCell);
       ForagingAntsCell movingCell = moveTowardsNest(currCell);
       if (atNest(movingCell.getRowPos(), movingCell.getColPos())) {
         currAntsInNest++;
       } else {
-        movingCell.setNextStateAnt(true, false, currCell.getOrientation());
+        movingCell.setNextStateAnt(true, false, currCell.getRowOrientation(),
+            currCell.getColOrientation());
       }
     } else {
-      currCell.setNextStateAnt(true, currCell.atFoodSource(), currCell.getOrientation());
+      currCell.setNextStateAnt(true, currCell.atFoodSource(), currCell.getRowOrientation(),
+          currCell.getColOrientation());
     }
   }
 
   private ForagingAntsCell moveTowardsNest(ForagingAntsCell currCell) {
-    int currRow = currCell.getRowPos();
-    int currCol = currCell.getColPos();
-    int rowOffset = currCell.getOrientation()[0];
-    int colOffset = currCell.getOrientation()[1];
-
-    ForagingAntsCell movingCell;
-    Map<Integer, List<ForagingAntsCell>> forwardCells = checkForwardCells(currRow, currCol,
-        rowOffset, colOffset, false);
-    forwardCells.remove(0);
-    movingCell = getCellWithMaxPheromones(forwardCells);
-    if (movingCell == null) {
-
-      Map<Integer, List<ForagingAntsCell>> neighborCells = findNeighborPheromones(currCell,
-          false);
-      neighborCells.remove(0);
-      movingCell = getCellWithMaxPheromones(neighborCells);
-    }
-
-    if (movingCell != null) {
-      rowOffset = movingCell.getRowPos() - currRow;
-      colOffset = movingCell.getColPos() - currCol;
-      currCell.setOrientation(rowOffset, colOffset);
-    }
-
-    return movingCell;
+    return moveTowards(currCell, false);
   }
 
   public ForagingAntsCell moveTowardsFood(ForagingAntsCell currCell) {
+    return moveTowards(currCell, true);
+  }
+
+  /**
+   * Picks the cell an ant moves to: the forward cell with the most pheromones of the given kind,
+   * or any neighbor if no forward cell is free.  Ants heading home ignore cells without home
+   * pheromones.  The ant is turned towards the chosen cell.
+   *
+   * @param currCell       cell of the ant
+   * @param foodPheromones true to follow food pheromones, false to follow home pheromones
+   * @return the chosen cell, or null if there is none
+   */
+  private ForagingAntsCell moveTowards(ForagingAntsCell currCell, boolean foodPheromones) {
     int currRow = currCell.getRowPos();
     int currCol = currCell.getColPos();
-    int rowOffset = currCell.getOrientation()[0];
-    int colOffset = currCell.getOrientation()[1];
+    boolean skipEmpty = !foodPheromones;
 
-    Map<Integer, List<ForagingAntsCell>> forwardCells = checkForwardCells(currRow, currCol,
-        rowOffset, colOffset, true);
-
-    ForagingAntsCell movingCell = getCellWithMaxPheromones(forwardCells);
-    if (movingCell == null) {
-      Map<Integer, List<ForagingAntsCell>> neighborCells = findNeighborPheromones(currCell,
-          true);
-      movingCell = getCellWithMaxPheromones(neighborCells);
+    int count = collectForwardCells(currRow, currCol, currCell.getRowOrientation(),
+        currCell.getColOrientation(), candidates);
+    int choice = selectMax(candidates, count, foodPheromones, skipEmpty);
+    if (choice < 0) {
+      count = collectNeighbors(currRow, currCol, candidates);
+      choice = selectMax(candidates, count, foodPheromones, skipEmpty);
     }
-
-    if (movingCell != null) {
-      rowOffset = movingCell.getRowPos() - currRow;
-      colOffset = movingCell.getColPos() - currCol;
-      currCell.setOrientation(rowOffset, colOffset);
+    if (choice < 0) {
+      return null;
     }
 
+    ForagingAntsCell movingCell = cellAt(candidates[choice]);
+    currCell.setOrientation(movingCell.getRowPos() - currRow, movingCell.getColPos() - currCol);
     return movingCell;
   }
 
-  private Map<Integer, List<ForagingAntsCell>> checkForwardCells(int currRow, int currCol,
-      int rowOffset,
-      int colOffset, boolean foodPheromones) {
-    Map<Integer, List<ForagingAntsCell>> forwardCells = new HashMap<>();
-    if (rowOffset == 0 && (currCol + colOffset) < getGrid()[0].length
-        && (currCol + colOffset) >= 0) {
-      sameRowOrientation(currRow, currCol, colOffset, forwardCells, foodPheromones);
+  /**
+   * Collects the free cells in front of an ant: the cell it faces and the two cells beside it.
+   *
+   * @param buffer array the field indices of the cells are written to
+   * @return number of cells written to the buffer
+   */
+  private int collectForwardCells(int currRow, int currCol, int rowOffset, int colOffset,
+      int[] buffer) {
+    int count = 0;
+    int targetRow = currRow + rowOffset;
+    int targetCol = currCol + colOffset;
+    if (rowOffset == 0 && inBounds(currRow, targetCol)) {
+      count = addIfFree(currRow, targetCol, buffer, count);
+      count = addIfFree(currRow - 1, targetCol, buffer, count);
+      count = addIfFree(currRow + 1, targetCol, buffer, count);
+    } else if (colOffset == 0 && inBounds(targetRow, currCol)) {
+      count = addIfFree(targetRow, currCol, buffer, count);
+      count = addIfFree(targetRow, currCol - 1, buffer, count);
+      count = addIfFree(targetRow, currCol + 1, buffer, count);
+    } else if (inBounds(targetRow, targetCol)) {
+      count = addIfFree(targetRow, targetCol, buffer, count);
+      count = addIfFree(currRow, targetCol, buffer, count);
+      count = addIfFree(targetRow, currCol, buffer, count);
+    }
+    return count;
+  }
 
-    } else if (colOffset == 0 && (currRow + rowOffset) >= 0
-        && (currRow + rowOffset) < getGrid().length) {
-      sameColOrientation(currRow, currCol, rowOffset, forwardCells, foodPheromones);
-    } else {
-      diagonalOrientation(currRow, currCol, rowOffset, colOffset, forwardCells, foodPheromones);
+  /**
+   * Collects the free cells among the eight neighbors of a position.
+   *
+   * @param buffer array the field indices of the cells are written to
+   * @return number of cells written to the buffer
+   */
+  private int collectNeighbors(int row, int col, int[] buffer) {
+    int count = 0;
+    for (int[] offset : NEIGHBOR_OFFSETS) {
+      count = addIfFree(row + offset[0], col + offset[1], buffer, count);
     }
-    return forwardCells;
+    return count;
   }
 
-  private void sameRowOrientation(int currRow, int currCol, int colOffset,
-      Map<Integer, List<ForagingAntsCell>> forwardCells, boolean foodPheromones) {
-    checkPheromoneLevel(getGrid()[currRow][currCol + colOffset], forwardCells, foodPheromones);
-
-    if (currRow - 1 >= 0) {
-      checkPheromoneLevel(getGrid()[currRow - 1][currCol + colOffset], forwardCells,
-          foodPheromones);
+  private int addIfFree(int row, int col, int[] buffer, int count) {
+    if (inBounds(row, col) && getCell(row, col).nextStateNotAnt()) {
+      buffer[count] = pheromones.index(row, col);
+      return count + 1;
     }
+    return count;
+  }
 
-    if (currRow + 1 < getGrid().length) {
-      checkPheromoneLevel(getGrid()[currRow + 1][currCol + colOffset], forwardCells,
-          foodPheromones);
+  /**
+   * Finds the position in the buffer with the highest pheromone level in a single pass.  Ties are
+   * broken uniformly at random with reservoir sampling, so no list of tied cells is built.
+   *
+   * @param buffer         field indices of the candidate cells
+   * @param count          number of candidates in the buffer
+   * @param foodPheromones true to compare food pheromones, false for home pheromones
+   * @param skipEmpty      true to ignore candidates without pheromones of that kind
+   * @return position in the buffer of the chosen candidate, or -1 if there is none
+   */
+  private int selectMax(int[] buffer, int count, boolean foodPheromones, boolean skipEmpty) {
+    int best = -1;
+    int bestLevel = Integer.MIN_VALUE;
+    int ties = 0;
+    for (int i = 0; i < count; i++) {
+      int level = getLevel(buffer[i], foodPheromones);
+      if (skipEmpty && level == 0) {
+        continue;
+      }
+      if (level > bestLevel) {
+        best = i;
+        bestLevel = level;
+        ties = 1;
+      } else if (level == bestLevel) {
+        ties++;
+        if (random.nextInt(ties) == 0) {
+          best = i;
+        }
+      }
     }
+    return best;
   }
 
-  private void sameColOrientation(int currRow, int currCol, int rowOffset,
-      Map<Integer, List<ForagingAntsCell>> forwardCells, boolean foodPheromones) {
-    checkPheromoneLevel(getGrid()[currRow + rowOffset][currCol], forwardCells, foodPheromones);
-
-    if (currCol - 1 >= 0) {
-      checkPheromoneLevel(getGrid()[currRow + rowOffset][currCol - 1], forwardCells,
-          foodPheromones);
+  /**
+   * Returns the highest pheromone level among the free neighbors of a cell.
+   *
+   * @param currCell       the cell whose neighbors are checked
+   * @param foodPheromones true for food pheromones, false for home pheromones
+   * @return the highest level, or 0 if no neighbor is free
+   */
+  private int getMaxNeighborLevel(ForagingAntsCell currCell, boolean foodPheromones) {
+    int count = collectNeighbors(currCell.getRowPos(), currCell.getColPos(), candidates);
+    if (count == 0) {
+      return 0;
     }
-
-    if (currCol + 1 < getGrid()[0].length) {
-      checkPheromoneLevel(getGrid()[currRow + rowOffset][currCol + 1], forwardCells,
-          foodPheromones);
+    int max = Integer.MIN_VALUE;
+    for (int i = 0; i < count; i++) {
+      max = Math.max(max, getLevel(candidates[i], foodPheromones));
     }
+    return max;
   }
 
-  private void diagonalOrientation(int currRow, int currCol, int rowOffset, int colOffset,
-      Map<Integer, List<ForagingAntsCell>> forwardCells, boolean foodPheromones) {
-    if ((currRow + rowOffset) >= 0 && (currRow + rowOffset) < getGrid().length
-        && (currCol + colOffset) >= 0 && (currCol + colOffset) < getGrid()[0].length) {
-
-      checkPheromoneLevel(getGrid()[currRow + rowOffset][currCol + colOffset], forwardCells,
-          foodPheromones);
+  private int getLevel(int index, boolean foodPheromones) {
+    if (foodPheromones) {
+      return pheromones.getFood(index);
+    }
+    return pheromones.getHome(index);
+  }
 
-      checkPheromoneLevel(getGrid()[currRow][currCol + colOffset], forwardCells,
-          foodPheromones);
+  private ForagingAntsCell cellAt(int index) {
+    return getCell(index / getNumCols(), index % getNumCols());
+  }
 
-      checkPheromoneLevel(getGrid()[currRow + rowOffset][currCol], forwardCells,
-          foodPheromones);
-    }
+  private boolean inBounds(int row, int col) {
+    return row >= 0 && row < getNumRows() && col >= 0 && col < getNumCols();
   }
 
   private void findNest() {
@@ -323,123 +401,16 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
   }
 
   private void changeOrientation(ForagingAntsCell currCell, boolean foodPheromones) {
-    ForagingAntsCell maxNeighbor;
-    Map<Integer, List<ForagingAntsCell>> neighbors = findNeighborPheromones(currCell,
-        foodPheromones);
-    maxNeighbor = getCellWithMaxPheromones(neighbors);
-    if (maxNeighbor != null) {
+    int count = collectNeighbors(currCell.getRowPos(), currCell.getColPos(), candidates);
+    int choice = selectMax(candidates, count, foodPheromones, false);
+    if (choice >= 0) {
+      ForagingAntsCell maxNeighbor = cellAt(candidates[choice]);
       int rowDir = maxNeighbor.getRowPos() - currCell.getRowPos();
       int colDir = maxNeighbor.getColPos() - currCell.getColPos();
       currCell.setOrientation(rowDir, colDir);
     }
   }
 
-  private ForagingAntsCell getCellWithMaxPheromones(
-      Map<Integer, List<ForagingAntsCell>> cells) {
-    if (!cells.isEmpty()) {
-      int maxPheromones = getMaxInMap(cells);
-      List<ForagingAntsCell> maxCells = cells.get(maxPheromones);
-      int randInt = random.nextInt(maxCells.size());
-      return maxCells.get(randInt);
-    }
-    return null;
-  }
-
-  private int getMaxInMap(Map<Integer, List<ForagingAntsCell>> cells) {
-    return cells.keySet().stream().mapToInt(Integer::intValue)
-        .max().orElse(Integer.MIN_VALUE);
-  }
-
-  private Map<Integer, List<ForagingAntsCell>> findNeighborPheromones(
-      ForagingAntsCell currCell,
-      boolean foodPheromones) {
-
-    Map<Integer, List<ForagingAntsCell>> neighborCells = findPerpendicularPheromones(
-        currCell, foodPheromones);
-    Map<Integer, List<ForagingAntsCell>> diagonalCells = findDiagonalPheromones(currCell,
-        foodPheromones);
-
-    for (int level : diagonalCells.keySet()) {
-      if (neighborCells.containsKey(level)) {
-        for (ForagingAntsCell cell : diagonalCells.get(level)) {
-          neighborCells.get(level).add(cell);
-        }
-      } else {
-        neighborCells.put(level, diagonalCells.get(level));
-      }
-    }
-
-    return neighborCells;
-  }
-
-  private void checkPheromoneLevel(ForagingAntsCell currCell,
-      Map<Integer, List<ForagingAntsCell>> map, boolean foodPheromones) {
-    int currPheromoneLevel;
-
-    if (foodPheromones) {
-      currPheromoneLevel = currCell.getFoodPheromoneLevel();
-    } else {
-      currPheromoneLevel = currCell.getHomePheromoneLevel();
-    }
-
-    if (currCell.nextStateNotAnt()) {
-      map.putIfAbsent(currPheromoneLevel, new ArrayList<>());
-      map.get(currPheromoneLevel).add(currCell);
-    }
-  }
-
-  private Map<Integer, List<ForagingAntsCell>> findPerpendicularPheromones(
-      ForagingAntsCell currCell,
-      boolean foodPheromones) {
-    int row = currCell.getRowPos();
-    int col = currCell.getColPos();
-    Map<Integer, List<ForagingAntsCell>> perpendicularCells = new HashMap<>();
-
-    if (row > 0) {
-      checkPheromoneLevel(getGrid()[row - 1][col], perpendicularCells, foodPheromones);
-
-    }
-
-    if (row < getGrid().length - 1) {
-      checkPheromoneLevel(getGrid()[row + 1][col], perpendicularCells, foodPheromones);
-    }
-
-    if (col > 0) {
-      checkPheromoneLevel(getGrid()[row][col - 1], perpendicularCells, foodPheromones);
-    }
-
-    if (col < getGrid()[0].length - 1) {
-      checkPheromoneLevel(getGrid()[row][col + 1], perpendicularCells, foodPheromones);
-    }
-
-    return perpendicularCells;
-  }
-
-  private Map<Integer, List<ForagingAntsCell>> findDiagonalPheromones(ForagingAntsCell currCell,
-      boolean foodPheromones) {
-    int row = currCell.getRowPos();
-    int col = currCell.getColPos();
-    Map<Integer, List<ForagingAntsCell>> diagonalCells = new HashMap<>();
-
-    if (row > 0 && col > 0) {
-      checkPheromoneLevel(getGrid()[row - 1][col - 1], diagonalCells, foodPheromones);
-    }
-
-    if (row > 0 && col < getGrid()[0].length - 1) {
-      checkPheromoneLevel(getGrid()[row - 1][col + 1], diagonalCells, foodPheromones);
-    }
-
-    if (row < getGrid().length - 1 && col > 0) {
-      checkPheromoneLevel(getGrid()[row + 1][col - 1], diagonalCells, foodPheromones);
-    }
-
-    if (row < getGrid().length - 1 && col < getGrid()[0].length - 1) {
-      checkPheromoneLevel(getGrid()[row + 1][col + 1], diagonalCells, foodPheromones);
-    }
-
-    return diagonalCells;
-  }
-
   /**
    * Creates a grid of ForagingAntsCell objects based on the provided parserGrid. (Empty)
    *
@@ -447,10 +418,23 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
    * @param columns the columns in the grid
    */
   protected ForagingAntsCell[][] createCellGridStructure(int rows, int columns) {
-    currAntsInNest = antsInNest;
     return new ForagingAntsCell[rows][columns];
   }
 
+  /**
+   * Puts all ants back in the nest, clears the pheromones and finds the nest again.
+   */
+  @Override
+  protected void resetAuxiliaryState() {
+    currAntsInNest = antsInNest;
+    if (pheromones == null || !pheromones.hasSize(getNumRows(), getNumCols())) {
+      pheromones = new PheromoneField(getNumRows(), getNumCols());
+    } else {
+      pheromones.clear();
+    }
+    findNest();
+  }
+
   /**
    * Creates a new ForagingAntsCell in the specified row, col position in the grid with the
    * specified state.
@@ -470,6 +454,8 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
         this.antsInNest = (int) e.getValue().doubleValue();
       } else if (e.getKey().equals("maxPheromoneLevel")) {
         this.maxPheromoneLevel = (int) e.getValue().doubleValue();
+      } else if (e.getKey().equals("diffusionRate")) {
+        this.diffusionRate = e.getValue();
       }
     }
   }
@@ -478,6 +464,61 @@ public class ForagingAnts extends GameType<ForagingAntsCell> {
     return params;
   }
 
+  @Override
+  public Map<String, Double> getParamValues() {
+    Map<String, Double> values = new HashMap<>();
+    values.put("antsInNest", (double) antsInNest);
+    values.put("maxPheromoneLevel", (double) maxPheromoneLevel);
+    values.put("diffusionRate", diffusionRate);
+    return values;
+  }
+
+  /**
+   * Writes the pheromone levels, the ants of every cell packed into one int (bit 0: has food, bit
+   * 1: at food source, bits 2 and up: orientation) and the number of ants left in the nest.
+   */
+  @Override
+  public void copyExtraPlanes(Map<String, int[]> planes) {
+    int cols = getNumCols();
+    int numCells = getNumRows() * cols;
+    int[] ants = reusePlane(planes, "ants", numCells);
+    for (int row = 0; row < getNumRows(); row++) {
+      for (int col = 0; col < cols; col++) {
+        ForagingAntsCell cell = getCell(row, col);
+        int orientation = (cell.getRowOrientation() + 1) * 3 + cell.getColOrientation() + 1;
+        ants[row * cols + col] = (cell.hasFood() ? 1 : 0) | (cell.atFoodSource() ? 2 : 0)
+            | (orientation << 2);
+      }
+    }
+    pheromones.copyFood(reusePlane(planes, "foodPheromones", numCells));
+    pheromones.copyHome(reusePlane(planes, "homePheromones", numCells));
+    reusePlane(planes, "antsInNest", 1)[0] = currAntsInNest;
+  }
+
+  @Override
+  public void setExtraPlanes(Map<String, int[]> planes) {
+    int cols = getNumCols();
+    int numCells = getNumRows() * cols;
+    int[] food = getPlane(planes, "foodPheromones", numCells);
+    int[] home = getPlane(planes, "homePheromones", numCells);
+    int[] ants = getPlane(planes, "ants", numCells);
+    int[] nest = getPlane(planes, "antsInNest", 1);
+    if (food != null && home != null) {
+      pheromones.setLevels(food, home);
+    }
+    if (ants != null) {
+      for (int index = 0; index < numCells; index++) {
+        ForagingAntsCell cell = cellAt(index);
+        int orientation = ants[index] >> 2;
+        cell.setFoodStatus((ants[index] & 1) != 0, (ants[index] & 2) != 0);
+        cell.setOrientation(orientation / 3 - 1, orientation % 3 - 1);
+      }
+    }
+    if (nest != null) {
+      currAntsInNest = nest[0];
+    }
+  }
+
   public int getTotalStates() {
     return TOTAL_STATES;
   }
@@ -0,0 +1,426 @@
+package cellsociety.model.gametypes;
+
+import cellsociety.model.cells.ForagingAntsCell;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * This is a child of the GameType class.  It is an agent based version of the Foraging Ants
+ * simulation that scales to very large colonies.  Ants are not cell states here: every ant is an
+ * entry in a set of parallel primitive arrays (position, orientation and whether it carries food),
+ * so any number of ants can share a cell and every NEST cell of the grid is a nest.  Ant moves are
+ * computed in parallel over the ant arrays, and cells only show the result (nest, food, ant,
+ * pheromone or empty).
+ */
+public class ForagingAntsColony extends GameType<ForagingAntsCell> {
+
+  public static final int TOTAL_STATES = 5;
+  private static final int ANTS_PER_TASK = 4096;
+  private static final int[][] DIRECTIONS = {{-1, 0}, {-1, 1}, {0, 1}, {1, 1}, {1, 0}, {1, -1},
+      {0, -1}, {-1, -1}};
+
+  private int antsPerNest;
+  private int maxPheromoneLevel;
+  private double diffusionRate;
+  private PheromoneField pheromones;
+  private int[] terrain;
+  private int[] nests;
+  private int[] antCount;
+
+  private int[] antPosition;
+  private byte[] antDirection;
+  private boolean[] antHasFood;
+  private int[] depositPosition;
+  private int[] depositLevel;
+  private boolean[] depositFood;
+
+  private final List<String> params = new ArrayList<>(Arrays.asList("antsInNest",
+      "maxPheromoneLevel", "diffusionRate"));
+
+  /**
+   * Constructor for the agent based Foraging Ants simulation
+   *
+   * @param parserGrid        2D array of cell starting states as integers
+   * @param antsPerNest       number of ants that start in every nest
+   * @param maxPheromoneLevel pheromone level at nests and food sources
+   * @param diffusionRate     fraction by which pheromones spread to neighbors each step
+   */
+  public ForagingAntsColony(int[][] parserGrid, int antsPerNest, int maxPheromoneLevel,
+      double diffusionRate) {
+    super(parserGrid);
+    this.antsPerNest = antsPerNest;
+    this.maxPheromoneLevel = maxPheromoneLevel;
+    this.diffusionRate = diffusionRate;
+    setNumGameStateIterations(1);
+    resetAuxiliaryState();
+  }
+
+  /**
+   * Clears the pheromones and places all ants back in their nests.
+   */
+  @Override
+  protected void resetAuxiliaryState() {
+    createAnts();
+  }
+
+  /**
+   * Builds the terrain (nests and food sources) from the cells and puts antsPerNest ants in every
+   * nest, each facing a different direction.  Arrays that already have the right size are reused.
+   */
+  private void createAnts() {
+    int rows = getNumRows();
+    int cols = getNumCols();
+    if (pheromones == null || !pheromones.hasSize(rows, cols)) {
+      pheromones = new PheromoneField(rows, cols);
+      terrain = new int[rows * cols];
+      antCount = new int[rows * cols];
+    } else {
+      pheromones.clear();
+    }
+    List<Integer> nestList = new ArrayList<>();
+    for (int row = 0; row < rows; row++) {
+      for (int col = 0; col < cols; col++) {
+        int state = getCell(row, col).getCurrentState();
+        int index = pheromones.index(row, col);
+        terrain[index] = terrainOf(state);
+        if (state == ForagingAntsCell.NEST) {
+          nestList.add(index);
+        }
+      }
+    }
+    nests = nestList.stream().mapToInt(Integer::intValue).toArray();
+
+    int numAnts = nests.length * antsPerNest;
+    if (antPosition == null || antPosition.length != numAnts) {
+      antPosition = new int[numAnts];
+      antDirection = new byte[numAnts];
+      antHasFood = new boolean[numAnts];
+      depositPosition = new int[numAnts];
+      depositLevel = new int[numAnts];
+      depositFood = new boolean[numAnts];
+    } else {
+      Arrays.fill(antHasFood, false);
+    }
+    for (int ant = 0; ant < numAnts; ant++) {
+      antPosition[ant] = nests[ant / Math.max(1, antsPerNest)];
+      antDirection[ant] = (byte) (ant % DIRECTIONS.length);
+    }
+    countAnts();
+  }
+
+  private int terrainOf(int state) {
+    if (state == ForagingAntsCell.NEST || state == ForagingAntsCell.FOOD) {
+      return state;
+    }
+    return ForagingAntsCell.EMPTY;
+  }
+
+  /**
+   * Performs one step of the colony: pheromones evaporate and diffuse, every ant moves (in
+   * parallel, reading but never writing the pheromone field), the pheromones the ants left behind
+   * are added, and finally the cells are updated to show the new situation.
+   *
+   * @param iteration index of the iteration within the current generation
+   */
+  @Override
+  protected void updateIteration(int iteration) {
+    pheromones.evaporate();
+    pheromones.diffuse(diffusionRate, edgeType == EdgeType.WRAPPED);
+    for (int index = 0; index < terrain.length; index++) {
+      if (terrain[index] == ForagingAntsCell.NEST) {
+        pheromones.setHome(index, maxPheromoneLevel);
+      } else if (terrain[index] == ForagingAntsCell.FOOD) {
+        pheromones.setFood(index, maxPheromoneLevel);
+      }
+    }
+
+    int numTasks = (antPosition.length + ANTS_PER_TASK - 1) / ANTS_PER_TASK;
+    IntStream.range(0, numTasks).parallel().forEach(task -> {
+      int lastAnt = Math.min(antPosition.length, (task + 1) * ANTS_PER_TASK);
+      for (int ant = task * ANTS_PER_TASK; ant < lastAnt; ant++) {
+        moveAnt(ant);
+      }
+    });
+
+    for (int ant = 0; ant < antPosition.length; ant++) {
+      if (depositFood[ant]) {
+        pheromones.depositFood(depositPosition[ant], depositLevel[ant]);
+      } else {
+        pheromones.depositHome(depositPosition[ant], depositLevel[ant]);
+      }
+    }
+    countAnts();
+
+    IntStream.range(0, getNumRows()).parallel().forEach(row -> {
+      for (int col = 0; col < getNumCols(); col++) {
+        ForagingAntsCell cell = getCell(row, col);
+        setCellNextState(cell);
+        if (cell.switchState()) {
+          markChanged(row, col);
+        }
+      }
+    });
+  }
+
+  /**
+   * Moves one ant.  The ant remembers the pheromone it leaves on its current cell, then steps to
+   * the cell in front of it (straight ahead or diagonally left or right) with the most pheromone
+   * of the kind it follows: food pheromones while searching, home pheromones while carrying food.
+   * Ties and pheromone-free surroundings are resolved with random bits derived from the seed, the
+   * generation and the ant, so the result does not depend on thread scheduling.
+   *
+   * @param ant index of the ant
+   */
+  private void moveAnt(int ant) {
+    int position = antPosition[ant];
+    boolean hasFood = antHasFood[ant];
+    depositPosition[ant] = position;
+    depositFood[ant] = hasFood;
+    depositLevel[ant] = depositLevelAt(position, hasFood);
+
+    long bits = streamSeed(ant);
+    int direction = antDirection[ant];
+    int best = -1;
+    int bestDirection = direction;
+    int bestLevel = -1;
+    int ties = 0;
+    for (int turn = -1; turn <= 1; turn++) {
+      int candidateDirection = Math.floorMod(direction + turn, DIRECTIONS.length);
+      int target = neighbor(position, candidateDirection);
+      if (target < 0) {
+        continue;
+      }
+      int level = hasFood ? pheromones.getHome(target) : pheromones.getFood(target);
+      if (level > bestLevel) {
+        best = target;
+        bestDirection = candidateDirection;
+        bestLevel = level;
+        ties = 1;
+      } else if (level == bestLevel) {
+        ties++;
+        bits = mix64(bits);
+        if (Long.remainderUnsigned(bits, ties) == 0) {
+          best = target;
+          bestDirection = candidateDirection;
+        }
+      }
+    }
+
+    if (best < 0) {
+      antDirection[ant] = (byte) ((direction + DIRECTIONS.length / 2) % DIRECTIONS.length);
+      return;
+    }
+    antPosition[ant] = best;
+    antDirection[ant] = (byte) bestDirection;
+    if (!hasFood && terrain[best] == ForagingAntsCell.FOOD
+        || hasFood && terrain[best] == ForagingAntsCell.NEST) {
+      antHasFood[ant] = !hasFood;
+      antDirection[ant] = (byte) ((bestDirection + DIRECTIONS.length / 2) % DIRECTIONS.length);
+    }
+  }
+
+  /**
+   * Computes the level of pheromone an ant leaves on a cell: the maximum level at nests (home
+   * pheromone) and food sources (food pheromone), otherwise two less than the strongest neighbor.
+   *
+   * @param position      field index of the cell
+   * @param foodPheromone true for food pheromone, false for home pheromone
+   * @return level to deposit
+   */
+  private int depositLevelAt(int position, boolean foodPheromone) {
+    int source = foodPheromone ? ForagingAntsCell.FOOD : ForagingAntsCell.NEST;
+    if (terrain[position] == source) {
+      return maxPheromoneLevel;
+    }
+    int max = 0;
+    for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+      int target = neighbor(position, direction);
+      if (target >= 0) {
+        max = Math.max(max, foodPheromone ? pheromones.getFood(target)
+            : pheromones.getHome(target));
+      }
+    }
+    return max - 2;
+  }
+
+  /**
+   * Returns the field index of the neighbor in the given direction, or -1 if it is outside the
+   * grid.
+   */
+  private int neighbor(int position, int direction) {
+    int cols = getNumCols();
+    int rows = getNumRows();
+    int row = position / cols + DIRECTIONS[direction][0];
+    int col = position % cols + DIRECTIONS[direction][1];
+    if (edgeType == EdgeType.WRAPPED) {
+      row = (row + rows) % rows;
+      col = (col + cols) % cols;
+    } else if (row < 0 || row >= rows || col < 0 || col >= cols) {
+      return -1;
+    }
+    return row * cols + col;
+  }
+
+  private void countAnts() {
+    Arrays.fill(antCount, 0);
+    for (int position : antPosition) {
+      antCount[position]++;
+    }
+  }
+
+  /**
+   * Sets the state a cell shows: nests and food sources stay as they are, other cells show an ant
+   * if at least one ant is on them, a pheromone if any pheromone is left, and are empty otherwise.
+   *
+   * @param currCell The cell whose next state will be set
+   */
+  public void setCellNextState(ForagingAntsCell currCell) {
+    int index = pheromones.index(currCell.getRowPos(), currCell.getColPos());
+    if (terrain[index] == ForagingAntsCell.NEST) {
+      currCell.setNextStateNest();
+    } else if (terrain[index] == ForagingAntsCell.FOOD) {
+      currCell.setNextStateFood();
+    } else if (antCount[index] > 0) {
+      currCell.setNextStateAnt(false, false, 0, 1);
+    } else if (pheromones.hasPheromones(index)) {
+      currCell.setNextStatePheromone();
+    } else {
+      currCell.setNextStateEmpty();
+    }
+  }
+
+  /**
+   * Changes the state of a cell, e.g. when the user clicks it.  Nests and food sources created or
+   * removed this way are added to or removed from the terrain and the list of nests; the ants stay
+   * where they are until the next reset.
+   */
+  @Override
+  public void setCellState(int row, int col, int state) {
+    super.setCellState(row, col, state);
+    int index = pheromones.index(row, col);
+    int newTerrain = terrainOf(getCell(row, col).getCurrentState());
+    if ((terrain[index] == ForagingAntsCell.NEST) != (newTerrain == ForagingAntsCell.NEST)) {
+      updateNests(index, newTerrain == ForagingAntsCell.NEST);
+    }
+    terrain[index] = newTerrain;
+  }
+
+  /**
+   * Adds a cell to or removes it from the nests, which are kept in increasing cell order like
+   * createAnts builds them.
+   */
+  private void updateNests(int index, boolean isNest) {
+    int position = Arrays.binarySearch(nests, index);
+    if (isNest && position < 0) {
+      int insertion = -position - 1;
+      int[] updated = new int[nests.length + 1];
+      System.arraycopy(nests, 0, updated, 0, insertion);
+      updated[insertion] = index;
+      System.arraycopy(nests, insertion, updated, insertion + 1, nests.length - insertion);
+      nests = updated;
+    } else if (!isNest && position >= 0) {
+      int[] updated = new int[nests.length - 1];
+      System.arraycopy(nests, 0, updated, 0, position);
+      System.arraycopy(nests, position + 1, updated, position, updated.length - position);
+      nests = updated;
+    }
+  }
+
+  protected ForagingAntsCell[][] createCellGridStructure(int rows, int columns) {
+    return new ForagingAntsCell[rows][columns];
+  }
+
+  protected ForagingAntsCell createCell(int row, int col, int state) {
+    return new ForagingAntsCell(row, col, state);
+  }
+
+  /**
+   * Updates the parameters.  A new number of ants per nest takes effect on the next reset.
+   */
+  public void updateParams(Map<String, Double> newParams) {
+    for (Map.Entry<String, Double> e : newParams.entrySet()) {
+      if (e.getKey().equals("antsInNest")) {
+        this.antsPerNest = (int) e.getValue().doubleValue();
+      } else if (e.getKey().equals("maxPheromoneLevel")) {
+        this.maxPheromoneLevel = (int) e.getValue().doubleValue();
+      } else if (e.getKey().equals("diffusionRate")) {
+        this.diffusionRate = e.getValue();
+      }
+    }
+  }
+
+  public List<String> getParamList() {
+    return params;
+  }
+
+  @Override
+  public Map<String, Double> getParamValues() {
+    Map<String, Double> values = new HashMap<>();
+    values.put("antsInNest", (double) antsPerNest);
+    values.put("maxPheromoneLevel", (double) maxPheromoneLevel);
+    values.put("diffusionRate", diffusionRate);
+    return values;
+  }
+
+  /**
+   * Writes the pheromone levels and the ant arrays.  The terrain follows from the cell states.
+   */
+  @Override
+  public void copyExtraPlanes(Map<String, int[]> planes) {
+    int numCells = getNumRows() * getNumCols();
+    int[] positions = reusePlane(planes, "antPositions", antPosition.length);
+    int[] directions = reusePlane(planes, "antDirections", antDirection.length);
+    int[] withFood = reusePlane(planes, "antsWithFood", antHasFood.length);
+    for (int ant = 0; ant < antPosition.length; ant++) {
+      positions[ant] = antPosition[ant];
+      directions[ant] = antDirection[ant];
+      withFood[ant] = antHasFood[ant] ? 1 : 0;
+    }
+    pheromones.copyFood(reusePlane(planes, "foodPheromones", numCells));
+    pheromones.copyHome(reusePlane(planes, "homePheromones", numCells));
+  }
+
+  @Override
+  public void setExtraPlanes(Map<String, int[]> planes) {
+    int numCells = getNumRows() * getNumCols();
+    int[] food = getPlane(planes, "foodPheromones", numCells);
+    int[] home = getPlane(planes, "homePheromones", numCells);
+    if (food != null && home != null) {
+      pheromones.setLevels(food, home);
+    }
+    int[] positions = planes.get("antPositions");
+    if (positions == null) {
+      return;
+    }
+    int[] directions = getPlane(planes, "antDirections", positions.length);
+    int[] withFood = getPlane(planes, "antsWithFood", positions.length);
+    if (directions == null || withFood == null) {
+      return;
+    }
+    for (int ant = 0; ant < positions.length; ant++) {
+      if (positions[ant] < 0 || positions[ant] >= numCells) {
+        return;
+      }
+    }
+    int numAnts = positions.length;
+    antPosition = positions.clone();
+    antDirection = new byte[numAnts];
+    antHasFood = new boolean[numAnts];
+    for (int ant = 0; ant < numAnts; ant++) {
+      antDirection[ant] = (byte) Math.floorMod(directions[ant], DIRECTIONS.length);
+      antHasFood[ant] = withFood[ant] != 0;
+    }
+    depositPosition = new int[numAnts];
+    depositLevel = new int[numAnts];
+    depositFood = new boolean[numAnts];
+    countAnts();
+  }
+
+  public int getTotalStates() {
+    return TOTAL_STATES;
+  }
+}
@@ -2,11 +2,13 @@ package cellsociety.model.gametypes;
 
 import cellsociety.model.cells.Cell;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
+import java.util.stream.IntStream;
 
 /**
  * This is a super class for the different types of simulations.  It contains state (cell grid) and
@@ -14,12 +16,19 @@ import java.util.Random;
  */
 public abstract class GameType<T extends Cell> {
 
+  // grids with at least this many cells are filled in parallel, one task per row
+  public static final int PARALLEL_FILL_CELLS = 1 << 16;
   private T[][] grid;
   private int numGameStateIterations;
-  protected final Random random = new Random();
+  private long seed = System.nanoTime();
+  private long generation;
+  protected final StatefulRandom random = new StatefulRandom(seed);
   private Map<Integer, String> stateMap;
   protected EdgeType edgeType;
   private String arrangement = "";
+  // the cells whose states changed since the changes were last collected, and the rows with one
+  private boolean[] changed;
+  private boolean[] changedRows;
 
   public enum EdgeType {
     STANDARD, WRAPPED
@@ -32,12 +41,14 @@ public abstract class GameType<T extends Cell> {
   }
 
   /**
-   * Constructor to create grid with initial Cell states
+   * Constructor to create grid with initial Cell states.  The fields of the subclass are not set
+   * yet, so this does not call {@link #resetAuxiliaryState()}; subclasses that override it call it
+   * at the end of their own constructor.
    *
    * @param parserGrid 2D array of cell starting states as integers
    */
   public GameType(int[][] parserGrid) {
-    createCellGrid(parserGrid);
+    fillCellGrid(parserGrid);
   }
 
   /**
@@ -90,20 +101,74 @@ public abstract class GameType<T extends Cell> {
   protected abstract T createCell(int row, int col, int state);
 
   /**
-   * This method creates the Cell grid from the state grid created by the parser class
+   * This method creates the Cell grid from the state grid created by the parser class, and then
+   * sets up the auxiliary state of the simulation with {@link #resetAuxiliaryState()}.
    *
    * @param parserGrid 2D array of cell starting states as integers
    */
   public void createCellGrid(int[][] parserGrid) {
-    int state;
-    this.grid = createCellGridStructure(parserGrid.length, parserGrid[0].length);
+    fillCellGrid(parserGrid);
+    resetAuxiliaryState();
+  }
 
-    for (int currRow = 0; currRow < getGrid().length; currRow++) {
-      for (int currCol = 0; currCol < getGrid()[0].length; currCol++) {
-        state = parserGrid[currRow][currCol];
+  /**
+   * Creates a new grid of cells with the given states.
+   *
+   * @param parserGrid 2D array of cell starting states as integers
+   */
+  private void fillCellGrid(int[][] parserGrid) {
+    this.grid = createCellGridStructure(parserGrid.length, parserGrid[0].length);
+    fillRows().forEach(currRow -> {
+      for (int currCol = 0; currCol < grid[currRow].length; currCol++) {
+        int state = parserGrid[currRow][currCol];
         this.setGridCell(currRow, currCol, createCell(currRow, currCol, state));
       }
-    }
+    });
+    // every cell of a new grid counts as changed
+    changed = new boolean[parserGrid.length * parserGrid[0].length];
+    changedRows = new boolean[parserGrid.length];
+    Arrays.fill(changed, true);
+    Arrays.fill(changedRows, true);
+  }
+
+  /**
+   * Overwrites the states of the existing cells with the given states instead of creating new
+   * cells, and then resets the auxiliary state of the simulation.  The grid must already have the
+   * size of parserGrid.
+   *
+   * @param parserGrid 2D array of cell starting states as integers
+   */
+  protected void resetCellGrid(int[][] parserGrid) {
+    fillRows().forEach(currRow -> {
+      T[] cells = grid[currRow];
+      int[] states = parserGrid[currRow];
+      for (int currCol = 0; currCol < cells.length; currCol++) {
+        if (cells[currCol].getCurrentState() != states[currCol]) {
+          markChanged(currRow, currCol);
+        }
+        cells[currCol].reset(states[currCol]);
+      }
+    });
+    resetAuxiliaryState();
+  }
+
+  /**
+   * Hook that brings everything a simulation keeps besides its cells (counters, pheromones, caches
+   * of the states...) back to how it is at the start of a run.  It is called after the cells were
+   * created or reset, so it can read their states, and must also be called at the end of the
+   * constructor of every subclass that overrides it.  Implementations should reuse their arrays
+   * when the grid size did not change.  The default does nothing.
+   */
+  protected void resetAuxiliaryState() {
+  }
+
+  /**
+   * Returns the row indices of the grid, as a parallel stream for large grids.
+   */
+  private IntStream fillRows() {
+    IntStream rows = IntStream.range(0, grid.length);
+    long numCells = (grid.length == 0) ? 0 : (long) grid.length * grid[0].length;
+    return (numCells >= PARALLEL_FILL_CELLS) ? rows.parallel() : rows;
   }
 
   /**
@@ -123,6 +188,45 @@ public abstract class GameType<T extends Cell> {
     return stateGrid;
   }
 
+  /**
+   * Records that the state of a cell changed, so the next collectChanges reports it.  Simulations
+   * that change states without switchState or setCellState call it for every cell they change.  It
+   * may be called for different cells at the same time, e.g. from a parallel stream.
+   *
+   * @param row row of the cell
+   * @param col column of the cell
+   */
+  protected void markChanged(int row, int col) {
+    changed[row * grid[0].length + col] = true;
+    changedRows[row] = true;
+  }
+
+  /**
+   * Adds the cells whose states changed since the last call to a set of changes, with their
+   * current states, and starts recording changes anew.  All cells count as changed when the grid
+   * was created.  Only the rows with a change are scanned, so this costs little when few cells
+   * change.
+   *
+   * @param changes the set to add to, for a grid of the size of this one
+   */
+  public void collectChanges(CellChanges changes) {
+    int numCols = grid[0].length;
+    for (int currRow = 0; currRow < grid.length; currRow++) {
+      if (!changedRows[currRow]) {
+        continue;
+      }
+      changedRows[currRow] = false;
+      T[] cells = grid[currRow];
+      int offset = currRow * numCols;
+      for (int currCol = 0; currCol < numCols; currCol++) {
+        if (changed[offset + currCol]) {
+          changed[offset + currCol] = false;
+          changes.put(offset + currCol, cells[currCol].getCurrentState());
+        }
+      }
+    }
+  }
+
   /**
    * Returns a copy of the Cell grid of this game.
    */
@@ -160,12 +264,19 @@ public abstract class GameType<T extends Cell> {
   }
 
   /**
-   * Resets the game grid to its initial state.
+   * Resets the game grid to its initial state.  If the grid has the same size, its cells are reused
+   * and only their states are overwritten; otherwise a new grid is created.
    *
    * @param parserGrid 2D array of cell starting states as integers
    */
   public void resetGame(int[][] parserGrid) {
-    createCellGrid(parserGrid);
+    if (grid != null && grid.length == parserGrid.length && grid.length > 0
+        && grid[0].length == parserGrid[0].length) {
+      resetCellGrid(parserGrid);
+    } else {
+      createCellGrid(parserGrid);
+    }
+    generation = 0;
   }
 
   /**
@@ -178,26 +289,241 @@ public abstract class GameType<T extends Cell> {
   }
 
   /**
-   * This method acts as a synchronous update to the game state.  It first iterates through the grid
-   * to determine every cell's next state.  It then iterates through the grid again to update every
-   * cell's current state.
+   * This method acts as a synchronous update to the game state.  It runs every iteration of the
+   * game for one generation and returns the resulting states.
    */
   public int[][] updateGameState() {
+    advanceGeneration();
+
+    return createStateGrid();
+  }
+
+  /**
+   * Runs every iteration of the game for one generation, like updateGameState, without copying
+   * the resulting states.  The cells that changed can be found with collectChanges.
+   */
+  public void advanceGeneration() {
     for (int currItr = 0; currItr < numGameStateIterations; currItr++) {
-      for (int currRow = grid.length - 1; currRow >= 0; currRow--) {
-        for (int currCol = 0; currCol < grid[0].length; currCol++) {
-          setCellNextState(grid[currRow][currCol]);
-        }
+      updateIteration(currItr);
+    }
+    generation++;
+  }
+
+  /**
+   * This method performs a single iteration of a generation.  It first iterates through the grid to
+   * determine every cell's next state.  It then iterates through the grid again to update every
+   * cell's current state.  Simulations with a different update scheme can override it.
+   *
+   * @param iteration index of the iteration within the current generation
+   */
+  protected void updateIteration(int iteration) {
+    for (int currRow = grid.length - 1; currRow >= 0; currRow--) {
+      for (int currCol = 0; currCol < grid[0].length; currCol++) {
+        setCellNextState(grid[currRow][currCol]);
       }
+    }
 
-      for (T[] cells : grid) {
-        for (T currCell : cells) {
-          currCell.switchState();
+    for (int currRow = 0; currRow < grid.length; currRow++) {
+      for (int currCol = 0; currCol < grid[0].length; currCol++) {
+        if (grid[currRow][currCol].switchState()) {
+          markChanged(currRow, currCol);
         }
       }
     }
+  }
 
-    return createStateGrid();
+  /**
+   * Returns the cell at the given position without copying the grid.
+   *
+   * @param row row position of the cell
+   * @param col column position of the cell
+   * @return the cell stored at that position
+   */
+  protected T getCell(int row, int col) {
+    return grid[row][col];
+  }
+
+  /**
+   * Getter for the number of rows in the grid
+   *
+   * @return number of rows
+   */
+  public int getNumRows() {
+    return grid.length;
+  }
+
+  /**
+   * Getter for the number of columns in the grid
+   *
+   * @return number of columns
+   */
+  public int getNumCols() {
+    return grid[0].length;
+  }
+
+  /**
+   * Getter for the number of generations computed since the grid was created or reset
+   *
+   * @return current generation
+   */
+  public long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Sets the generation counter, e.g. when a saved simulation is loaded again.  Update schemes
+   * that depend on the generation continue from there.
+   *
+   * @param generation the current generation
+   */
+  public void setGeneration(long generation) {
+    this.generation = generation;
+  }
+
+  /**
+   * Seeds the random number generator of this game so that runs can be reproduced.
+   *
+   * @param seed the new seed
+   */
+  public void setSeed(long seed) {
+    this.seed = seed;
+    random.setSeed(seed);
+  }
+
+  /**
+   * Getter for the seed of this game
+   *
+   * @return seed used by the random number generator
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Getter for the position of the random number generator in its sequence
+   *
+   * @return state of the random number generator
+   */
+  public long getRandomState() {
+    return random.getState();
+  }
+
+  /**
+   * Moves the random number generator to a position returned by getRandomState.
+   *
+   * @param state state of the random number generator
+   */
+  public void setRandomState(long state) {
+    random.setState(state);
+  }
+
+  /**
+   * Returns the current values of the parameters in getParamList.  Simulations with parameters
+   * override this so that they can be saved and restored.
+   *
+   * @return map from parameter name to value
+   */
+  public Map<String, Double> getParamValues() {
+    return Collections.emptyMap();
+  }
+
+  /**
+   * Returns copies of the per-simulation data that is not part of the cell states, such as ages,
+   * energies or pheromone levels, as named int arrays.  Together with the states, the parameters,
+   * the generation and the random state they are enough to continue the simulation exactly.
+   *
+   * @return map from plane name to values, empty if the cell states are all there is
+   */
+  public Map<String, int[]> getExtraPlanes() {
+    Map<String, int[]> planes = new HashMap<>();
+    copyExtraPlanes(planes);
+    return planes;
+  }
+
+  /**
+   * Writes the data returned by getExtraPlanes into a map, reusing the arrays it already holds for
+   * the planes, so that looking at the planes every generation does not allocate them anew.  Every
+   * value of every plane is written.  The default writes nothing.
+   *
+   * @param planes map from plane name to values, e.g. filled by an earlier call
+   */
+  public void copyExtraPlanes(Map<String, int[]> planes) {
+  }
+
+  /**
+   * Restores the data returned by getExtraPlanes after the grid was created from the saved states.
+   * Planes that are missing or have the wrong length are ignored.
+   *
+   * @param planes map from plane name to values
+   */
+  public void setExtraPlanes(Map<String, int[]> planes) {
+  }
+
+  /**
+   * Looks up a plane for setExtraPlanes
+   *
+   * @param planes map from plane name to values
+   * @param name   name of the plane
+   * @param length expected number of values
+   * @return the plane, or null if it is missing or has a different length
+   */
+  protected static int[] getPlane(Map<String, int[]> planes, String name, int length) {
+    int[] plane = planes.get(name);
+    return (plane != null && plane.length == length) ? plane : null;
+  }
+
+  /**
+   * Looks up a plane for copyExtraPlanes, and puts a new one in its place if it is missing or has
+   * a different length
+   *
+   * @param planes map from plane name to values
+   * @param name   name of the plane
+   * @param length number of values
+   * @return the plane to write the values into
+   */
+  protected static int[] reusePlane(Map<String, int[]> planes, String name, int length) {
+    int[] plane = getPlane(planes, name, length);
+    if (plane == null) {
+      plane = new int[length];
+      planes.put(name, plane);
+    }
+    return plane;
+  }
+
+  /**
+   * Creates an independent random generator for one stream of the current generation.  The result
+   * only depends on the seed, the generation and the stream, so work that is split across threads
+   * stays reproducible no matter which thread runs which stream.
+   *
+   * @param stream index of the stream, e.g. the index of a block of cells
+   * @return random generator for this stream
+   */
+  protected Random createStreamRandom(long stream) {
+    return new Random(streamSeed(stream));
+  }
+
+  /**
+   * Computes the seed of one random stream of the current generation, for callers that draw their
+   * own random bits with {@link #mix64(long)} instead of allocating a Random.
+   *
+   * @param stream index of the stream
+   * @return seed of the stream
+   */
+  protected long streamSeed(long stream) {
+    return mix64(seed + mix64(generation * 0x9E3779B97F4A7C15L + stream));
+  }
+
+  /**
+   * Scrambles the bits of a value (SplitMix64 finalizer).
+   *
+   * @param value value to scramble
+   * @return scrambled value
+   */
+  protected static long mix64(long value) {
+    long z = value;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
   }
 
   /**
@@ -380,7 +706,22 @@ public abstract class GameType<T extends Cell> {
   }
 
   public void incrementCell(int row, int col, int totalStates) {
-    grid[row][col].manuallySetState((grid[row][col].getCurrentState() + 1) % totalStates);
+    setCellState(row, col, (grid[row][col].getCurrentState() + 1) % totalStates);
+  }
+
+  /**
+   * Sets the state of a cell from outside the simulation, e.g. when the user clicks it or a
+   * generation is restored.  Games that keep data derived from the states update it here.
+   *
+   * @param row   row of the cell
+   * @param col   column of the cell
+   * @param state the new state
+   */
+  public void setCellState(int row, int col, int state) {
+    if (grid[row][col].getCurrentState() != state) {
+      markChanged(row, col);
+    }
+    grid[row][col].manuallySetState(state);
   }
 
   /**
@@ -410,6 +751,15 @@ public abstract class GameType<T extends Cell> {
     this.arrangement = newArrangement.replaceAll("\\s", "").toLowerCase();
   }
 
+  /**
+   * Getter for the neighbor arrangement, e.g. "vonneumann"
+   *
+   * @return arrangement without whitespace in lower case, empty if none was set
+   */
+  protected String getArrangement() {
+    return arrangement;
+  }
+
   private int countDiagonalNeighborsHelp(T currCell, int state) {
     int row = currCell.getRowPos();
     int col = currCell.getColPos();
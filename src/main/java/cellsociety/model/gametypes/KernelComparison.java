@@ -0,0 +1,67 @@
+package cellsociety.model.gametypes;
+
+/**
+ * This class holds the result of running the interpreted and the generated kernel of a simulation
+ * side by side.
+ */
+public class KernelComparison {
+
+  private final int generations;
+  private final boolean matching;
+  private final long interpretedNanos;
+  private final long generatedNanos;
+
+  /**
+   * Constructor for a kernel comparison
+   *
+   * @param generations      number of generations that were compared
+   * @param matching         true if both kernels produced the same states in every generation
+   * @param interpretedNanos time spent in the interpreted kernel
+   * @param generatedNanos   time spent in the generated kernel
+   */
+  public KernelComparison(int generations, boolean matching, long interpretedNanos,
+      long generatedNanos) {
+    this.generations = generations;
+    this.matching = matching;
+    this.interpretedNanos = interpretedNanos;
+    this.generatedNanos = generatedNanos;
+  }
+
+  /**
+   * Getter for the number of generations compared.  If the kernels did not match, this is the
+   * first generation in which they differed.
+   *
+   * @return number of generations
+   */
+  public int getGenerations() {
+    return generations;
+  }
+
+  public boolean isMatching() {
+    return matching;
+  }
+
+  public long getInterpretedNanos() {
+    return interpretedNanos;
+  }
+
+  public long getGeneratedNanos() {
+    return generatedNanos;
+  }
+
+  /**
+   * Computes how many times faster the generated kernel was
+   *
+   * @return interpreted time divided by generated time
+   */
+  public double getSpeedup() {
+    return (double) interpretedNanos / Math.max(1, generatedNanos);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d generations, %s, interpreted %.1f ms, generated %.1f ms (%.2fx)",
+        generations, matching ? "matching" : "differing", interpretedNanos / 1e6,
+        generatedNanos / 1e6, getSpeedup());
+  }
+}
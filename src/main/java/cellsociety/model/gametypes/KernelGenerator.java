@@ -0,0 +1,223 @@
+package cellsociety.model.gametypes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * This class generates a StepKernel that is specialized for one rule table, grid size, edge type
+ * and neighborhood.  The kernel is written as Java source in which the dimensions, the neighbor
+ * offsets and the state weights are literals and the neighbor loop is unrolled, compiled in memory
+ * and loaded as a hidden class that receives the transition table as its class data.  The JIT then
+ * sees one small monomorphic loop over constants instead of the generic interpreted path.
+ */
+public class KernelGenerator {
+
+  private static final String CLASS_NAME = "GeneratedStepKernel";
+  private static final String PACKAGE_NAME = KernelGenerator.class.getPackageName();
+
+  private final TransitionTable table;
+  private final int rows;
+  private final int cols;
+  private final int[][] offsets;
+  private final boolean wrapped;
+
+  /**
+   * Constructor for a kernel generator
+   *
+   * @param table   compiled transition table
+   * @param rows    number of rows of the grid
+   * @param cols    number of columns of the grid
+   * @param offsets row and column offsets of the neighbors
+   * @param wrapped true if the edges of the grid wrap around
+   */
+  public KernelGenerator(TransitionTable table, int rows, int cols, int[][] offsets,
+      boolean wrapped) {
+    this.table = table;
+    this.rows = rows;
+    this.cols = cols;
+    this.offsets = offsets;
+    this.wrapped = wrapped;
+  }
+
+  /**
+   * Generates, compiles and loads the kernel.
+   *
+   * @return the specialized kernel
+   * @throws IllegalStateException if no compiler is available or the kernel cannot be loaded
+   */
+  public StepKernel generate() {
+    byte[] classBytes = compile(createSource());
+    try {
+      Lookup kernelLookup = MethodHandles.lookup()
+          .defineHiddenClassWithClassData(classBytes, table.toArray(), true);
+      return (StepKernel) kernelLookup.findConstructor(kernelLookup.lookupClass(),
+          MethodType.methodType(void.class)).invoke();
+    } catch (Throwable e) {
+      throw new IllegalStateException("Could not load generated kernel", e);
+    }
+  }
+
+  /**
+   * Writes the source of the kernel class.
+   *
+   * @return Java source code
+   */
+  public String createSource() {
+    StringBuilder source = new StringBuilder();
+    source.append("package ").append(PACKAGE_NAME).append(";\n\n")
+        .append("import java.lang.invoke.MethodHandles;\n\n")
+        .append("final class ").append(CLASS_NAME).append(" implements StepKernel {\n\n")
+        .append("  private static final int ROWS = ").append(rows).append(";\n")
+        .append("  private static final int COLS = ").append(cols).append(";\n")
+        .append("  private static final int STRIDE = ").append(table.getStride()).append(";\n")
+        .append("  private static final int[] WEIGHTS = ").append(weightsLiteral()).append(";\n")
+        .append("  private static final byte[] TABLE;\n\n")
+        .append("  static {\n")
+        .append("    try {\n")
+        .append("      TABLE = MethodHandles.classData(MethodHandles.lookup(), \"_\", ")
+        .append("byte[].class);\n")
+        .append("    } catch (IllegalAccessException e) {\n")
+        .append("      throw new ExceptionInInitializerError(e);\n")
+        .append("    }\n")
+        .append("  }\n\n");
+
+    source.append("  public void stepRows(byte[] s, byte[] n, int firstRow, int lastRow) {\n")
+        .append("    for (int row = firstRow; row < lastRow; row++) {\n")
+        .append("      int base = row * COLS;\n")
+        .append("      if (row == 0 || row == ROWS - 1 || COLS < 3) {\n")
+        .append("        for (int col = 0; col < COLS; col++) {\n")
+        .append("          n[base + col] = edge(s, row, col);\n")
+        .append("        }\n")
+        .append("        continue;\n")
+        .append("      }\n")
+        .append("      n[base] = edge(s, row, 0);\n")
+        .append("      for (int i = base + 1, end = base + COLS - 1; i < end; i++) {\n")
+        .append("        int k = 0");
+    for (int[] offset : offsets) {
+      source.append("\n            + ").append(weightOf("s[i + (" + indexOffset(offset) + ")]"));
+    }
+    source.append(";\n")
+        .append("        n[i] = TABLE[s[i] * STRIDE + k];\n")
+        .append("      }\n")
+        .append("      n[base + COLS - 1] = edge(s, row, COLS - 1);\n")
+        .append("    }\n")
+        .append("  }\n\n");
+
+    source.append("  private static byte edge(byte[] s, int row, int col) {\n")
+        .append("    int k = 0;\n")
+        .append("    int r;\n")
+        .append("    int c;\n");
+    for (int[] offset : offsets) {
+      source.append("    r = row + (").append(offset[0]).append(");\n")
+          .append("    c = col + (").append(offset[1]).append(");\n");
+      if (wrapped) {
+        source.append("    r = (r + ROWS) % ROWS;\n")
+            .append("    c = (c + COLS) % COLS;\n")
+            .append("    k += ").append(weightOf("s[r * COLS + c]")).append(";\n");
+      } else {
+        source.append("    if (r >= 0 && r < ROWS && c >= 0 && c < COLS) {\n")
+            .append("      k += ").append(weightOf("s[r * COLS + c]")).append(";\n")
+            .append("    }\n");
+      }
+    }
+    source.append("    return TABLE[s[row * COLS + col] * STRIDE + k];\n")
+        .append("  }\n")
+        .append("}\n");
+    return source.toString();
+  }
+
+  private int indexOffset(int[] offset) {
+    return offset[0] * cols + offset[1];
+  }
+
+  /**
+   * With two states the weight of a state is the state itself, so the lookup is left out.
+   */
+  private String weightOf(String state) {
+    return (table.getNumStates() == 2) ? state : "WEIGHTS[" + state + "]";
+  }
+
+  private String weightsLiteral() {
+    int[] weights = new int[table.getNumStates()];
+    for (int state = 0; state < weights.length; state++) {
+      weights[state] = table.getWeight(state);
+    }
+    return Arrays.toString(weights).replace('[', '{').replace(']', '}');
+  }
+
+  /**
+   * Compiles the source in memory with the system Java compiler.
+   *
+   * @param source Java source code of the kernel
+   * @return bytes of the compiled class
+   */
+  private byte[] compile(String source) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      throw new IllegalStateException("No Java compiler available");
+    }
+    ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+    StandardJavaFileManager standardManager = compiler.getStandardFileManager(null, null, null);
+    JavaFileManager fileManager = new ForwardingJavaFileManager<>(standardManager) {
+      @Override
+      public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind,
+          FileObject sibling) {
+        return new SimpleJavaFileObject(URI.create("mem:///" + CLASS_NAME + Kind.CLASS.extension),
+            Kind.CLASS) {
+          @Override
+          public OutputStream openOutputStream() {
+            return classBytes;
+          }
+        };
+      }
+    };
+    JavaFileObject sourceFile = new SimpleJavaFileObject(
+        URI.create("string:///" + CLASS_NAME + Kind.SOURCE.extension), Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return source;
+      }
+    };
+
+    StringWriter errors = new StringWriter();
+    List<String> options = List.of("-classpath", classPath(), "-proc:none");
+    boolean compiled = compiler.getTask(errors, fileManager, null, options, null,
+        List.of(sourceFile)).call();
+    if (!compiled) {
+      throw new IllegalStateException("Could not compile generated kernel: " + errors);
+    }
+    return classBytes.toByteArray();
+  }
+
+  /**
+   * Builds a class path that contains StepKernel, even if the application was not started from the
+   * system class path.
+   */
+  private String classPath() {
+    String classPath = System.getProperty("java.class.path", "");
+    try {
+      String location = new File(StepKernel.class.getProtectionDomain().getCodeSource()
+          .getLocation().toURI()).getPath();
+      return location + File.pathSeparator + classPath;
+    } catch (Exception e) {
+      return classPath;
+    }
+  }
+}
@@ -3,7 +3,7 @@ package cellsociety.model.gametypes;
 import cellsociety.model.cells.ModelOfSegregationCell;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -104,11 +104,9 @@ public class ModelOfSegregation extends GameType<ModelOfSegregationCell> {
     }
 
     if (!availableCells.isEmpty()) {
-      // Shuffle the list to achieve randomness
-      Collections.shuffle(availableCells);
-
-      // Move the agent to the randomly selected empty cell (the first one after shuffling)
-      ModelOfSegregationCell randomAvailableCell = availableCells.get(0);
+      // Move the agent to a randomly selected empty cell, drawn from the seeded generator
+      ModelOfSegregationCell randomAvailableCell = availableCells.get(
+          random.nextInt(availableCells.size()));
       if (movingCell.getCurrentState() == ModelOfSegregationCell.GROUP_A) {
         randomAvailableCell.setNextStateGroupA();
       } else {
@@ -149,6 +147,13 @@ public class ModelOfSegregation extends GameType<ModelOfSegregationCell> {
     }
   }
 
+  @Override
+  public Map<String, Double> getParamValues() {
+    Map<String, Double> values = new HashMap<>();
+    values.put("neighborPercentage", neighborPercentage);
+    return values;
+  }
+
   public List<String> getParamList() {
     return params;
   }
@@ -0,0 +1,221 @@
+package cellsociety.model.gametypes;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * This class stores the food and home pheromone levels of an ant simulation in two flat primitive
+ * arrays indexed by row * columns + column.  Keeping the levels out of the cell objects lets
+ * evaporation run as one bulk pass over the arrays, which the JIT can vectorize, and lets diffusion
+ * run in parallel over bands of rows.
+ */
+public class PheromoneField {
+
+  private static final int[][] NEIGHBOR_OFFSETS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+  private final int rows;
+  private final int cols;
+  private int[] food;
+  private int[] home;
+  private int[] scratch;
+
+  /**
+   * Constructor for an empty pheromone field
+   *
+   * @param rows number of rows of the grid
+   * @param cols number of columns of the grid
+   */
+  public PheromoneField(int rows, int cols) {
+    this.rows = rows;
+    this.cols = cols;
+    food = new int[rows * cols];
+    home = new int[rows * cols];
+  }
+
+  /**
+   * Converts a grid position to an index into the level arrays
+   *
+   * @param row row position
+   * @param col column position
+   * @return index of the position
+   */
+  public int index(int row, int col) {
+    return row * cols + col;
+  }
+
+  /**
+   * Checks if the field covers a grid of the given size
+   *
+   * @param rows number of rows of the grid
+   * @param cols number of columns of the grid
+   * @return True if the field has that many rows and columns
+   */
+  public boolean hasSize(int rows, int cols) {
+    return this.rows == rows && this.cols == cols;
+  }
+
+  public int getFood(int index) {
+    return food[index];
+  }
+
+  public int getHome(int index) {
+    return home[index];
+  }
+
+  public void setFood(int index, int level) {
+    food[index] = level;
+  }
+
+  public void setHome(int index, int level) {
+    home[index] = level;
+  }
+
+  /**
+   * Raises the food pheromone level at a position to the given level if it is lower.
+   *
+   * @param index position in the field
+   * @param level level to deposit
+   */
+  public void depositFood(int index, int level) {
+    if (food[index] < level) {
+      food[index] = level;
+    }
+  }
+
+  /**
+   * Raises the home pheromone level at a position to the given level if it is lower.
+   *
+   * @param index position in the field
+   * @param level level to deposit
+   */
+  public void depositHome(int index, int level) {
+    if (home[index] < level) {
+      home[index] = level;
+    }
+  }
+
+  /**
+   * Method to check if any pheromones are left at a position
+   *
+   * @param index position in the field
+   * @return True if either level is above zero, false if not
+   */
+  public boolean hasPheromones(int index) {
+    return food[index] > 0 || home[index] > 0;
+  }
+
+  /**
+   * Lowers every level by one, without going below zero.  This is a single branch-free pass over
+   * each array.
+   */
+  public void evaporate() {
+    evaporate(food);
+    evaporate(home);
+  }
+
+  private static void evaporate(int[] levels) {
+    for (int i = 0; i < levels.length; i++) {
+      levels[i] = Math.max(levels[i] - 1, 0);
+    }
+  }
+
+  /**
+   * Spreads pheromones to the up, down, left and right neighbors.  Every level moves towards the
+   * average of its neighbors by the given rate.  Bands of rows are processed in parallel, each
+   * writing only its own rows of a scratch array.
+   *
+   * @param rate    fraction of the difference to the neighbor average that is moved, 0 to 1
+   * @param wrapped true if the edges of the grid wrap around
+   */
+  public void diffuse(double rate, boolean wrapped) {
+    if (rate <= 0) {
+      return;
+    }
+    food = diffuse(food, rate, wrapped);
+    home = diffuse(home, rate, wrapped);
+  }
+
+  private int[] diffuse(int[] levels, double rate, boolean wrapped) {
+    if (scratch == null) {
+      scratch = new int[levels.length];
+    }
+    int[] next = scratch;
+    int bandRows = Math.max(1, rows / (Runtime.getRuntime().availableProcessors() * 4));
+    int numBands = (rows + bandRows - 1) / bandRows;
+
+    IntStream.range(0, numBands).parallel().forEach(band -> {
+      int lastRow = Math.min(rows, (band + 1) * bandRows);
+      for (int row = band * bandRows; row < lastRow; row++) {
+        diffuseRow(levels, next, row, rate, wrapped);
+      }
+    });
+
+    scratch = levels;
+    return next;
+  }
+
+  private void diffuseRow(int[] levels, int[] next, int row, double rate, boolean wrapped) {
+    for (int col = 0; col < cols; col++) {
+      int sum = 0;
+      int count = 0;
+      for (int[] offset : NEIGHBOR_OFFSETS) {
+        int neighborRow = row + offset[0];
+        int neighborCol = col + offset[1];
+        if (wrapped) {
+          neighborRow = (neighborRow + rows) % rows;
+          neighborCol = (neighborCol + cols) % cols;
+        } else if (neighborRow < 0 || neighborRow >= rows || neighborCol < 0
+            || neighborCol >= cols) {
+          continue;
+        }
+        sum += levels[index(neighborRow, neighborCol)];
+        count++;
+      }
+      int level = levels[index(row, col)];
+      double average = (count == 0) ? level : (double) sum / count;
+      next[index(row, col)] = (int) Math.round(level + rate * (average - level));
+    }
+  }
+
+  /**
+   * Copies the food pheromone levels
+   *
+   * @param levels array of rows * columns values to copy them into, indexed by row * columns +
+   *               column
+   */
+  public void copyFood(int[] levels) {
+    System.arraycopy(food, 0, levels, 0, food.length);
+  }
+
+  /**
+   * Copies the home pheromone levels
+   *
+   * @param levels array of rows * columns values to copy them into, indexed by row * columns +
+   *               column
+   */
+  public void copyHome(int[] levels) {
+    System.arraycopy(home, 0, levels, 0, home.length);
+  }
+
+  /**
+   * Replaces all levels, e.g. with levels that were saved before.
+   *
+   * @param foodLevels food pheromone levels indexed by row * columns + column
+   * @param homeLevels home pheromone levels indexed by row * columns + column
+   * @throws IllegalArgumentException if an array does not match the size of the field
+   */
+  public void setLevels(int[] foodLevels, int[] homeLevels) {
+    if (foodLevels.length != rows * cols || homeLevels.length != rows * cols) {
+      throw new IllegalArgumentException("Pheromone levels do not match the field");
+    }
+    food = foodLevels.clone();
+    home = homeLevels.clone();
+  }
+
+  /**
+   * Sets every level back to zero
+   */
+  public void clear() {
+    Arrays.fill(food, 0);
+    Arrays.fill(home, 0);
+  }
+}
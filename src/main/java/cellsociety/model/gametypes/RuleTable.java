@@ -0,0 +1,318 @@
+package cellsociety.model.gametypes;
+
+import cellsociety.model.cells.RuleTableCell;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * This is a child of the GameType class.  It represents a simulation whose rules come from the
+ * configuration file instead of Java code.  The rules are compiled into a TransitionTable, and the
+ * states are kept in primitive arrays, so updating a cell is a sum over its neighbors followed by a
+ * single table lookup.  Rows are updated in parallel and only cells that change are written back
+ * to the Cell grid.
+ * <p>
+ * The rows are computed by a StepKernel.  By default this is the interpreted loop of this class;
+ * with a generated kernel, a kernel specialized for the table, grid size, edge type and
+ * neighborhood is compiled at runtime, falling back to the interpreted loop if that fails.
+ */
+public class RuleTable extends GameType<RuleTableCell> {
+
+  private static final int[][] MOORE_OFFSETS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1},
+      {1, -1}, {1, 0}, {1, 1}};
+  private static final int[][] VON_NEUMANN_OFFSETS = {{-1, 0}, {0, -1}, {0, 1}, {1, 0}};
+
+  private final int numStates;
+  private final List<TransitionRule> rules;
+  private TransitionTable table;
+  private int[][] offsets;
+  private int[] indexOffsets;
+  private int[] weights;
+  private byte[] states;
+  private byte[] nextStates;
+  private boolean generatedKernel;
+  private StepKernel kernel;
+  private boolean kernelFailed;
+
+  /**
+   * Constructor for a rule table simulation
+   *
+   * @param parserGrid 2D array of cell starting states as integers
+   * @param numStates  number of states
+   * @param rules      transition rules in order of priority
+   * @throws IllegalArgumentException if the rules cannot be compiled
+   */
+  public RuleTable(int[][] parserGrid, int numStates, List<TransitionRule> rules) {
+    super(parserGrid);
+    this.numStates = numStates;
+    this.rules = new ArrayList<>(rules);
+    this.setNumGameStateIterations(1);
+    compileTable();
+    resetAuxiliaryState();
+  }
+
+  /**
+   * Copies the states of the cells into the primitive state arrays.
+   */
+  @Override
+  protected void resetAuxiliaryState() {
+    int cols = getNumCols();
+    if (states == null || states.length != getNumRows() * cols) {
+      states = new byte[getNumRows() * cols];
+      nextStates = new byte[states.length];
+    }
+    for (int row = 0; row < getNumRows(); row++) {
+      for (int col = 0; col < cols; col++) {
+        states[row * cols + col] = (byte) getCell(row, col).getCurrentState();
+      }
+    }
+  }
+
+  /**
+   * Method to set the arrangement.  The size of the neighborhood changes the table, so it is
+   * compiled again.
+   *
+   * @param newArrangement String representing new arrangement
+   */
+  @Override
+  public void setArrangement(String newArrangement) {
+    super.setArrangement(newArrangement);
+    compileTable();
+  }
+
+  /**
+   * Method to set the edge type of the grid.  A generated kernel depends on it, so it is generated
+   * again.
+   *
+   * @param edgeType string representing the edge type
+   */
+  @Override
+  public void setEdgeType(String edgeType) {
+    super.setEdgeType(edgeType);
+    discardKernel();
+  }
+
+  /**
+   * Turns the generated kernel on or off.  The kernel is generated on the next step.
+   *
+   * @param generated true to use a kernel generated for this simulation, false for the interpreted
+   *                  loop
+   */
+  public void setGeneratedKernel(boolean generated) {
+    this.generatedKernel = generated;
+  }
+
+  /**
+   * Method to check if steps are computed by a generated kernel
+   *
+   * @return True if a generated kernel is in use, false if the interpreted loop is used
+   */
+  public boolean isGeneratedKernelActive() {
+    return generatedKernel && kernel != null;
+  }
+
+  private void discardKernel() {
+    kernel = null;
+    kernelFailed = false;
+  }
+
+  private StepKernel currentKernel() {
+    if (generatedKernel && kernel == null && !kernelFailed) {
+      try {
+        kernel = createGenerator().generate();
+      } catch (IllegalStateException e) {
+        kernelFailed = true;
+      }
+    }
+    return isGeneratedKernelActive() ? kernel : this::interpretRows;
+  }
+
+  private KernelGenerator createGenerator() {
+    return new KernelGenerator(table, getNumRows(), getNumCols(), offsets,
+        edgeType == EdgeType.WRAPPED);
+  }
+
+  private void compileTable() {
+    discardKernel();
+    offsets = getArrangement().equals("vonneumann") ? VON_NEUMANN_OFFSETS : MOORE_OFFSETS;
+    table = new TransitionTable(numStates, offsets.length, rules);
+    weights = new int[numStates];
+    for (int state = 0; state < numStates; state++) {
+      weights[state] = table.getWeight(state);
+    }
+    indexOffsets = new int[offsets.length];
+    for (int i = 0; i < offsets.length; i++) {
+      indexOffsets[i] = offsets[i][0] * getNumCols() + offsets[i][1];
+    }
+  }
+
+  /**
+   * Computes the next state of every cell from the state arrays, then swaps the arrays.
+   *
+   * @param iteration index of the iteration within the current generation
+   */
+  @Override
+  protected void updateIteration(int iteration) {
+    StepKernel stepKernel = currentKernel();
+    int cols = getNumCols();
+    IntStream.range(0, getNumRows()).parallel().forEach(row -> {
+      stepKernel.stepRows(states, nextStates, row, row + 1);
+      for (int col = 0; col < cols; col++) {
+        if (nextStates[row * cols + col] != states[row * cols + col]) {
+          getCell(row, col).manuallySetState(nextStates[row * cols + col]);
+          markChanged(row, col);
+        }
+      }
+    });
+    byte[] swap = states;
+    states = nextStates;
+    nextStates = swap;
+  }
+
+  /**
+   * Runs the interpreted and the generated kernel side by side from the current states, without
+   * changing the simulation, and reports whether they agree and how long each one took.
+   *
+   * @param generations number of generations to compare
+   * @return result of the comparison
+   * @throws IllegalStateException if the kernel cannot be generated
+   */
+  public KernelComparison compareKernels(int generations) {
+    StepKernel generated = createGenerator().generate();
+    StepKernel interpreted = this::interpretRows;
+    byte[] interpretedStates = states.clone();
+    byte[] interpretedNext = new byte[states.length];
+    byte[] generatedStates = states.clone();
+    byte[] generatedNext = new byte[states.length];
+    long interpretedNanos = 0;
+    long generatedNanos = 0;
+
+    for (int generation = 0; generation < generations; generation++) {
+      long start = System.nanoTime();
+      runKernel(interpreted, interpretedStates, interpretedNext);
+      long middle = System.nanoTime();
+      runKernel(generated, generatedStates, generatedNext);
+      generatedNanos += System.nanoTime() - middle;
+      interpretedNanos += middle - start;
+      if (!Arrays.equals(interpretedNext, generatedNext)) {
+        return new KernelComparison(generation + 1, false, interpretedNanos, generatedNanos);
+      }
+      byte[] swap = interpretedStates;
+      interpretedStates = interpretedNext;
+      interpretedNext = swap;
+      swap = generatedStates;
+      generatedStates = generatedNext;
+      generatedNext = swap;
+    }
+    return new KernelComparison(generations, true, interpretedNanos, generatedNanos);
+  }
+
+  private void runKernel(StepKernel stepKernel, byte[] from, byte[] to) {
+    IntStream.range(0, getNumRows()).parallel()
+        .forEach(row -> stepKernel.stepRows(from, to, row, row + 1));
+  }
+
+  /**
+   * The interpreted kernel: a generic loop over the neighbor offsets and the weights of the states.
+   */
+  private void interpretRows(byte[] from, byte[] to, int firstRow, int lastRow) {
+    int rows = getNumRows();
+    int cols = getNumCols();
+    boolean wrapped = (edgeType == EdgeType.WRAPPED);
+    for (int row = firstRow; row < lastRow; row++) {
+      boolean innerRow = (row > 0 && row < rows - 1);
+      for (int col = 0; col < cols; col++) {
+        int index = row * cols + col;
+        if (innerRow && col > 0 && col < cols - 1) {
+          int neighborhood = 0;
+          for (int offset : indexOffsets) {
+            neighborhood += weights[from[index + offset]];
+          }
+          to[index] = (byte) table.next(from[index], neighborhood);
+        } else {
+          to[index] = (byte) nextStateAt(from, row, col, wrapped);
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the next state of a cell on any position of the grid.  Neighbors outside of the grid
+   * count as state 0 unless the edges wrap around.
+   */
+  private int nextStateAt(byte[] from, int row, int col, boolean wrapped) {
+    int rows = getNumRows();
+    int cols = getNumCols();
+    int neighborhood = 0;
+    for (int[] offset : offsets) {
+      int neighborRow = row + offset[0];
+      int neighborCol = col + offset[1];
+      if (wrapped) {
+        neighborRow = (neighborRow + rows) % rows;
+        neighborCol = (neighborCol + cols) % cols;
+      } else if (neighborRow < 0 || neighborRow >= rows || neighborCol < 0
+          || neighborCol >= cols) {
+        continue;
+      }
+      neighborhood += weights[from[neighborRow * cols + neighborCol]];
+    }
+    return table.next(from[row * cols + col], neighborhood);
+  }
+
+  /**
+   * Determines the cell's next state with a lookup in the transition table and sets the cell's
+   * nextState field.
+   *
+   * @param currCell The cell whose next state will be set
+   */
+  public void setCellNextState(RuleTableCell currCell) {
+    currCell.setNextState(nextStateAt(states, currCell.getRowPos(), currCell.getColPos(),
+        edgeType == EdgeType.WRAPPED));
+  }
+
+  /**
+   * Changes the state of a cell, e.g. when the user clicks it, and updates the state array.
+   */
+  @Override
+  public void setCellState(int row, int col, int state) {
+    super.setCellState(row, col, state);
+    states[row * getNumCols() + col] = (byte) getCell(row, col).getCurrentState();
+  }
+
+  /**
+   * Creates a grid of RuleTableCell objects based on the provided parserGrid. (Empty)
+   *
+   * @param rows    the rows in the grid
+   * @param columns the columns in the grid
+   */
+  protected RuleTableCell[][] createCellGridStructure(int rows, int columns) {
+    return new RuleTableCell[rows][columns];
+  }
+
+  /**
+   * Creates a new RuleTableCell in the specified row, col position in the grid with the specified
+   * state.
+   *
+   * @param row   the current row
+   * @param col   the current column
+   * @param state the original cell state
+   * @return RuleTableCell with set row, column, and state
+   */
+  protected RuleTableCell createCell(int row, int col, int state) {
+    return new RuleTableCell(row, col, state);
+  }
+
+  public void updateParams(Map<String, Double> newParams) {
+    return;
+  }
+
+  public List<String> getParamList() {
+    return null;
+  }
+
+  public int getTotalStates() {
+    return numStates;
+  }
+}
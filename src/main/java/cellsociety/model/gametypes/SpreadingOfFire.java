@@ -3,6 +3,7 @@ package cellsociety.model.gametypes;
 import cellsociety.model.cells.SpreadingOfFireCell;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -104,6 +105,14 @@ public class SpreadingOfFire extends GameType<SpreadingOfFireCell> {
     return params;
   }
 
+  @Override
+  public Map<String, Double> getParamValues() {
+    Map<String, Double> values = new HashMap<>();
+    values.put("probCatch", probCatch);
+    values.put("probFillTree", probGrow);
+    return values;
+  }
+
   public void updateParams(Map<String, Double> newParams) {
     for (Map.Entry<String, Double> e : newParams.entrySet()) {
       if (e.getKey().equals("probFillTree")) {
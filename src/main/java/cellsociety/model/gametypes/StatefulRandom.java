@@ -0,0 +1,61 @@
+package cellsociety.model.gametypes;
+
+import java.util.Random;
+
+/**
+ * A Random whose position in its sequence can be read and restored, so that a saved simulation
+ * continues with exactly the numbers it would have drawn.  It uses the same linear congruential
+ * generator as java.util.Random, so a given seed produces the same sequence as before.
+ * <p>
+ * Like the games that use it, it is meant to be used from one thread at a time.  The second value
+ * cached by nextGaussian is not part of the state.
+ */
+public class StatefulRandom extends Random {
+
+  private static final long serialVersionUID = 1L;
+  private static final long MULTIPLIER = 0x5DEECE66DL;
+  private static final long ADDEND = 0xBL;
+  private static final long MASK = (1L << 48) - 1;
+
+  // no initializer: Random's constructor sets it through setSeed before field initializers run
+  private long state;
+
+  /**
+   * Constructor for a generator with the given seed
+   *
+   * @param seed the initial seed
+   */
+  public StatefulRandom(long seed) {
+    super(seed);
+  }
+
+  @Override
+  public synchronized void setSeed(long seed) {
+    super.setSeed(seed);
+    state = (seed ^ MULTIPLIER) & MASK;
+  }
+
+  @Override
+  protected int next(int bits) {
+    state = (state * MULTIPLIER + ADDEND) & MASK;
+    return (int) (state >>> (48 - bits));
+  }
+
+  /**
+   * Getter for the internal state of the generator
+   *
+   * @return the 48 bit state
+   */
+  public long getState() {
+    return state;
+  }
+
+  /**
+   * Moves the generator to a state returned by getState
+   *
+   * @param state the 48 bit state
+   */
+  public void setState(long state) {
+    this.state = state & MASK;
+  }
+}
@@ -0,0 +1,19 @@
+package cellsociety.model.gametypes;
+
+/**
+ * This interface computes the next states of a band of rows of a grid stored as a flat array of
+ * states (row * columns + column).  Implementations only read the current states and only write
+ * the given rows of the next states, so bands can be computed in parallel.
+ */
+public interface StepKernel {
+
+  /**
+   * Computes the next state of every cell in rows firstRow (inclusive) to lastRow (exclusive).
+   *
+   * @param states     current states of the whole grid
+   * @param nextStates array the next states are written to
+   * @param firstRow   first row of the band
+   * @param lastRow    row after the last row of the band
+   */
+  void stepRows(byte[] states, byte[] nextStates, int firstRow, int lastRow);
+}
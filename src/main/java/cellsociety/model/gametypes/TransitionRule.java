@@ -0,0 +1,58 @@
+package cellsociety.model.gametypes;
+
+/**
+ * This class represents one rule of a rule table simulation: a cell in a given state, whose
+ * neighborhood contains an allowed number of cells of each state, moves to a new state.
+ */
+public class TransitionRule {
+
+  public static final int ANY_STATE = -1;
+
+  private final int state;
+  private final int nextState;
+  private final boolean[][] allowedCounts;
+
+  /**
+   * Constructor for a transition rule
+   *
+   * @param state         state the cell must be in, or ANY_STATE
+   * @param nextState     state the cell moves to
+   * @param allowedCounts for every state, which neighbor counts of that state are allowed (indexed
+   *                      by count), or null if any count is allowed
+   */
+  public TransitionRule(int state, int nextState, boolean[][] allowedCounts) {
+    this.state = state;
+    this.nextState = nextState;
+    this.allowedCounts = allowedCounts;
+  }
+
+  /**
+   * Method to check if the rule applies to a cell
+   *
+   * @param currentState state of the cell
+   * @param counts       number of neighbors in each state
+   * @return True if the rule applies, false if not
+   */
+  public boolean matches(int currentState, int[] counts) {
+    if (state != ANY_STATE && state != currentState) {
+      return false;
+    }
+    for (int countedState = 0; countedState < counts.length; countedState++) {
+      boolean[] allowed = (countedState < allowedCounts.length) ? allowedCounts[countedState]
+          : null;
+      if (allowed != null && (counts[countedState] >= allowed.length
+          || !allowed[counts[countedState]])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int getState() {
+    return state;
+  }
+
+  public int getNextState() {
+    return nextState;
+  }
+}
@@ -0,0 +1,135 @@
+package cellsociety.model.gametypes;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is a list of transition rules compiled into one flat lookup table.  A neighborhood is
+ * encoded as a single number: every neighbor in state s adds radix^(s - 1) to it, where the radix
+ * is one more than the neighborhood size, so the number holds the count of every non-zero state as
+ * a digit (the count of state 0 is whatever is left).  The next state of a cell is then
+ * table[state * stride + neighborhood], and the rules are only evaluated once, at load time.
+ */
+public class TransitionTable {
+
+  public static final int MAX_TABLE_SIZE = 1 << 24;
+
+  private final int numStates;
+  private final int neighborhoodSize;
+  private final int stride;
+  private final int[] weights;
+  private final byte[] table;
+
+  /**
+   * Compiles the rules into a table.  For every state and neighborhood, the first matching rule
+   * gives the next state; if no rule matches, the cell keeps its state.
+   *
+   * @param numStates        number of states, at least 1
+   * @param neighborhoodSize number of neighbors of a cell
+   * @param rules            rules in order of priority
+   * @throws IllegalArgumentException if a rule uses an unknown state or the table would be too big
+   */
+  public TransitionTable(int numStates, int neighborhoodSize, List<TransitionRule> rules) {
+    if (numStates < 1 || numStates > Byte.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid number of states: " + numStates);
+    }
+    this.numStates = numStates;
+    this.neighborhoodSize = neighborhoodSize;
+    int radix = neighborhoodSize + 1;
+
+    weights = new int[numStates];
+    long size = 1;
+    for (int state = 1; state < numStates; state++) {
+      weights[state] = (int) size;
+      size *= radix;
+      if (size * numStates > MAX_TABLE_SIZE) {
+        throw new IllegalArgumentException("Rule table too large for " + numStates + " states");
+      }
+    }
+    stride = (int) size;
+    table = new byte[stride * numStates];
+
+    for (TransitionRule rule : rules) {
+      if (rule.getState() >= numStates || rule.getNextState() < 0
+          || rule.getNextState() >= numStates) {
+        throw new IllegalArgumentException("Rule uses a state outside 0 to " + (numStates - 1));
+      }
+    }
+    compile(rules, radix);
+  }
+
+  private void compile(List<TransitionRule> rules, int radix) {
+    int[] counts = new int[numStates];
+    for (int neighborhood = 0; neighborhood < stride; neighborhood++) {
+      int rest = neighborhood;
+      int total = 0;
+      for (int state = 1; state < numStates; state++) {
+        counts[state] = rest % radix;
+        rest /= radix;
+        total += counts[state];
+      }
+      counts[0] = neighborhoodSize - total;
+
+      for (int state = 0; state < numStates; state++) {
+        int next = state;
+        if (total <= neighborhoodSize) {
+          for (TransitionRule rule : rules) {
+            if (rule.matches(state, counts)) {
+              next = rule.getNextState();
+              break;
+            }
+          }
+        }
+        table[state * stride + neighborhood] = (byte) next;
+      }
+    }
+  }
+
+  /**
+   * Getter for the amount a neighbor in the given state adds to the neighborhood number
+   *
+   * @param state state of the neighbor
+   * @return weight of the state
+   */
+  public int getWeight(int state) {
+    return weights[state];
+  }
+
+  /**
+   * Looks up the next state of a cell
+   *
+   * @param state        current state of the cell
+   * @param neighborhood sum of the weights of all neighbors
+   * @return next state of the cell
+   */
+  public int next(int state, int neighborhood) {
+    return table[state * stride + neighborhood];
+  }
+
+  /**
+   * Getter for the distance between the table entries of two consecutive states
+   *
+   * @return number of neighborhoods per state
+   */
+  public int getStride() {
+    return stride;
+  }
+
+  /**
+   * Returns a copy of the flat table, for code that looks up next states without going through
+   * this class.
+   *
+   * @return table indexed by state * stride + neighborhood
+   */
+  public byte[] toArray() {
+    return Arrays.copyOf(table, table.length);
+  }
+
+  public int getNumStates() {
+    return numStates;
+  }
+
+  public int getNeighborhoodSize() {
+    return neighborhoodSize;
+  }
+}
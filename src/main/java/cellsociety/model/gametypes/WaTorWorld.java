@@ -3,8 +3,11 @@ package cellsociety.model.gametypes;
 import cellsociety.model.cells.WaTorWorldCell;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 /**
  * This is a child of the GameType class.  It represents the Wa-Tor World simulation.  It implements
@@ -20,7 +23,12 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
   private int startingEnergy;
   private int fishEnergy;
   private boolean sharksHaveMoved;
+  private boolean parallelUpdate;
+  private int[][] colorClasses;
+  private int[] rowBlockStarts;
+  private int[] colBlockStarts;
   public static final int TOTAL_STATES = 3;
+  public static final int PARALLEL_BLOCK_SIZE = 16;
   private final List<String> params = new ArrayList<>(Arrays.asList("reproductionAgeLimit",
       "startingEnergy", "fishEnergy"));
 
@@ -36,7 +44,7 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
     this.startingEnergy = startingEnergy;
     this.fishEnergy = fishEnergy;
     setNumGameStateIterations(2);
-    sharksHaveMoved = false;
+    resetAuxiliaryState();
   }
 
 
@@ -72,19 +80,166 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
    */
   public void setCellNextState(WaTorWorldCell currCell) {
     if (sharksHaveMoved) {
-      fishMovement(currCell);
+      fishMovement(currCell, random);
     } else {
-      sharkMovement(currCell);
+      sharkMovement(currCell, random);
     }
     setSharkMovementStatus(currCell);
   }
 
+  /**
+   * Turns the parallel update mode on or off.  In parallel mode the grid is split into blocks of
+   * cells that are grouped into color classes.  Two blocks of the same class never touch each
+   * other, so none of their agents can read or write the same cell.  The classes are processed one
+   * after another and the blocks of a class are processed in parallel, each with its own random
+   * stream, so results only depend on the seed.
+   *
+   * @param parallel true to update the grid in parallel, false for the serial sweep
+   */
+  public void setParallelUpdate(boolean parallel) {
+    this.parallelUpdate = parallel;
+    colorClasses = null;
+  }
+
+  /**
+   * Method to set the edge type of the grid.  The color classes depend on it, so they are rebuilt.
+   *
+   * @param edgeType string representing the edge type
+   */
+  @Override
+  public void setEdgeType(String edgeType) {
+    super.setEdgeType(edgeType);
+    colorClasses = null;
+  }
+
+  /**
+   * Performs the shark movement (first iteration) or the fish movement (second iteration) of a
+   * chronon.  In parallel mode the blocks of each color class are processed concurrently.
+   *
+   * @param iteration index of the iteration within the current generation
+   */
+  @Override
+  protected void updateIteration(int iteration) {
+    if (!parallelUpdate) {
+      super.updateIteration(iteration);
+      return;
+    }
+    if (colorClasses == null) {
+      colorClasses = buildColorClasses();
+    }
+    boolean sharkPhase = (iteration == 0);
+    int numBlocks = rowBlockStarts.length * colBlockStarts.length;
+
+    for (int[] colorClass : colorClasses) {
+      IntStream.range(0, colorClass.length).parallel().forEach(i -> {
+        int block = colorClass[i];
+        Random blockRandom = createStreamRandom((long) iteration * numBlocks + block);
+        updateBlock(block, sharkPhase, blockRandom);
+      });
+    }
+
+    for (int currRow = 0; currRow < getNumRows(); currRow++) {
+      for (int currCol = 0; currCol < getNumCols(); currCol++) {
+        if (getCell(currRow, currCol).switchState()) {
+          markChanged(currRow, currCol);
+        }
+      }
+    }
+  }
+
+  /**
+   * Updates every cell of one block in the same order as the serial sweep.
+   *
+   * @param block       index of the block
+   * @param sharkPhase  true if sharks are moving, false if fish are moving
+   * @param blockRandom random stream of the block
+   */
+  private void updateBlock(int block, boolean sharkPhase, Random blockRandom) {
+    int blockRow = block / colBlockStarts.length;
+    int blockCol = block % colBlockStarts.length;
+    int firstRow = rowBlockStarts[blockRow];
+    int lastRow = blockEnd(rowBlockStarts, blockRow, getNumRows());
+    int firstCol = colBlockStarts[blockCol];
+    int lastCol = blockEnd(colBlockStarts, blockCol, getNumCols());
+
+    for (int currRow = lastRow - 1; currRow >= firstRow; currRow--) {
+      for (int currCol = firstCol; currCol < lastCol; currCol++) {
+        if (sharkPhase) {
+          sharkMovement(getCell(currRow, currCol), blockRandom);
+        } else {
+          fishMovement(getCell(currRow, currCol), blockRandom);
+        }
+      }
+    }
+  }
+
+  /**
+   * Splits the grid into blocks and groups them into color classes.  Blocks are at least two cells
+   * wide, so blocks of the same color are always separated by a whole block and an agent (which
+   * only reaches its direct neighbors) can never reach a cell that another block of its class
+   * reaches.  With wrapped edges an odd number of blocks gets a third color for the last block so
+   * the first and last blocks never share a color.
+   *
+   * @return the blocks of each color class
+   */
+  private int[][] buildColorClasses() {
+    rowBlockStarts = blockStarts(getNumRows());
+    colBlockStarts = blockStarts(getNumCols());
+    int[] rowColors = blockColors(rowBlockStarts.length);
+    int[] colColors = blockColors(colBlockStarts.length);
+
+    List<List<Integer>> classes = new ArrayList<>();
+    for (int i = 0; i < 9; i++) {
+      classes.add(new ArrayList<>());
+    }
+    for (int blockRow = 0; blockRow < rowBlockStarts.length; blockRow++) {
+      for (int blockCol = 0; blockCol < colBlockStarts.length; blockCol++) {
+        int color = rowColors[blockRow] * 3 + colColors[blockCol];
+        classes.get(color).add(blockRow * colBlockStarts.length + blockCol);
+      }
+    }
+    return classes.stream().filter(c -> !c.isEmpty())
+        .map(c -> c.stream().mapToInt(Integer::intValue).toArray())
+        .toArray(int[][]::new);
+  }
+
+  private int[] blockStarts(int length) {
+    int numBlocks = (length + PARALLEL_BLOCK_SIZE - 1) / PARALLEL_BLOCK_SIZE;
+    if (numBlocks > 1 && length - (numBlocks - 1) * PARALLEL_BLOCK_SIZE < 2) {
+      numBlocks--;
+    }
+    int[] starts = new int[numBlocks];
+    for (int i = 0; i < numBlocks; i++) {
+      starts[i] = i * PARALLEL_BLOCK_SIZE;
+    }
+    return starts;
+  }
+
+  private int blockEnd(int[] starts, int index, int length) {
+    if (index == starts.length - 1) {
+      return length;
+    }
+    return starts[index + 1];
+  }
+
+  private int[] blockColors(int numBlocks) {
+    int[] colors = new int[numBlocks];
+    for (int i = 0; i < numBlocks; i++) {
+      colors[i] = i % 2;
+    }
+    if (edgeType == EdgeType.WRAPPED && numBlocks > 1 && numBlocks % 2 == 1) {
+      colors[numBlocks - 1] = 2;
+    }
+    return colors;
+  }
+
   /**
    * Performs movement for a shark in the WaTorWorld simulation.
    *
    * @param currCell the current WaTorWorldCell
+   * @param random   random generator used for the movement
    */
-  private void sharkMovement(WaTorWorldCell currCell) {
+  private void sharkMovement(WaTorWorldCell currCell, Random random) {
     if (currCell.getCurrentState() == WaTorWorldCell.SHARK) {
       int fishNeighbors = countUpAndDownNeighbors(currCell, WaTorWorldCell.FISH);
       int sharkNeighbors = countUpAndDownNeighbors(currCell, WaTorWorldCell.SHARK);
@@ -92,12 +247,12 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
       if (currCell.getEnergy() == 0) {
         currCell.setNextStateEmpty();
       } else if (fishNeighbors > 0) {
-        eatFish(currCell);
+        eatFish(currCell, random);
       } else if (surrounded(currCell, sharkNeighbors)) {
         currCell.setNextStateShark(currCell.getReproductionAge() + 1,
             currCell.getEnergy() - 1);
       } else {
-        moveRandomShark(currCell);
+        moveRandomShark(currCell, random);
       }
     } else if (currCell.getCurrentState() == WaTorWorldCell.EMPTY && currCell.nextStateNull()) {
       currCell.setNextStateEmpty();
@@ -110,8 +265,9 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
    * Performs movement for a fish in the WaTorWorld simulation.
    *
    * @param currCell the current WaTorWorldCell
+   * @param random   random generator used for the movement
    */
-  private void fishMovement(WaTorWorldCell currCell) {
+  private void fishMovement(WaTorWorldCell currCell, Random random) {
     if (currCell.getCurrentState() == WaTorWorldCell.FISH) {
       int occupiedNeighbors = 0;
       occupiedNeighbors += countUpAndDownNeighbors(currCell, WaTorWorldCell.FISH);
@@ -120,7 +276,7 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
       if (surrounded(currCell, occupiedNeighbors)) {
         currCell.setNextStateFish(currCell.getReproductionAge() + 1);
       } else {
-        moveRandomFish(currCell);
+        moveRandomFish(currCell, random);
       }
     } else if (currCell.getCurrentState() == WaTorWorldCell.EMPTY && currCell.nextStateNull()) {
       currCell.setNextStateEmpty();
@@ -133,8 +289,9 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
    * Moves the shark to a random empty neighbor or updates its state.
    *
    * @param currCell the current WaTorWorldCell
+   * @param random   random generator used to pick the neighbor
    */
-  private void moveRandomShark(WaTorWorldCell currCell) {
+  private void moveRandomShark(WaTorWorldCell currCell, Random random) {
     List<WaTorWorldCell> emptyCells = getEmptyNeighbors(currCell);
     int size = emptyCells.size();
 
@@ -160,8 +317,9 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
    * Moves the fish to a random empty neighbor or updates its state.
    *
    * @param currCell the current WaTorWorldCell
+   * @param random   random generator used to pick the neighbor
    */
-  private void moveRandomFish(WaTorWorldCell currCell) {
+  private void moveRandomFish(WaTorWorldCell currCell, Random random) {
     List<WaTorWorldCell> emptyCells = getEmptyNeighbors(currCell);
     int size = emptyCells.size();
 
@@ -184,8 +342,9 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
    * Eats a fish neighboring the shark cell.
    *
    * @param currCell the current WaTorWorldCell representing the shark
+   * @param random   random generator used to pick the fish
    */
-  private void eatFish(WaTorWorldCell currCell) {
+  private void eatFish(WaTorWorldCell currCell, Random random) {
     List<WaTorWorldCell> fishCells = getFishNeighbors(currCell);
     int size = fishCells.size();
     if (size == 0) {
@@ -210,61 +369,59 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
     if (edgeType == EdgeType.WRAPPED) {
       return getFishNeighborsWrapped(currCell);
     }
-    WaTorWorldCell[][] grid = this.getGrid();
     List<WaTorWorldCell> fishNeighbors = new ArrayList<>();
 
     int row = currCell.getRowPos();
     int col = currCell.getColPos();
 
-    if (row > 0 && grid[row - 1][col].fishAlive()) {
-      fishNeighbors.add(grid[row - 1][col]);
+    if (row > 0 && getCell(row - 1, col).fishAlive()) {
+      fishNeighbors.add(getCell(row - 1, col));
     }
 
-    if (row < grid.length - 1 && grid[row + 1][col].fishAlive()) {
-      fishNeighbors.add(grid[row + 1][col]);
+    if (row < getNumRows() - 1 && getCell(row + 1, col).fishAlive()) {
+      fishNeighbors.add(getCell(row + 1, col));
     }
 
-    if (col > 0 && grid[row][col - 1].fishAlive()) {
-      fishNeighbors.add(grid[row][col - 1]);
+    if (col > 0 && getCell(row, col - 1).fishAlive()) {
+      fishNeighbors.add(getCell(row, col - 1));
     }
 
-    if (col < grid[0].length - 1 && grid[row][col + 1].fishAlive()) {
-      fishNeighbors.add(grid[row][col + 1]);
+    if (col < getNumCols() - 1 && getCell(row, col + 1).fishAlive()) {
+      fishNeighbors.add(getCell(row, col + 1));
     }
     return fishNeighbors;
   }
 
   private List<WaTorWorldCell> getFishNeighborsWrapped(WaTorWorldCell currCell) {
-    WaTorWorldCell[][] grid = this.getGrid();
     List<WaTorWorldCell> fishNeighbors = new ArrayList<>();
 
     int row = currCell.getRowPos();
     int col = currCell.getColPos();
-    int numRows = grid.length;
-    int numCols = grid[0].length;
+    int numRows = getNumRows();
+    int numCols = getNumCols();
 
     // Check north neighbor
     int northRow = (row - 1 + numRows) % numRows;
-    if (grid[northRow][col].fishAlive()) {
-      fishNeighbors.add(grid[northRow][col]);
+    if (getCell(northRow, col).fishAlive()) {
+      fishNeighbors.add(getCell(northRow, col));
     }
 
     // Check south neighbor
     int southRow = (row + 1) % numRows;
-    if (grid[southRow][col].fishAlive()) {
-      fishNeighbors.add(grid[southRow][col]);
+    if (getCell(southRow, col).fishAlive()) {
+      fishNeighbors.add(getCell(southRow, col));
     }
 
     // Check west neighbor
     int westCol = (col - 1 + numCols) % numCols;
-    if (grid[row][westCol].fishAlive()) {
-      fishNeighbors.add(grid[row][westCol]);
+    if (getCell(row, westCol).fishAlive()) {
+      fishNeighbors.add(getCell(row, westCol));
     }
 
     // Check east neighbor
     int eastCol = (col + 1) % numCols;
-    if (grid[row][eastCol].fishAlive()) {
-      fishNeighbors.add(grid[row][eastCol]);
+    if (getCell(row, eastCol).fishAlive()) {
+      fishNeighbors.add(getCell(row, eastCol));
     }
 
     return fishNeighbors;
@@ -281,37 +438,35 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
     if (edgeType == EdgeType.WRAPPED) {
       return getEmptyNeighborsWrapped(currCell);
     }
-    WaTorWorldCell[][] grid = this.getGrid();
     List<WaTorWorldCell> emptyNeighbors = new ArrayList<>();
 
     int row = currCell.getRowPos();
     int col = currCell.getColPos();
 
-    if (row > 0 && grid[row - 1][col].isAvailable(WaTorWorldCell.EMPTY)) {
-      emptyNeighbors.add(grid[row - 1][col]);
+    if (row > 0 && getCell(row - 1, col).isAvailable(WaTorWorldCell.EMPTY)) {
+      emptyNeighbors.add(getCell(row - 1, col));
     }
 
-    if (row < grid.length - 1 && grid[row + 1][col].isAvailable(WaTorWorldCell.EMPTY)) {
-      emptyNeighbors.add(grid[row + 1][col]);
+    if (row < getNumRows() - 1 && getCell(row + 1, col).isAvailable(WaTorWorldCell.EMPTY)) {
+      emptyNeighbors.add(getCell(row + 1, col));
     }
 
-    if (col > 0 && grid[row][col - 1].isAvailable(WaTorWorldCell.EMPTY)) {
-      emptyNeighbors.add(grid[row][col - 1]);
+    if (col > 0 && getCell(row, col - 1).isAvailable(WaTorWorldCell.EMPTY)) {
+      emptyNeighbors.add(getCell(row, col - 1));
     }
 
-    if (col < grid[0].length - 1 && grid[row][col + 1].isAvailable(WaTorWorldCell.EMPTY)) {
-      emptyNeighbors.add(grid[row][col + 1]);
+    if (col < getNumCols() - 1 && getCell(row, col + 1).isAvailable(WaTorWorldCell.EMPTY)) {
+      emptyNeighbors.add(getCell(row, col + 1));
     }
 
     return emptyNeighbors;
   }
 
   private List<WaTorWorldCell> getEmptyNeighborsWrapped(WaTorWorldCell currCell) {
-    WaTorWorldCell[][] grid = this.getGrid();
     List<WaTorWorldCell> emptyNeighbors = new ArrayList<>();
 
-    int numRows = grid.length;
-    int numCols = grid[0].length;
+    int numRows = getNumRows();
+    int numCols = getNumCols();
 
     int row = currCell.getRowPos();
     int col = currCell.getColPos();
@@ -325,17 +480,17 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
     int colRight = (col + 1) % numCols;
 
     // Check for empty neighbors
-    if (grid[rowUp][col].isAvailable(WaTorWorldCell.EMPTY)) {
-      emptyNeighbors.add(grid[rowUp][col]);
+    if (getCell(rowUp, col).isAvailable(WaTorWorldCell.EMPTY)) {
+      emptyNeighbors.add(getCell(rowUp, col));
     }
-    if (grid[rowDown][col].isAvailable(WaTorWorldCell.EMPTY)) {
-      emptyNeighbors.add(grid[rowDown][col]);
+    if (getCell(rowDown, col).isAvailable(WaTorWorldCell.EMPTY)) {
+      emptyNeighbors.add(getCell(rowDown, col));
     }
-    if (grid[row][colLeft].isAvailable(WaTorWorldCell.EMPTY)) {
-      emptyNeighbors.add(grid[row][colLeft]);
+    if (getCell(row, colLeft).isAvailable(WaTorWorldCell.EMPTY)) {
+      emptyNeighbors.add(getCell(row, colLeft));
     }
-    if (grid[row][colRight].isAvailable(WaTorWorldCell.EMPTY)) {
-      emptyNeighbors.add(grid[row][colRight]);
+    if (getCell(row, colRight).isAvailable(WaTorWorldCell.EMPTY)) {
+      emptyNeighbors.add(getCell(row, colRight));
     }
 
     return emptyNeighbors;
@@ -347,9 +502,8 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
    * @param currCell the current WaTorWorldCell
    */
   private void setSharkMovementStatus(WaTorWorldCell currCell) {
-    WaTorWorldCell[][] grid = this.getGrid();
-    if (currCell.getRowPos() == grid.length - 1
-        && currCell.getColPos() == grid[0].length - 1) {
+    if (currCell.getRowPos() == getNumRows() - 1
+        && currCell.getColPos() == getNumCols() - 1) {
       sharksHaveMoved = !sharksHaveMoved;
     }
   }
@@ -372,26 +526,20 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
   }
 
   /**
-   * Creates a grid of WaTorWorldCell objects based on the provided parserGrid.
-   *
-   * @param parserGrid the 2D array representing cell states
+   * Resets the reproduction age of every fish and shark and gives every shark its starting energy.
+   * The sharks move first again.
    */
   @Override
-  public void createCellGrid(int[][] parserGrid) {
-    int state;
-    setGrid(createCellGridStructure(parserGrid.length, parserGrid[0].length));
-    WaTorWorldCell[][] grid = getGrid();
-
-    for (int currRow = 0; currRow < grid.length; currRow++) {
-      for (int currCol = 0; currCol < grid[0].length; currCol++) {
-        state = parserGrid[currRow][currCol];
-        setGridCell(currRow, currCol, createCell(currRow, currCol, state));
-        grid = getGrid();
-        if (grid[currRow][currCol].getCurrentState() == WaTorWorldCell.FISH) {
-          (grid[currRow][currCol]).resetReproductionAge();
-        } else if (grid[currRow][currCol].getCurrentState() == WaTorWorldCell.SHARK) {
-          (grid[currRow][currCol]).resetReproductionAge();
-          (grid[currRow][currCol]).resetStartingEnergy(startingEnergy);
+  protected void resetAuxiliaryState() {
+    sharksHaveMoved = false;
+    for (int currRow = 0; currRow < getNumRows(); currRow++) {
+      for (int currCol = 0; currCol < getNumCols(); currCol++) {
+        WaTorWorldCell cell = getCell(currRow, currCol);
+        if (cell.getCurrentState() == WaTorWorldCell.FISH) {
+          cell.resetReproductionAge();
+        } else if (cell.getCurrentState() == WaTorWorldCell.SHARK) {
+          cell.resetReproductionAge();
+          cell.resetStartingEnergy(startingEnergy);
         }
       }
     }
@@ -436,6 +584,46 @@ public class WaTorWorld extends GameType<WaTorWorldCell> {
     return params;
   }
 
+  @Override
+  public Map<String, Double> getParamValues() {
+    Map<String, Double> values = new HashMap<>();
+    values.put("reproductionAgeLimit", (double) reproductionAgeLimit);
+    values.put("startingEnergy", (double) startingEnergy);
+    values.put("fishEnergy", (double) fishEnergy);
+    return values;
+  }
+
+  /**
+   * Writes the reproduction age and the energy of every cell, indexed by row * columns + column.
+   */
+  @Override
+  public void copyExtraPlanes(Map<String, int[]> planes) {
+    int cols = getNumCols();
+    int[] ages = reusePlane(planes, "reproductionAge", getNumRows() * cols);
+    int[] energies = reusePlane(planes, "energy", ages.length);
+    for (int row = 0; row < getNumRows(); row++) {
+      for (int col = 0; col < cols; col++) {
+        ages[row * cols + col] = getCell(row, col).getReproductionAge();
+        energies[row * cols + col] = getCell(row, col).getEnergy();
+      }
+    }
+  }
+
+  @Override
+  public void setExtraPlanes(Map<String, int[]> planes) {
+    int cols = getNumCols();
+    int[] ages = getPlane(planes, "reproductionAge", getNumRows() * cols);
+    int[] energies = getPlane(planes, "energy", getNumRows() * cols);
+    if (ages == null || energies == null) {
+      return;
+    }
+    for (int row = 0; row < getNumRows(); row++) {
+      for (int col = 0; col < cols; col++) {
+        getCell(row, col).setAgeAndEnergy(ages[row * cols + col], energies[row * cols + col]);
+      }
+    }
+  }
+
   public int getTotalStates() {
     return TOTAL_STATES;
   }
@@ -1,67 +1,321 @@
 package cellsociety.view;
 
+import cellsociety.config.Checkpointer;
 import cellsociety.config.FileManagement;
+import cellsociety.config.History;
+import cellsociety.config.InvalidConfigurationException;
 import cellsociety.config.Parser;
+import cellsociety.config.TrajectoryPlayer;
+import cellsociety.config.TrajectoryRecorder;
 import cellsociety.model.cells.Cell;
+import cellsociety.model.gametypes.CellChanges;
 import cellsociety.model.gametypes.GameType;
 import cellsociety.view.assets.Util;
-import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import javafx.animation.Animation.Status;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 
+/**
+ * Runs one simulation and its GUI.  The game is only changed on the thread of its SimulationLoop:
+ * the buttons, the slider and clicks on the grid submit commands to it, and the GUI repaints the
+ * cells of the latest generation it published on every pulse of an AnimationTimer.
+ */
 public class GamePlay {
 
-  private final Timeline timeline;
+  private final SimulationLoop loop;
+  private final AnimationTimer renderer;
   private final GameType<Cell> game;
   private final Parser parser;
   private final Gui design;
   private final Stage stage;
   private final FileManagement manager;
+  private Checkpointer checkpointer;
+  private final TrajectoryPlayer replay;
+  private History history;
+  private TrajectoryRecorder recorder;
+  // the frame of the replayed recording to show next; only used on the simulation thread
+  private int[][] replayFrame;
+  // the changes the history took from the game, which the GUI is given on the next publish
+  private final CellChanges historyChanges;
+  private final CellChanges unpublished;
 
   private final Scene scene;
 
   /**
-   * Constructs a GamePlay instance with the provided configuration file, stage, and file manager.
+   * Constructs a GamePlay instance for a configuration that was already read, with the game it
+   * created, and builds its GUI.  Nothing is shown yet, so this can run on a background thread;
+   * start runs the simulation once it is shown.
    *
-   * @param configFile   The configuration file defining the initial state of the simulation.
+   * @param parser       The parser of the configuration file.
+   * @param game         The game created by the parser, at its initial state.
    * @param primaryStage The primary JavaFX stage to display the simulation GUI.
    * @param manager      The file manager responsible for handling file operations.
    * @param factor       The ratio by which GUI simulations should be resized depending on how many
    *                     simulations are allowed to be run at once
    */
-  public GamePlay(File configFile, Stage primaryStage, FileManagement manager, int factor) {
+  public GamePlay(Parser parser, GameType<Cell> game, Stage primaryStage, FileManagement manager,
+      int factor) {
     this.stage = primaryStage;
     this.manager = manager;
-    parser = new Parser(configFile);
-    game = parser.getGameTypeFromName();
-    game.setEdgeType(parser.getEdgeType());
-    game.setArrangement(parser.getArrangement());
+    this.parser = parser;
+    this.game = game;
+    replay = parser.getReplay();
     List<String> params = new ArrayList<>(Arrays.asList(parser.getTitle(),  parser.getAuthor(),
         parser.getDescription(), parser.getTypeName()));
     design = new Gui(parser.getCells(), params,
         this, factor, parser.getStateColors());
 
     this.scene = design.getScene();
+    historyChanges = new CellChanges(game.getNumRows(), game.getNumCols());
+    unpublished = new CellChanges(game.getNumRows(), game.getNumCols());
+    loop = new SimulationLoop(game.getNumRows(), game.getNumCols(), this::step,
+        this::collectChanges);
+    renderer = new AnimationTimer() {
+      @Override
+      public void handle(long now) {
+        CellChanges changes = loop.takeFrame();
+        if (changes != null) {
+          showChanges(changes);
+        }
+      }
+    };
+  }
+
+  /**
+   * Starts the simulation once it is shown: creates the history, checkpoints and recording the
+   * configuration asks for, then starts the simulation thread, paused, and the renderer.  This runs
+   * on the JavaFX thread, where invalid elements of the configuration can be reported.
+   */
+  public void start() {
+    history = parser.createHistory();
+
+    // the game and the GUI already show the initial states
+    if (replay != null) {
+      seekReplay(replay.getFirstGeneration());
+    }
+    if (history != null) {
+      history.reset(game);
+    }
+    checkpointer = parser.createCheckpointer(game);
+    recorder = parser.createRecorder(game);
+    loop.setFrameBudget(parser.getTurboFrameBudget());
+    loop.start();
+    renderer.start();
+  }
+
+  /**
+   * Computes the next generation, or reads it when replaying a recording, and takes a checkpoint
+   * or records it if configured.  Runs on the simulation thread, which publishes the changes.
+   *
+   * @return false at the end of the recording
+   */
+  private boolean step() {
+    if (replay != null) {
+      replayFrame = nextReplayFrame();
+      if (replayFrame == null) {
+        flushRecorder();
+        return false;
+      }
+    } else {
+      game.advanceGeneration();
+      recordHistory();
+    }
+    if (checkpointer != null) {
+      checkpointer.afterStep();
+    }
+    if (recorder != null) {
+      // only recording needs a copy of the states
+      record((replay != null) ? replayFrame : game.createStateGrid());
+    }
+    return true;
+  }
+
+  /**
+   * Hands the cells that changed since the changes were last collected to the history, if there is
+   * one, and keeps them for the GUI.  Runs on the simulation thread after every step or edit.
+   */
+  private void recordHistory() {
+    if (history == null) {
+      return;
+    }
+    historyChanges.clear();
+    game.collectChanges(historyChanges);
+    history.afterChange(game, historyChanges);
+    unpublished.putAll(historyChanges);
+  }
 
-    timeline = new Timeline();
-    //default timeline
-    KeyFrame keyFrame = new KeyFrame(Duration.seconds(0), event -> {
-      int[][] updatedStates = game.updateGameState();
-      design.updateGrid(updatedStates, parser.getTypeName());
+  /**
+   * Adds the cells that changed since the last call to the changes the GUI is given: those the
+   * history took, those of the game, and all cells of a replayed frame, which the game does not
+   * compute.  Runs on the simulation thread whenever it publishes.
+   *
+   * @param changes the changes to add to
+   */
+  private void collectChanges(CellChanges changes) {
+    // the game changed its cells after the history took its changes
+    changes.putAll(unpublished);
+    unpublished.clear();
+    game.collectChanges(changes);
+    if (replayFrame != null) {
+      changes.putAll(replayFrame);
+      replayFrame = null;
+    }
+  }
+
+  /**
+   * Repaints the cells that changed since the generation the GUI showed before.  Runs on the
+   * JavaFX thread.
+   *
+   * @param changes the changed cells and their states
+   */
+  private void showChanges(CellChanges changes) {
+    design.updateCells(changes, parser.getTypeName());
+  }
+
+  /**
+   * Pauses the simulation and goes back one generation, if it is still in the history (or the
+   * recording, when replaying one).
+   */
+  public void stepBack() {
+    stopSimulation();
+    loop.submit(() -> {
+      if (replay != null) {
+        if (replay.getGeneration() > replay.getFirstGeneration()) {
+          replayFrame = seekReplay(replay.getGeneration() - 1);
+        }
+      } else if (history != null && history.canStepBack()) {
+        history.stepBack(game);
+      }
+      loop.publish();
     });
-    timeline.getKeyFrames().add(keyFrame);
-    timeline.setCycleCount(Timeline.INDEFINITE);
-    timeline.play();
+  }
 
-    resetGame();
+  /**
+   * Pauses the simulation and goes forward one generation.  Generations that were stepped back
+   * over are restored from the history; otherwise the next generation is computed.
+   */
+  public void stepForward() {
+    stopSimulation();
+    loop.submit(() -> {
+      if (history != null && history.canStepForward()) {
+        history.stepForward(game);
+        loop.publish();
+      } else if (step()) {
+        loop.publish();
+      }
+    });
+  }
+
+  /**
+   * Moves a cell to its next state, e.g. when the user clicks it, and shows the change.  The
+   * history records the click, so stepping back undoes it.
+   *
+   * @param row row of the cell
+   * @param col column of the cell
+   */
+  public void incrementCell(int row, int col) {
+    loop.submit(() -> {
+      game.incrementCell(row, col, game.getTotalStates());
+      if (replay == null) {
+        recordHistory();
+      }
+      loop.publish();
+    });
+  }
+
+  /**
+   * Changes parameters of the simulation between two generations.
+   *
+   * @param params new values by parameter name
+   */
+  public void updateParams(Map<String, Double> params) {
+    loop.submit(() -> game.updateParams(params));
+  }
+
+  /**
+   * Reads the game on the simulation thread between two generations, e.g. to copy its states for
+   * saving, so the result belongs to one generation.
+   *
+   * @param read reads the game
+   * @return the result of read, or its exception
+   */
+  public <R> CompletableFuture<R> readGame(Callable<R> read) {
+    CompletableFuture<R> result = new CompletableFuture<>();
+    loop.submit(() -> {
+      try {
+        result.complete(read.call());
+      } catch (Exception e) {
+        result.completeExceptionally(e);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Moves the replayed recording to a generation.
+   *
+   * @return the states of the generation, or null on an error
+   */
+  private int[][] seekReplay(long generation) {
+    try {
+      return replay.seek(generation);
+    } catch (InvalidConfigurationException e) {
+      showError(e);
+    } catch (IOException e) {
+      showError(new InvalidConfigurationException("Invalid_trajectory"));
+    }
+    return null;
+  }
+
+  // the error may come up on the simulation thread, but dialogs belong on the JavaFX thread
+  private static void showError(InvalidConfigurationException e) {
+    if (Platform.isFxApplicationThread()) {
+      Parser.showErrorDialog(e);
+    } else {
+      Platform.runLater(() -> Parser.showErrorDialog(e));
+    }
+  }
+
+  /**
+   * Reads the next frame of the replayed recording.
+   *
+   * @return the states of the next frame, or null at the end of the recording or on an error
+   */
+  private int[][] nextReplayFrame() {
+    try {
+      return replay.next();
+    } catch (InvalidConfigurationException e) {
+      showError(e);
+    } catch (IOException e) {
+      showError(new InvalidConfigurationException("Invalid_trajectory"));
+    }
+    return null;
+  }
+
+  /**
+   * Adds the states of the current generation to the recording, if there is one.  If it cannot be
+   * written, recording stops.
+   */
+  private void record(int[][] states) {
+    if (recorder == null) {
+      return;
+    }
+    try {
+      recorder.record(states, game.getGeneration());
+    } catch (IOException e) {
+      e.printStackTrace();
+      recorder = null;
+    }
   }
 
   /**
@@ -90,6 +344,9 @@ public class GamePlay {
   }
 
   /**
+   * Returns the game.  It changes on the simulation thread, so other threads should only read what
+   * stays the same while it runs, like its parameter names; see readGame and submit for the rest.
+   *
    * @return The game logic object representing the current game state and rules.
    */
   public GameType<Cell> getGame() {
@@ -97,55 +354,147 @@ public class GamePlay {
   }
 
   /**
-   * Sets up a timeline for updating the game state and GUI design at regular intervals.
+   * Starts updating the game state at regular intervals.
    *
    * @param seconds The time interval in seconds between each game update.
    */
-  public void updateTimeline(double seconds) {
-    timeline.stop();
-    timeline.getKeyFrames().clear();
-    KeyFrame newSpeed = new KeyFrame(Duration.seconds(seconds), event -> {
-      int[][] updatedStates = game.updateGameState();
-      design.updateGrid(updatedStates, parser.getTypeName());
-    });
-    timeline.getKeyFrames().add(newSpeed);
-    timeline.play();
+  public void startSimulation(double seconds) {
+    loop.play(seconds);
+  }
+
+  /**
+   * Changes the time between game updates, whether the simulation runs or not.
+   *
+   * @param seconds The time interval in seconds between each game update.
+   */
+  public void setStepDuration(double seconds) {
+    loop.setStepDuration(seconds);
+  }
+
+  /**
+   * Turns turbo mode on or off.  In turbo mode the game is updated as fast as it can be, ignoring
+   * the time between updates, and the GUI shows the latest generation on every frame.
+   *
+   * @param turbo whether to update the game as fast as possible
+   */
+  public void setTurbo(boolean turbo) {
+    loop.setTurbo(turbo);
   }
 
   /**
-   * Pauses the game simulation by stopping the timeline.
+   * Pauses the game simulation after the current generation and writes out what is recorded.
    */
   public void stopSimulation() {
-    if (timeline != null) {
-      timeline.pause();
+    loop.pause();
+    loop.submit(this::flushRecorder);
+  }
+
+  private void flushRecorder() {
+    if (recorder != null) {
+      try {
+        recorder.flush();
+      } catch (IOException e) {
+        e.printStackTrace();
+        recorder = null;
+      }
     }
   }
 
   /**
-   * Resets the game to its initial state and updates the GUI accordingly.
+   * Stops the simulation for good, e.g. when other simulations are loaded in its place: the
+   * renderer stops and the simulation thread ends once it waited for the last checkpoint and
+   * closed the recording it writes or replays.
+   */
+  public void close() {
+    renderer.stop();
+    loop.pause();
+    loop.submit(this::closeFiles);
+    loop.close();
+  }
+
+  /**
+   * Closes the checkpointer, the recorder and the replayed recording.  Runs on the simulation
+   * thread, after the last step that could use them.
+   */
+  private void closeFiles() {
+    try {
+      if (checkpointer != null) {
+        checkpointer.close();
+        checkpointer = null;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      if (recorder != null) {
+        recorder.close();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    recorder = null;
+    try {
+      if (replay != null) {
+        replay.close();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Resets the game to its initial state (the saved state for a snapshot, the first frame for a
+   * recording) and updates the GUI accordingly.  A randomized configuration keeps its first random
+   * grid unless it asks to reroll on reset.  A recording in progress starts over.
    */
   public void resetGame() {
+    loop.submit(() -> {
+      try {
+        restoreInitialState();
+      } catch (CompletionException e) {
+        // the configuration could not be read again
+        Platform.runLater(() -> Parser.showFatalError(e));
+      }
+    });
+  }
+
+  /**
+   * Puts the game and the GUI back to the initial states the parser holds.  This only copies the
+   * states parsed when the file was loaded, or draws a new random grid.  Runs on the simulation
+   * thread, like everything else that reads the configuration once the simulation started.
+   */
+  private void restoreInitialState() {
+    if (parser.rerollsOnReset()) {
+      parser.rerollCells();
+    }
+    int[][] initialStates = parser.getCells();
+
     // Reset the game to its initial state
-    game.resetGame(parser.getCells());
+    game.resetGame(initialStates);
+    parser.restoreSnapshot(game);
 
     // Update the GUI to reflect the reset state
-    design.updateGrid(parser.getCells(), parser.getTypeName());
+    if (replay != null) {
+      replayFrame = seekReplay(replay.getFirstGeneration());
+    }
+    loop.publish();
+    record(initialStates);
+    if (history != null) {
+      history.reset(game);
+    }
   }
 
   /**
-   * Stops the current simulation and loads a new configuration file for a new simulation.
+   * Stops the current simulation and loads a new configuration file for a new simulation in the
+   * background, see FileManagement.retrieveFile.
    */
   public void loadNewSimulation(FileManagement manager) {
     stopSimulation();
-    manager.retrieveFile(stage);
-
-    Scene mainScreen = Util.configureNewSimulation(manager);
+    manager.retrieveFile(stage, () -> {
+      Scene mainScreen = Util.configureNewSimulation(manager);
 
-    stage.setScene(mainScreen);
-    stage.show();
-  }
-
-  public boolean isRunning() {
-    return this.timeline.getStatus() == Status.RUNNING;
+      stage.setScene(mainScreen);
+      stage.show();
+    });
   }
 }
@@ -1,5 +1,6 @@
 package cellsociety.view;
 
+import cellsociety.model.gametypes.CellChanges;
 import cellsociety.view.assets.AboutBox;
 import cellsociety.view.assets.Grid;
 import cellsociety.view.assets.Util;
@@ -9,12 +10,11 @@ import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
-import javafx.scene.control.Button;
+import javafx.scene.control.ButtonBase;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
@@ -23,7 +23,7 @@ import javafx.stage.Screen;
 public class Gui {
 
   Scene scene;
-  GridPane matrix;
+  StackPane matrix;
   Grid grid;
   public static final int GUI_GRID_WIDTH = 200;
   public static final int TEXT_HEIGHT = 200;
@@ -66,13 +66,13 @@ public class Gui {
   }
 
   /**
-   * Wrapper for the update grid function on the Grid object.
+   * Wrapper for the update cells function on the Grid object, which only repaints changed cells.
    *
-   * @param stateGrid
-   * @param gameType
+   * @param changes  the cells that changed since the grid was last updated
+   * @param gameType the type of the simulation
    */
-  public void updateGrid(int[][] stateGrid, String gameType) {
-    this.grid.updateGrid(stateGrid, gameType);
+  public void updateCells(CellChanges changes, String gameType) {
+    this.grid.updateCells(changes, gameType);
   }
 
   /**
@@ -99,8 +99,8 @@ public class Gui {
   }
 
   private void setIdsForNodes(Node node) {
-    if (node instanceof Button) {
-      String buttonText = ((Button) node).getText();
+    if (node instanceof ButtonBase) {
+      String buttonText = ((ButtonBase) node).getText();
       (node).setId(buttonText);
     } else if (node instanceof TextField) {
       String promptText = ((TextField) node).getPromptText();
@@ -15,17 +15,17 @@ public class Main extends Application {
   @Override
   public void start(Stage primaryStage) {
     FileManagement manager = new FileManagement();
-    manager.retrieveFile(primaryStage);
+    manager.retrieveFile(primaryStage, () -> {
+      Scene screen = Util.configureNewSimulation(manager);
 
-    Scene screen = Util.configureNewSimulation(manager);
-
-    if (screen == null) {
-      primaryStage.close();
-    } else {
-      LanguageManager.updateLanguage(screen.getRoot());
-      primaryStage.setScene(screen);
-      primaryStage.show();
-    }
+      if (screen == null) {
+        primaryStage.close();
+      } else {
+        LanguageManager.updateLanguage(screen.getRoot());
+        primaryStage.setScene(screen);
+        primaryStage.show();
+      }
+    });
   }
 
   /**
@@ -0,0 +1,266 @@
+package cellsociety.view;
+
+import cellsociety.model.gametypes.CellChanges;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Runs a simulation on a thread of its own, so that slow generations hold up neither input nor
+ * painting on the JavaFX thread.
+ * <p>
+ * Everything that changes the game runs on the simulation thread: the steps themselves and the
+ * commands the GUI submits (start, stop, reset, speed changes, clicks...), which run between two
+ * steps in the order they were submitted.  A generation reaches the GUI as the cells that changed
+ * since the last generation the GUI took, through a triple buffer: the simulation thread copies
+ * them into its back buffer and swaps it with the middle one, and the GUI swaps the middle buffer
+ * with the one it shows whenever the middle one holds a newer generation.  Neither side waits for
+ * the other.  A generation the GUI had no time to show is overwritten, so its changes are kept and
+ * merged into the next one; the GUI never misses a change and nothing copies the whole grid.
+ * <p>
+ * In turbo mode the generations follow each other as fast as they can be computed, and only some
+ * of them are published: the latest one once the frame budget has passed since the last
+ * publication, or without a frame budget, whenever the GUI has taken the previous one.  Copying
+ * the changes then happens at most about once per frame the GUI shows.
+ */
+public class SimulationLoop {
+
+  // the middle buffer holds a generation the GUI has not taken yet
+  private static final int FRESH = 4;
+  private static final int INDEX = 3;
+
+  private final BooleanSupplier step;
+  private final Consumer<CellChanges> collectChanges;
+  private final BlockingQueue<Runnable> commands = new LinkedBlockingQueue<>();
+  private final Thread thread;
+
+  // only used on the simulation thread
+  private boolean running;
+  private boolean closed;
+  private long stepNanos;
+  private long nextStepNanos;
+  private boolean turbo;
+  private long frameBudgetNanos;
+  private long lastPublishNanos;
+  // turbo mode computed a generation it did not publish
+  private boolean unpublished;
+  // the changes since the last generation the GUI took
+  private final CellChanges pending;
+
+  private final CellChanges[] buffers = new CellChanges[3];
+  // written by the simulation thread
+  private int back = 0;
+  // shown by the GUI
+  private int front = 1;
+  // the latest published generation, and FRESH until the GUI takes it
+  private final AtomicInteger middle = new AtomicInteger(2);
+
+  /**
+   * Creates the loop; nothing runs until start is called.
+   *
+   * @param numRows        number of rows of the grid
+   * @param numCols        number of columns of the grid
+   * @param step           computes the next generation on the simulation thread, and returns false
+   *                       instead to pause, e.g. at the end of a recording
+   * @param collectChanges adds the cells that changed since its last call to a set of changes, on
+   *                       the simulation thread
+   */
+  public SimulationLoop(int numRows, int numCols, BooleanSupplier step,
+      Consumer<CellChanges> collectChanges) {
+    this.step = step;
+    this.collectChanges = collectChanges;
+    pending = new CellChanges(numRows, numCols);
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = new CellChanges(numRows, numCols);
+    }
+    thread = new Thread(this::run, "simulation");
+    thread.setDaemon(true);
+  }
+
+  /**
+   * Starts the simulation thread, paused.
+   */
+  public void start() {
+    thread.start();
+  }
+
+  /**
+   * Runs a command on the simulation thread after the commands submitted before it, between two
+   * steps.
+   *
+   * @param command the command, which may change the game and publish the changes
+   */
+  public void submit(Runnable command) {
+    commands.add(command);
+  }
+
+  /**
+   * Starts computing generations, one every given number of seconds.
+   *
+   * @param seconds the time between two generations
+   */
+  public void play(double seconds) {
+    submit(() -> {
+      setStepNanos(seconds);
+      running = true;
+    });
+  }
+
+  /**
+   * Changes the time between two generations.  The next generation comes that long after the
+   * change.
+   *
+   * @param seconds the time between two generations
+   */
+  public void setStepDuration(double seconds) {
+    submit(() -> setStepNanos(seconds));
+  }
+
+  /**
+   * Turns turbo mode on or off.  The time between two generations is ignored while it is on.
+   *
+   * @param turbo whether to compute generations as fast as possible
+   */
+  public void setTurbo(boolean turbo) {
+    submit(() -> {
+      this.turbo = turbo;
+      nextStepNanos = System.nanoTime() + stepNanos;
+      publishLatest();
+    });
+  }
+
+  /**
+   * Sets how long turbo mode computes generations before it publishes the latest one.
+   *
+   * @param milliseconds the frame budget, or 0 to publish whenever the GUI took the previous
+   *                     generation
+   */
+  public void setFrameBudget(double milliseconds) {
+    submit(() -> frameBudgetNanos = (long) (milliseconds * TimeUnit.MILLISECONDS.toNanos(1)));
+  }
+
+  /**
+   * Stops computing generations after the current one.
+   */
+  public void pause() {
+    submit(() -> {
+      running = false;
+      publishLatest();
+    });
+  }
+
+  /**
+   * Ends the simulation thread once the commands submitted before are done.
+   */
+  public void close() {
+    submit(() -> closed = true);
+  }
+
+  private void setStepNanos(double seconds) {
+    stepNanos = (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+    nextStepNanos = System.nanoTime() + stepNanos;
+  }
+
+  private void run() {
+    while (!closed) {
+      try {
+        Runnable command = nextCommand();
+        if (command != null) {
+          command.run();
+        } else {
+          runStep();
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+        running = false;
+      }
+    }
+  }
+
+  /**
+   * Waits for the next command while paused, or until the next step is due while running.
+   *
+   * @return the command, or null if the next step is due
+   */
+  private Runnable nextCommand() throws InterruptedException {
+    if (!running) {
+      return commands.take();
+    }
+    if (turbo) {
+      return commands.poll();
+    }
+    long wait = nextStepNanos - System.nanoTime();
+    return (wait > 0) ? commands.poll(wait, TimeUnit.NANOSECONDS) : commands.poll();
+  }
+
+  private void runStep() {
+    // steps slower than stepNanos follow each other right away
+    nextStepNanos = Math.max(nextStepNanos + stepNanos, System.nanoTime());
+    if (!step.getAsBoolean()) {
+      running = false;
+      publishLatest();
+    } else if (!turbo || isFrameDue()) {
+      publish();
+    } else {
+      unpublished = true;
+    }
+  }
+
+  /**
+   * Decides whether turbo mode publishes the generation it just computed.
+   */
+  private boolean isFrameDue() {
+    if (frameBudgetNanos > 0) {
+      return System.nanoTime() - lastPublishNanos >= frameBudgetNanos;
+    }
+    return (middle.get() & FRESH) == 0;
+  }
+
+  /**
+   * Publishes the latest generation of turbo mode if it was skipped, so the GUI does not stay
+   * behind when turbo mode ends.
+   */
+  private void publishLatest() {
+    if (unpublished) {
+      publish();
+    }
+  }
+
+  /**
+   * Hands the current generation to the GUI: collects the cells that changed and copies them,
+   * together with the changes of a generation the GUI did not take, so the caller may keep
+   * changing the game.  Only call this on the simulation thread.
+   */
+  public void publish() {
+    if ((middle.get() & FRESH) == 0) {
+      // the GUI took the last generation, so it only needs the changes since then; if it takes it
+      // right after this check, the next generation repeats some changes, which does no harm
+      pending.clear();
+    }
+    collectChanges.accept(pending);
+    buffers[back].copyFrom(pending);
+    back = middle.getAndSet(back | FRESH) & INDEX;
+    unpublished = false;
+    lastPublishNanos = System.nanoTime();
+  }
+
+  /**
+   * Takes the latest generation the simulation thread published, if the GUI did not take it yet.
+   * Only call this on the JavaFX thread.
+   *
+   * @return the cells that changed since the generation the GUI took before, valid until the next
+   * call, or null if there is no newer generation
+   */
+  public CellChanges takeFrame() {
+    if ((middle.get() & FRESH) == 0) {
+      return null;
+    }
+    front = middle.getAndSet(front) & INDEX;
+    return buffers[front];
+  }
+}
@@ -1,27 +1,56 @@
 package cellsociety.view.assets;
 
+import cellsociety.model.gametypes.CellChanges;
 import cellsociety.view.GamePlay;
 import cellsociety.view.Gui;
 import java.util.HashMap;
 import java.util.Map;
-import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
-import javafx.geometry.Pos;
-import javafx.scene.Node;
-import javafx.scene.layout.GridPane;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
 
 /**
  * A wrapper class for a grid that visually represents all cells at any point in time for a specific
  * simulation.
+ * <p>
+ * The cells are drawn on a Canvas instead of being nodes of their own.  Every state is looked up
+ * once in a palette of ARGB colors, the colors are written into a pixel buffer with one pixel per
+ * cell, and the buffer is copied into an image that the canvas draws scaled up to the size of the
+ * cells.  Redrawing the grid therefore takes time proportional to the number of cells, and a click
+ * is mapped to its cell from its coordinates.  While the simulation runs, the grid is given only
+ * the cells whose states changed, and of those it only repaints the ones whose color changed.
  */
 public class Grid {
 
-  private final GridPane matrix;
+  private static final int CELL_GAP = 3;
+  // grids too large for cells of a whole pixel are shrunk to this width
+  private static final int MAX_GRID_WIDTH = 600;
+  private static final int PALETTE_SIZE = 256;
+  // with more changed cells than this, repainting the whole grid at once is faster
+  private static final double FULL_REPAINT_FRACTION = 0.05;
+  private static final Color BORDER_COLOR = Color.rgb(52, 20, 20, 0.93);
+  private static final double BORDER_WIDTH = 2;
+
+  private final StackPane matrix;
+  private final Canvas canvas;
+  private final WritableImage image;
+  private final int[] pixels;
+  // the cells whose color changed in the last update, reused between updates
+  private final int[] changedCells;
+  private boolean painted;
   private final int gridWidth;
   private final int gridHeight;
+  private final double cellWidth;
+  private final double cellHeight;
+  private final double gap;
+  private int[] palette;
+  private String paletteGameType;
 
   private boolean borders = false;
   public static final Map<String, Color> colors = new HashMap<>();
@@ -61,231 +90,321 @@ public class Grid {
   public Grid(int[][] stateGrid, String gameType, GamePlay gamePlay, int gridWidth, int gridHeight,
       Map<String, String> colors) {
     this.customColors = colors;
-    this.matrix = new GridPane();
-    matrix.setPadding(new Insets(10));
-    matrix.setHgap(3);
-    matrix.setVgap(3);
     this.gridWidth = gridWidth;
     this.gridHeight = gridHeight;
+    this.cellWidth = cellSize(gridHeight);
+    this.cellHeight = cellSize(gridWidth);
+    this.gap = (Math.min(cellWidth, cellHeight) > CELL_GAP) ? CELL_GAP : 0;
 
-    // create grid
-    for (int row = 0; row < gridWidth; row++) {
-      for (int col = 0; col < gridHeight; col++) {
-        Rectangle rectangle = new Rectangle(Gui.GUI_GRID_WIDTH / gridWidth,
-            Gui.GUI_GRID_WIDTH / gridHeight);
-        setRectangleFill(rectangle, stateGrid[row][col], gameType);
+    image = new WritableImage(gridHeight, gridWidth);
+    pixels = new int[gridWidth * gridHeight];
+    changedCells = new int[pixels.length];
+    canvas = new Canvas(gridHeight * (cellWidth + gap) - gap, gridWidth * (cellHeight + gap) - gap);
+    canvas.getGraphicsContext2D().setImageSmoothing(false);
+    canvas.setOnMouseClicked(event -> handleCellClick(event, gamePlay));
 
-        StackPane rectPane = new StackPane(rectangle);
-        rectPane.setOnMouseClicked(event -> handleCellClick(rectPane, gamePlay));
-        matrix.add(rectPane, col, row);
-      }
-    }
-    matrix.setAlignment(Pos.CENTER);
+    this.matrix = new StackPane(canvas);
+    matrix.setPadding(new Insets(10));
     matrix.getStyleClass().add("matrix");
+    updateGrid(stateGrid, gameType);
+  }
+
+  /**
+   * Returns the size of a cell along a side of the grid: the cells are GUI_GRID_WIDTH wide
+   * together, in whole pixels, or a pixel each up to MAX_GRID_WIDTH when that leaves less than a
+   * pixel.
+   */
+  private static double cellSize(int numCells) {
+    int size = Gui.GUI_GRID_WIDTH / numCells;
+    if (size >= 1) {
+      return size;
+    }
+    return Math.min(1, (double) MAX_GRID_WIDTH / numCells);
   }
 
   /**
-   * Updates the grid with the new state of the simulation.
+   * Updates the grid with the new state of the simulation, comparing every cell with the color it
+   * shows; see updateCells for how the changed cells are repainted.
    *
    * @param stateGrid The updated state of the grid.
    * @param gameType  The type of the simulation.
    */
   public void updateGrid(int[][] stateGrid, String gameType) {
+    int[] colors = getPalette(gameType);
+    int numChanged = 0;
     for (int row = 0; row < gridWidth; row++) {
+      int[] states = stateGrid[row];
+      int offset = row * gridHeight;
       for (int col = 0; col < gridHeight; col++) {
-        Node cell = getCell(matrix, row, col);
-        updateIndividualCell(cell, row, col, stateGrid, gameType);
+        int color = getColor(colors, states[col]);
+        if (color != pixels[offset + col]) {
+          pixels[offset + col] = color;
+          changedCells[numChanged++] = offset + col;
+        }
       }
     }
+    repaint(numChanged);
   }
 
-  private void updateIndividualCell(Node cell, int row, int col, int[][] stateGrid,
-      String gameType) {
-    if (cell instanceof StackPane) {
-      ObservableList<Node> children = ((StackPane) cell).getChildren();
-      for (Node node : children) {
-        if (node instanceof Rectangle rectangle) {
-          setRectangleFill(rectangle, stateGrid[row][col], gameType);
+  /**
+   * Updates the cells whose states changed, so the time it takes is proportional to the number of
+   * changes rather than to the size of the grid.  Only the cells whose color changed are
+   * repainted; the first time, or when more than FULL_REPAINT_FRACTION of the cells changed, the
+   * whole grid is repainted at once instead.  Cells smaller than a pixel share pixels, so then only
+   * the image is updated cell by cell and drawn whole.
+   *
+   * @param changes  the cells that changed since the last update, with their states
+   * @param gameType The type of the simulation.
+   */
+  public void updateCells(CellChanges changes, String gameType) {
+    int[] colors = getPalette(gameType);
+    int numChanged = 0;
+    for (int i = 0; i < changes.getNumChanged(); i++) {
+      int cell = changes.getChangedCell(i);
+      int color = getColor(colors, changes.getState(i));
+      if (color != pixels[cell]) {
+        pixels[cell] = color;
+        changedCells[numChanged++] = cell;
+      }
+    }
+    repaint(numChanged);
+  }
+
+  /**
+   * Repaints the cells listed first in changedCells, whose pixels were already updated, or the
+   * whole grid if there are many of them.
+   */
+  private void repaint(int numChanged) {
+    if (!painted || numChanged > FULL_REPAINT_FRACTION * pixels.length) {
+      image.getPixelWriter().setPixels(0, 0, gridHeight, gridWidth,
+          PixelFormat.getIntArgbInstance(), pixels, 0, gridHeight);
+      paint();
+      painted = true;
+      return;
+    }
+    PixelWriter writer = image.getPixelWriter();
+    boolean wholeCells = cellWidth >= 1 && cellHeight >= 1;
+    for (int i = 0; i < numChanged; i++) {
+      int cell = changedCells[i];
+      int row = cell / gridHeight;
+      int col = cell % gridHeight;
+      writer.setArgb(col, row, pixels[cell]);
+      if (wholeCells) {
+        paintCell(canvas.getGraphicsContext2D(), row, col);
+      }
+    }
+    if (!wholeCells && numChanged > 0) {
+      paint();
+    }
+  }
+
+  private static int getColor(int[] colors, int state) {
+    return (state >= 0 && state < PALETTE_SIZE) ? colors[state] : colors[PALETTE_SIZE - 1];
+  }
+
+  /**
+   * Draws the image of the cells scaled up to the size of the cells, leaving the gaps between
+   * them empty, and draws their borders if they are on.
+   */
+  private void paint() {
+    GraphicsContext graphics = canvas.getGraphicsContext2D();
+    graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    if (gap == 0) {
+      graphics.drawImage(image, 0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+    if (gap > 0 || showsBorders()) {
+      // cells with gaps or borders are large, so there are few of them to draw one by one
+      for (int row = 0; row < gridWidth; row++) {
+        for (int col = 0; col < gridHeight; col++) {
+          if (gap > 0) {
+            paintCell(graphics, row, col);
+          } else {
+            strokeBorder(graphics, row, col);
+          }
         }
       }
     }
   }
 
+  // borders would cover cells smaller than a few pixels completely
+  private boolean showsBorders() {
+    return borders && Math.min(cellWidth, cellHeight) > 2 * BORDER_WIDTH;
+  }
+
+  /**
+   * Draws one cell from its pixel, and its border if borders are on.
+   */
+  private void paintCell(GraphicsContext graphics, int row, int col) {
+    graphics.drawImage(image, col, row, 1, 1, col * (cellWidth + gap),
+        row * (cellHeight + gap), cellWidth, cellHeight);
+    if (showsBorders()) {
+      strokeBorder(graphics, row, col);
+    }
+  }
+
+  private void strokeBorder(GraphicsContext graphics, int row, int col) {
+    graphics.setStroke(BORDER_COLOR);
+    graphics.setLineWidth(BORDER_WIDTH);
+    graphics.strokeRect(col * (cellWidth + gap), row * (cellHeight + gap), cellWidth, cellHeight);
+  }
+
+  /**
+   * Redraws the grid with or without borders around the cells, see setBorderStatus.
+   */
   public void setBorders() {
-    for (Node cell : matrix.getChildren()) {
-      if (borders) {
-        cell.setStyle("-fx-border-color: rgba(52, 20, 20, 0.93); -fx-border-width: 2;");
-      } else {
-        cell.setStyle("-fx-border-width: 0;");
+    paint();
+  }
+
+  /**
+   * Returns the ARGB colors of the states of a simulation type, indexed by state.  They are
+   * computed once per type; states beyond the palette use its last entry.
+   */
+  private int[] getPalette(String gameType) {
+    if (palette == null || !gameType.equals(paletteGameType)) {
+      palette = new int[PALETTE_SIZE];
+      for (int state = 0; state < PALETTE_SIZE; state++) {
+        Color fill = getFill(state, gameType);
+        palette[state] = (fill == null) ? 0 : toArgb(fill);
       }
+      paletteGameType = gameType;
     }
+    return palette;
+  }
+
+  private static int toArgb(Color color) {
+    return ((int) Math.round(color.getOpacity() * 255) << 24)
+        | ((int) Math.round(color.getRed() * 255) << 16)
+        | ((int) Math.round(color.getGreen() * 255) << 8)
+        | (int) Math.round(color.getBlue() * 255);
   }
 
   /**
-   * Sets the fill color of the rectangle based on the state and type of the simulation.
+   * Returns the fill color of a state based on the type of the simulation.
    *
-   * @param rectangle The rectangle representing a cell in the grid.
-   * @param state     The state of the cell.
-   * @param gameType  The type of the simulation.
+   * @param state    The state of the cell.
+   * @param gameType The type of the simulation.
+   * @return the color of the cells in the state
    */
-  private void setRectangleFill(Rectangle rectangle, int state, String gameType) {
+  private Color getFill(int state, String gameType) {
     if (customColors == null) {
       switch (gameType) {
         case "fallingsand":
-          fallingSandFill(rectangle, state);
-          break;
+          return fallingSandColor(state);
         case "foragingants":
-          foragingAntsFill(rectangle, state);
-          break;
+          return foragingAntsColor(state);
         case "spreadingoffire":
-          spreadingOfFireFill(rectangle, state);
-          break;
+          return spreadingOfFireColor(state);
         case "percolation":
-          percolationFill(rectangle, state);
-          break;
+          return percolationColor(state);
         case "watorworld":
-          watorWorldFill(rectangle, state);
-          break;
+          return watorWorldColor(state);
         default:
-          defaultFill(rectangle, state);
+          return defaultColor(state);
       }
     } else {
       String numState = numbers.get(state);
       String color = customColors.getOrDefault(numState, "default");
-      Color fill = colors.get(color);
-      rectangle.setFill(fill);
+      return colors.get(color);
     }
   }
 
-  private void fallingSandFill(Rectangle rectangle, int state) {
+  private static Color fallingSandColor(int state) {
     if (state == 0) {
-      rectangle.setFill(Color.WHITE);
+      return Color.WHITE;
     } else if (state == 1) {
-      rectangle.setFill(Color.ORANGE);
+      return Color.ORANGE;
     } else if (state == 2) {
-      rectangle.setFill(Color.GREY);
+      return Color.GREY;
     } else if (state == 3) {
-      rectangle.setFill(Color.BLUE);
+      return Color.BLUE;
     }
+    return Color.BLACK;
   }
 
-  private void foragingAntsFill(Rectangle rectangle, int state) {
+  private static Color foragingAntsColor(int state) {
     if (state == 0) {
-      rectangle.setFill(Color.WHITE);
+      return Color.WHITE;
     } else if (state == 1) {
-      rectangle.setFill(Color.ORANGE);
+      return Color.ORANGE;
     } else if (state == 2) {
-      rectangle.setFill(Color.BLUE);
+      return Color.BLUE;
     } else if (state == 3) {
-      rectangle.setFill(Color.BLACK);
+      return Color.BLACK;
     } else if (state == 4) {
-      rectangle.setFill(Color.YELLOW);
+      return Color.YELLOW;
     }
+    return Color.BLACK;
   }
 
-  private void spreadingOfFireFill(Rectangle rectangle, int state) {
+  private static Color spreadingOfFireColor(int state) {
     if (state == 0) {
-      rectangle.setFill(Color.WHITE);
+      return Color.WHITE;
     } else if (state == 1) {
-      rectangle.setFill(Color.GREEN);
+      return Color.GREEN;
     } else if (state == 2) {
-      rectangle.setFill(Color.RED);
+      return Color.RED;
     }
+    return Color.BLACK;
   }
 
-  private void percolationFill(Rectangle rectangle, int state) {
+  private static Color percolationColor(int state) {
     if (state == 0) {
-      rectangle.setFill(Color.WHITE);
+      return Color.WHITE;
     } else if (state == 1) {
-      rectangle.setFill(Color.BLACK);
+      return Color.BLACK;
     } else if (state == 2) {
-      rectangle.setFill(Color.BLUE);
+      return Color.BLUE;
     }
+    return Color.BLACK;
   }
 
-  private void watorWorldFill(Rectangle rectangle, int state) {
+  private static Color watorWorldColor(int state) {
     if (state == 0) {
-      rectangle.setFill(Color.WHITE);
+      return Color.WHITE;
     } else if (state == 1) {
-      rectangle.setFill(Color.ORANGE);
+      return Color.ORANGE;
     } else if (state == 2) {
-      rectangle.setFill(Color.GRAY);
+      return Color.GRAY;
     }
+    return Color.BLACK;
   }
 
-  private void defaultFill(Rectangle rectangle, int state) {
+  private static Color defaultColor(int state) {
     if (state == 0) {
-      rectangle.setFill(Color.WHITE);
+      return Color.WHITE;
     } else if (state == 1) {
-      rectangle.setFill(Color.BLUE);
+      return Color.BLUE;
     } else if (state == 2) {
-      rectangle.setFill(Color.RED);
+      return Color.RED;
     }
+    return Color.BLACK;
   }
 
   /**
-   * Retrieves the cell node from the grid based on its row and column indices.
+   * Dynamically updates the state of a cell when a user clicks it on the grid.  The cell is found
+   * from the coordinates of the click; clicks between cells are ignored.
    *
-   * @param matrix The grid pane containing the cells.
-   * @param row    The row index of the cell.
-   * @param col    The column index of the cell.
-   * @return The node representing the cell in the grid.
-   */
-  private Node getCell(GridPane matrix, int row, int col) {
-    for (Node cell : matrix.getChildren()) {
-      if (GridPane.getRowIndex(cell) == row && GridPane.getColumnIndex(cell) == col) {
-        return cell;
-      }
-    }
-    return null;
-  }
-
-  /**
-   * Dynamically updates the state of a cell when a user clicks it on the grid.
-   *
-   * @param cell     the Cell to update
+   * @param event    the click on the canvas
    * @param gamePlay the current gamePlay
    */
-  private void handleCellClick(StackPane cell, GamePlay gamePlay) {
-    int targetRow = -1;
-    int targetCol = -1;
-
-    for (int row = 0; row < gridWidth; row++) {
-      for (int col = 0; col < gridHeight; col++) {
-        StackPane current = (StackPane) findNodeInMatrix(col, row);
-        if (current != null && current == cell) {
-          targetRow = row;
-          targetCol = col;
-          break;
-        }
-      }
+  private void handleCellClick(MouseEvent event, GamePlay gamePlay) {
+    int targetRow = (int) (event.getY() / (cellHeight + gap));
+    int targetCol = (int) (event.getX() / (cellWidth + gap));
+    if (targetRow < 0 || targetRow >= gridWidth || targetCol < 0 || targetCol >= gridHeight
+        || event.getY() - targetRow * (cellHeight + gap) >= cellHeight
+        || event.getX() - targetCol * (cellWidth + gap) >= cellWidth) {
+      return;
     }
     //Increment the cell by 1 state
-    gamePlay.getGame().incrementCell(targetRow, targetCol, gamePlay.getGame().getTotalStates());
-  }
-
-  /**
-   * Finds a Node in this Grid's GridPane based on an input column and row value.
-   *
-   * @param col
-   * @param row
-   * @return
-   */
-  private Node findNodeInMatrix(int col, int row) {
-    for (Node node : matrix.getChildren()) {
-      if (GridPane.getColumnIndex(node) == col && GridPane.getRowIndex(node) == row) {
-        return node;
-      }
-    }
-    return null;
+    gamePlay.incrementCell(targetRow, targetCol);
   }
 
   /**
-   * Returns the GridPane object for this Grid.
+   * Returns the node showing this Grid.
    *
    * @return ^
    */
-  public GridPane getGrid() {
+  public StackPane getGrid() {
     return matrix;
   }
 
@@ -299,4 +418,4 @@ public class Grid {
   public boolean getBordersStatus() {
     return borders;
   }
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 package cellsociety.view.assets;
 
 import cellsociety.config.FileManagement;
+import cellsociety.config.GridEncoding;
 import cellsociety.config.LanguageManager;
 import cellsociety.view.GamePlay;
 import cellsociety.view.Gui;
@@ -10,6 +11,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -18,9 +20,11 @@ import javafx.scene.chart.CategoryAxis;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
 import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleButton;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
@@ -54,25 +58,32 @@ public class Util {
     Button resetButton = new Button("Reset");
     Button startButton = new Button("Start");
     Button stopButton = new Button("Stop");
+    Button stepBack = new Button("StepBack");
+    Button stepForward = new Button("StepForward");
+    ToggleButton turbo = new ToggleButton("Turbo");
     Button loadNew = new Button("LoadNew");
     Button saveConfig = getSaveButton();
     Button modify = new Button("More");
 
-    Arrays.asList(resetButton, startButton, stopButton, loadNew, saveConfig, modify)
+    Arrays.asList(resetButton, startButton, stopButton, stepBack, stepForward, turbo, loadNew,
+        saveConfig, modify)
         .forEach(button -> {
           button.setMinWidth(60);
         });
 
     //Add event handlers to each button
     resetButton.setOnAction(event -> gamePlay.resetGame());
-    startButton.setOnAction(event -> gamePlay.updateTimeline(slider.getValue()));
+    startButton.setOnAction(event -> gamePlay.startSimulation(slider.getValue()));
     stopButton.setOnAction(event -> gamePlay.stopSimulation());
+    stepBack.setOnAction(event -> gamePlay.stepBack());
+    stepForward.setOnAction(event -> gamePlay.stepForward());
+    turbo.setOnAction(event -> gamePlay.setTurbo(turbo.isSelected()));
     loadNew.setOnAction(event -> gamePlay.loadNewSimulation(gamePlay.getManager()));
     saveConfig.setOnAction(event -> editSaveWindow(gamePlay));
     modify.setOnAction(event -> modifyWindow(gamePlay.getGame().getParamList(), gamePlay, grid));
 
-    HBox buttonBox = new HBox(resetButton, startButton, stopButton, loadNew,
-        saveConfig, modify);
+    HBox buttonBox = new HBox(resetButton, startButton, stopButton, stepBack, stepForward, turbo,
+        loadNew, saveConfig, modify);
     buttonBox.setSpacing(10);
     buttonBox.setAlignment(Pos.CENTER);
 
@@ -106,9 +117,7 @@ public class Util {
 
     slider.valueProperty().addListener((observable, oldTime, newTime) -> {
       value.setText(staticText + formatter.format(newTime.doubleValue()));
-      if (gamePlay.isRunning()) {
-        gamePlay.updateTimeline(newTime.doubleValue());
-      }
+      gamePlay.setStepDuration(newTime.doubleValue());
     });
     VBox root = new VBox(slider, value);
     root.setAlignment(Pos.CENTER);
@@ -141,21 +150,26 @@ public class Util {
     Label descLabel = new Label("Description");
     TextField descField = new TextField();
 
+    Label encodingLabel = new Label("Grid Encoding");
+    ChoiceBox<GridEncoding> encodingBox = new ChoiceBox<>();
+    encodingBox.getItems().setAll(GridEncoding.values());
+    encodingBox.setValue(GridEncoding.CELLS);
+
     Button okButton = getSaveButton();
     okButton.setOnAction(e -> {
       String title = titleField.getText();
       String author = authorField.getText();
       String desc = descField.getText();
-      gamePlay.getManager().saveFile(title, author, desc, gamePlay);
+      gamePlay.getManager().saveFile(title, author, desc, encodingBox.getValue(), gamePlay);
 
       popup.close();
     });
 
     VBox popupRoot = new VBox(10, titleLabel, titleField, authorLabel, authorField,
-        descLabel, descField, okButton);
+        descLabel, descField, encodingLabel, encodingBox, okButton);
     popupRoot.setPadding(new Insets(10));
 
-    Scene popupScene = new Scene(popupRoot, 250, 300);
+    Scene popupScene = new Scene(popupRoot, 250, 360);
     popup.setScene(popupScene);
     popup.show();
   }
@@ -187,8 +201,8 @@ public class Util {
     });
     //Same with this button
     Button stats = new Button("Statistics");
-    stats.setOnAction(event -> histogramWindow(gamePlay.getGame()
-        .getPopulationStatistics(), gamePlay));
+    stats.setOnAction(event -> gamePlay.readGame(gamePlay.getGame()::getPopulationStatistics)
+        .thenAcceptAsync(statistics -> histogramWindow(statistics, gamePlay), Platform::runLater));
 
     setParamFields(params, popupRoot, popup, gamePlay);
 
@@ -231,7 +245,7 @@ public class Util {
             labels.put(params.get(i), Double.valueOf(val));
           }
         }
-        gamePlay.getGame().updateParams(labels);
+        gamePlay.updateParams(labels);
       }
       popup.close();
     });